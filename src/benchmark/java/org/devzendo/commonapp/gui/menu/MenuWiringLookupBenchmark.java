@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui.menu;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JMenuItem;
+
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Compares looking up menu items in the MenuWiring's id-indexed storage with
+ * looking them up in a ConcurrentHashMap keyed by identifiers whose equals
+ * and hashCode use the commons-lang builders, as MenuWiring used to.
+ * <p>
+ * Not a unit test; it is only built in the benchmarks profile. Run it with
+ * mvn -Pbenchmarks test-compile exec:java -Dexec.classpathScope=test
+ *   -Dexec.mainClass=org.devzendo.commonapp.gui.menu.MenuWiringLookupBenchmark
+ *
+ * @author matt
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MenuWiringLookupBenchmark {
+    /**
+     * How a menu item was identified before MenuIdentifiers were given ids.
+     */
+    private static final class BuilderMenuIdentifier {
+        private final String mName;
+
+        BuilderMenuIdentifier(final String name) {
+            mName = name;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final BuilderMenuIdentifier other = (BuilderMenuIdentifier) obj;
+            return new EqualsBuilder().append(this.mName, other.mName).isEquals();
+        }
+
+        @Override
+        public int hashCode() {
+            return new HashCodeBuilder(1, 31).append(mName).toHashCode();
+        }
+    }
+
+    /**
+     * The number of menu items wired
+     */
+    @Param({ "20", "200" })
+    public int menuItems;
+
+    private MenuWiring menuWiring;
+    private MenuIdentifier[] menuIdentifiers;
+    private Map<BuilderMenuIdentifier, JMenuItem> builderMap;
+    // distinct from the map's keys, as a caller's identifiers would be
+    private BuilderMenuIdentifier[] builderMenuIdentifiers;
+
+    /**
+     * 
+     */
+    @Setup
+    public void wireMenuItems() {
+        menuWiring = new MenuWiring();
+        menuIdentifiers = new MenuIdentifier[menuItems];
+        builderMap = new ConcurrentHashMap<BuilderMenuIdentifier, JMenuItem>();
+        builderMenuIdentifiers = new BuilderMenuIdentifier[menuItems];
+        for (int i = 0; i < menuItems; i++) {
+            final String name = "BenchmarkMenuItem" + i;
+            final JMenuItem menuItem = new JMenuItem(name);
+            menuIdentifiers[i] = new MenuIdentifier(name);
+            menuWiring.storeMenuItem(MenuIdentifier.valueOf(name), menuItem);
+            builderMap.put(new BuilderMenuIdentifier(name), menuItem);
+            builderMenuIdentifiers[i] = new BuilderMenuIdentifier(name);
+        }
+    }
+
+    /**
+     * @param blackhole consumes the menu items found
+     */
+    @Benchmark
+    public void indexedLookup(final Blackhole blackhole) {
+        for (final MenuIdentifier menuIdentifier : menuIdentifiers) {
+            blackhole.consume(menuWiring.getMenuItem(menuIdentifier));
+        }
+    }
+
+    /**
+     * @param blackhole consumes the menu items found
+     */
+    @Benchmark
+    public void builderMapLookup(final Blackhole blackhole) {
+        for (final BuilderMenuIdentifier menuIdentifier : builderMenuIdentifiers) {
+            blackhole.consume(builderMap.get(menuIdentifier));
+        }
+    }
+
+    /**
+     * @param args unused
+     * @throws RunnerException on failure
+     */
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(MenuWiringLookupBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A concurrent map of metrics, created for each key when first needed,
+ * as kept by SwingWorkerMetrics per class of worker, and by
+ * MenuActionMetrics per menu item.
+ *
+ * @author matt
+ *
+ * @param <K> the type of key the metrics are kept for
+ * @param <M> the type of metrics kept
+ */
+public abstract class KeyedMetrics<K, M> {
+    private final ConcurrentMap<K, M> metrics = new ConcurrentHashMap<K, M>();
+
+    /**
+     * Create the metrics for a key, that has none yet.
+     * @param key the key
+     * @return new metrics for it
+     */
+    protected abstract M create(final K key);
+
+    /**
+     * @param key the key
+     * @return the metrics for the key, or null if none have been created
+     */
+    public final M get(final K key) {
+        return metrics.get(key);
+    }
+
+    /**
+     * @param key the key
+     * @return the metrics for the key, created if need be
+     */
+    public final M getOrCreate(final K key) {
+        final M existing = metrics.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        final M created = create(key);
+        final M raced = metrics.putIfAbsent(key, created);
+        return raced == null ? created : raced;
+    }
+
+    /**
+     * @return the metrics for every key that has any
+     */
+    public final List<M> getAll() {
+        return new ArrayList<M>(metrics.values());
+    }
+
+    /**
+     * Forget all metrics.
+     */
+    public final void clear() {
+        metrics.clear();
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui;
+
+import java.util.concurrent.Executor;
+
+/**
+ * A SwingWorker whose value is loaded by key, via a KeyedSwingWorkerCache.
+ * Concurrent workers for the same key share a single load, and recently
+ * loaded values are reused.
+ * <p>
+ * It is started, run on its Executor, timed out, cancelled and measured
+ * like any other SwingWorker; its construct() obtains the value from the
+ * cache, loading it if no other worker is.
+ * <p>
+ * Subclass this to implement finished(), using get() or getValue() to
+ * obtain the value, as with any other SwingWorker.
+ *
+ * @author matt
+ *
+ * @param <K> the type of key
+ * @param <T> the type of value loaded
+ */
+public abstract class KeyedSwingWorker<K, T> extends SwingWorker<T, Void> {
+    private final KeyedSwingWorkerCache<K, T> cache;
+    private final K key;
+
+    /**
+     * Create a KeyedSwingWorker, run on the default Executor.
+     * @param keyedCache the cache that loads the value
+     * @param valueKey the key of the value to load
+     */
+    public KeyedSwingWorker(final KeyedSwingWorkerCache<K, T> keyedCache, final K valueKey) {
+        this(keyedCache, valueKey, null);
+    }
+
+    /**
+     * Create a KeyedSwingWorker, run on a given Executor.
+     * @param keyedCache the cache that loads the value
+     * @param valueKey the key of the value to load
+     * @param executor the Executor to run on, or null to use whichever is
+     * the default Executor when the worker is started
+     */
+    public KeyedSwingWorker(final KeyedSwingWorkerCache<K, T> keyedCache, final K valueKey,
+            final Executor executor) {
+        super(executor);
+        cache = keyedCache;
+        key = valueKey;
+    }
+
+    /**
+     * @return the key of the value this worker loads
+     */
+    public final K getKey() {
+        return key;
+    }
+
+    /**
+     * Obtain the value from the cache, by waiting for another worker's load
+     * of it, or by loading it.
+     * @return the value
+     */
+    @Override
+    public final T construct() {
+        return cache.obtain(key);
+    }
+}
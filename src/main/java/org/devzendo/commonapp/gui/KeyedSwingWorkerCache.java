@@ -0,0 +1,267 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Loads values by key on behalf of KeyedSwingWorkers, so that the same
+ * expensive value isn't loaded several times over when several parts of
+ * the GUI want it at once.
+ * <p>
+ * A key is loaded by the first worker to want it, in its own construct().
+ * While it is being loaded, other workers wanting it wait for that load,
+ * rather than starting their own; they occupy their threads while they
+ * wait, but cannot hold up the load, which is already running. If the
+ * loading worker is cancelled or times out, and its load fails, a waiting
+ * worker loads the key instead. Loaded values are cached for a given time,
+ * and the least recently used values are evicted when there are more than
+ * a given number. Failed loads are not cached, nor are loads that were in
+ * progress when their key was invalidated. Each worker completes, and has
+ * its own finished() called on the event thread, as any other SwingWorker.
+ * <p>
+ * The loader is called with no lock held, and workers complete in their
+ * own construct(), so no stage dependent on a worker runs inside the
+ * cache's lock.
+ *
+ * @author matt
+ *
+ * @param <K> the type of key
+ * @param <T> the type of value loaded
+ */
+public final class KeyedSwingWorkerCache<K, T> {
+    private static final Logger LOGGER = Logger.getLogger(KeyedSwingWorkerCache.class);
+
+    /**
+     * Loads the value for a key; called on a worker thread.
+     *
+     * @param <K> the type of key
+     * @param <T> the type of value loaded
+     */
+    public interface Loader<K, T> {
+        /**
+         * Load a value.
+         * @param key the key to load the value of
+         * @return the value
+         */
+        T load(K key);
+    }
+
+    private static final class CacheEntry<T> {
+        private final T value;
+        private final long loadedAt;
+
+        CacheEntry(final T loadedValue, final long loadedAtNanos) {
+            value = loadedValue;
+            loadedAt = loadedAtNanos;
+        }
+    }
+
+    private final class InFlightLoad {
+        private final long generation;
+        private final CountDownLatch done = new CountDownLatch(1);
+        // set before done is counted down
+        private volatile T value;
+        private volatile Throwable failure;
+        private volatile boolean abandoned;
+
+        InFlightLoad(final long loadGeneration) {
+            generation = loadGeneration;
+        }
+    }
+
+    private final Loader<K, T> loader;
+    private final long timeToLiveNanos;
+    private final Object lock = new Object();
+    private final LinkedHashMap<K, CacheEntry<T>> cache; // guarded by lock
+    private final Map<K, InFlightLoad> inFlight; // guarded by lock
+    // advanced by each invalidation; a load started in an earlier
+    // generation than its key's last invalidation is not cached
+    private long generation; // guarded by lock
+    private final Map<K, Long> invalidatedGenerations; // guarded by lock
+    private long clearedGeneration; // guarded by lock
+
+    /**
+     * Create a KeyedSwingWorkerCache
+     * @param keyLoader the loader of values
+     * @param maxEntries the maximum number of values to cache
+     * @param timeToLive how long a loaded value may be used for
+     * @param unit the unit of the time to live
+     */
+    public KeyedSwingWorkerCache(final Loader<K, T> keyLoader, final int maxEntries,
+            final long timeToLive, final TimeUnit unit) {
+        if (maxEntries < 0 || timeToLive < 0) {
+            throw new IllegalArgumentException("Cache limits cannot be negative");
+        }
+        loader = keyLoader;
+        timeToLiveNanos = unit.toNanos(timeToLive);
+        cache = new LinkedHashMap<K, CacheEntry<T>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<K, CacheEntry<T>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        inFlight = new LinkedHashMap<K, InFlightLoad>();
+        invalidatedGenerations = new HashMap<K, Long>();
+    }
+
+    /**
+     * Obtain the value for a key: from the cache if present and fresh, by
+     * waiting for a load already in progress, or by loading it. Called by
+     * a KeyedSwingWorker's construct().
+     * @param key the key
+     * @return the value
+     */
+    T obtain(final K key) {
+        while (true) {
+            final InFlightLoad load;
+            final boolean loading;
+            synchronized (lock) {
+                final CacheEntry<T> entry = cache.get(key);
+                if (entry != null) {
+                    if (System.nanoTime() - entry.loadedAt <= timeToLiveNanos) {
+                        LOGGER.debug("Using cached value for " + key);
+                        return entry.value;
+                    }
+                    cache.remove(key);
+                }
+                final InFlightLoad existingLoad = inFlight.get(key);
+                if (existingLoad != null) {
+                    load = existingLoad;
+                    loading = false;
+                } else {
+                    load = new InFlightLoad(generation);
+                    inFlight.put(key, load);
+                    loading = true;
+                }
+            }
+            if (loading) {
+                return load(key, load);
+            }
+            LOGGER.debug("Waiting for load of " + key + " already in progress");
+            try {
+                load.done.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for the load of " + key);
+            }
+            if (load.abandoned) {
+                LOGGER.debug("The load of " + key + " was abandoned; trying again");
+                continue;
+            }
+            if (load.failure != null) {
+                throw unchecked(load.failure);
+            }
+            return load.value;
+        }
+    }
+
+    private T load(final K key, final InFlightLoad load) {
+        LOGGER.debug("Loading " + key);
+        T value = null;
+        Throwable failure = null;
+        try {
+            value = loader.load(key);
+        } catch (final Throwable t) {
+            failure = t;
+        }
+        synchronized (lock) {
+            if (inFlight.get(key) == load) {
+                inFlight.remove(key);
+            }
+            final Long invalidatedGeneration = invalidatedGenerations.get(key);
+            final boolean stale = load.generation < clearedGeneration
+                || (invalidatedGeneration != null && load.generation < invalidatedGeneration);
+            if (failure == null && !stale) {
+                cache.put(key, new CacheEntry<T>(value, System.nanoTime()));
+            } else if (stale) {
+                LOGGER.debug("Not caching the value of " + key + ", which was invalidated while it was loaded");
+            }
+            if (!inFlight.containsKey(key)) {
+                invalidatedGenerations.remove(key);
+            }
+        }
+        load.value = value;
+        load.failure = failure;
+        // a failure due to the loading worker being cancelled or timed out
+        // is not the waiting workers' failure
+        load.abandoned = failure != null && Thread.currentThread().isInterrupted();
+        load.done.countDown();
+        if (failure != null) {
+            throw unchecked(failure);
+        }
+        return value;
+    }
+
+    private static RuntimeException unchecked(final Throwable failure) {
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            return (RuntimeException) failure;
+        }
+        return new IllegalStateException(failure);
+    }
+
+    /**
+     * Remove a key's value from the cache, so that it is loaded afresh
+     * next time. A load of the key in progress still completes the workers
+     * waiting for it, but its value is not cached, and workers wanting the
+     * key from now on do not wait for it.
+     * @param key the key
+     */
+    public void invalidate(final K key) {
+        synchronized (lock) {
+            cache.remove(key);
+            generation++;
+            if (inFlight.remove(key) != null) {
+                invalidatedGenerations.put(key, generation);
+            }
+        }
+    }
+
+    /**
+     * Remove all values from the cache. Loads in progress are treated as
+     * for invalidate.
+     */
+    public void clear() {
+        synchronized (lock) {
+            cache.clear();
+            generation++;
+            clearedGeneration = generation;
+            inFlight.clear();
+        }
+    }
+
+    /**
+     * @return the number of values cached, some of which may have expired
+     */
+    public int size() {
+        synchronized (lock) {
+            return cache.size();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A Runnable that knows its priority. Submitted to a
+ * PriorityWorkerExecutor, it is queued according to that priority; other
+ * Runnables are treated as VISIBLE_CONTENT.
+ *
+ * @author matt
+ *
+ */
+public interface PrioritisedRunnable extends Runnable {
+    /**
+     * @return the priority of this Runnable
+     */
+    WorkerPriority getPriority();
+
+    /**
+     * Called by a PriorityWorkerExecutor that queued this Runnable, then
+     * had it rejected by its underlying Executor when no other task was
+     * running that could retry it. The Runnable will not be run.
+     * @param rejection the underlying Executor's rejection
+     */
+    void rejected(RejectedExecutionException rejection);
+}
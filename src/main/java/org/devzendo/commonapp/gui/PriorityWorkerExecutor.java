@@ -0,0 +1,264 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.log4j.Logger;
+
+/**
+ * An Executor that admits work to an underlying Executor according to its
+ * WorkerPriority.
+ * <p>
+ * Each priority has its own bounded queue; work submitted when its queue
+ * is full is rejected. At most a given number of tasks are running at
+ * once; when one finishes, the next is taken from the highest priority
+ * queue that has any, so interactive work overtakes any backlog of other
+ * work. At most a further limited number of BACKGROUND tasks may run at
+ * once, so that bulk background work always leaves room for the user.
+ * <p>
+ * If the underlying Executor rejects a task while other tasks are running,
+ * the task is put back at the head of its queue, to be retried when one of
+ * them finishes. If no task is running, nothing would retry it, so it is
+ * rejected instead: if it is the task being submitted, the
+ * RejectedExecutionException is thrown to the submitter; otherwise the
+ * task is dropped, and, if it is a PrioritisedRunnable, told through
+ * rejected().
+ *
+ * @author matt
+ *
+ */
+public final class PriorityWorkerExecutor implements Executor {
+    private static final Logger LOGGER = Logger.getLogger(PriorityWorkerExecutor.class);
+
+    private final Executor executor;
+    private final int maxRunning;
+    private final int queueCapacity;
+    private final Object lock = new Object();
+    private final Map<WorkerPriority, ArrayDeque<Runnable>> queues; // guarded by lock
+    private int maxRunningBackground; // guarded by lock
+    private int running; // guarded by lock
+    private int runningBackground; // guarded by lock
+
+    /**
+     * Create a PriorityWorkerExecutor
+     * @param underlyingExecutor the Executor that admitted tasks are
+     * passed to; it should not queue more than maxRunningTasks tasks.
+     * @param maxRunningTasks the maximum number of tasks that may run at
+     * once
+     * @param maxRunningBackgroundTasks the maximum number of BACKGROUND
+     * tasks that may run at once
+     * @param queueCapacityPerPriority the maximum number of tasks of each
+     * priority that may be waiting to run
+     */
+    public PriorityWorkerExecutor(final Executor underlyingExecutor,
+            final int maxRunningTasks,
+            final int maxRunningBackgroundTasks,
+            final int queueCapacityPerPriority) {
+        if (maxRunningTasks < 1 || maxRunningBackgroundTasks < 1 || queueCapacityPerPriority < 1) {
+            throw new IllegalArgumentException("Task limits must be at least one");
+        }
+        executor = underlyingExecutor;
+        maxRunning = maxRunningTasks;
+        maxRunningBackground = maxRunningBackgroundTasks;
+        queueCapacity = queueCapacityPerPriority;
+        queues = new EnumMap<WorkerPriority, ArrayDeque<Runnable>>(WorkerPriority.class);
+        for (final WorkerPriority priority : WorkerPriority.values()) {
+            queues.put(priority, new ArrayDeque<Runnable>());
+        }
+    }
+
+    /**
+     * Queue a task, and run it when its priority allows. If the queue for
+     * its priority is full, or the underlying Executor rejects it while no
+     * task is running, a RejectedExecutionException is thrown.
+     * @param command the task; if a PrioritisedRunnable, its priority is
+     * used, otherwise it is treated as VISIBLE_CONTENT.
+     */
+    public void execute(final Runnable command) {
+        final WorkerPriority priority = priorityOf(command);
+        synchronized (lock) {
+            final ArrayDeque<Runnable> queue = queues.get(priority);
+            if (queue.size() >= queueCapacity) {
+                throw new RejectedExecutionException("The " + priority + " queue is full (" + queueCapacity + " tasks)");
+            }
+            queue.addLast(command);
+        }
+        admit(command);
+    }
+
+    /**
+     * Move a waiting task to the queue for its current priority, after its
+     * priority has changed; it is placed at the end of that queue, even if
+     * the queue is full. Tasks that are running, or have not been submitted,
+     * are unaffected.
+     * @param command the task
+     */
+    public void reprioritise(final Runnable command) {
+        final WorkerPriority priority = priorityOf(command);
+        synchronized (lock) {
+            for (final Map.Entry<WorkerPriority, ArrayDeque<Runnable>> entry : queues.entrySet()) {
+                if (entry.getKey() != priority && entry.getValue().remove(command)) {
+                    queues.get(priority).addLast(command);
+                    break;
+                }
+            }
+        }
+        admit(null);
+    }
+
+    /**
+     * Change the maximum number of BACKGROUND tasks that may run at once.
+     * Tasks already running are unaffected.
+     * @param maxRunningBackgroundTasks the new maximum, at least one
+     */
+    public void setMaxRunningBackgroundTasks(final int maxRunningBackgroundTasks) {
+        if (maxRunningBackgroundTasks < 1) {
+            throw new IllegalArgumentException("At least one BACKGROUND task must be allowed to run");
+        }
+        synchronized (lock) {
+            maxRunningBackground = maxRunningBackgroundTasks;
+        }
+        admit(null);
+    }
+
+    /**
+     * @return the maximum number of BACKGROUND tasks that may run at once
+     */
+    public int getMaxRunningBackgroundTasks() {
+        synchronized (lock) {
+            return maxRunningBackground;
+        }
+    }
+
+    /**
+     * How many tasks of a given priority are waiting to run?
+     * @param priority the priority
+     * @return the number of queued tasks
+     */
+    public int getQueuedTaskCount(final WorkerPriority priority) {
+        synchronized (lock) {
+            return queues.get(priority).size();
+        }
+    }
+
+    /**
+     * @return the number of tasks currently running
+     */
+    public int getRunningTaskCount() {
+        synchronized (lock) {
+            return running;
+        }
+    }
+
+    private static WorkerPriority priorityOf(final Runnable command) {
+        if (command instanceof PrioritisedRunnable) {
+            final WorkerPriority priority = ((PrioritisedRunnable) command).getPriority();
+            if (priority != null) {
+                return priority;
+            }
+        }
+        return WorkerPriority.VISIBLE_CONTENT;
+    }
+
+    // submitted is the task being submitted by the caller, if any: only a
+    // rejection of that task is thrown to the caller; other rejected tasks
+    // are retried when a running task finishes, or if none is, dropped.
+    private void admit(final Runnable submitted) {
+        while (true) {
+            final Runnable next;
+            final WorkerPriority priority;
+            final boolean background;
+            synchronized (lock) {
+                if (running >= maxRunning) {
+                    return;
+                }
+                next = nextAdmissible();
+                if (next == null) {
+                    return;
+                }
+                priority = priorityOf(next);
+                background = priority == WorkerPriority.BACKGROUND;
+                running++;
+                if (background) {
+                    runningBackground++;
+                }
+            }
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        try {
+                            next.run();
+                        } finally {
+                            finishedRunning(background);
+                        }
+                    }
+                });
+            } catch (final RejectedExecutionException e) {
+                LOGGER.warn("Underlying executor rejected a task: " + e.getMessage());
+                synchronized (lock) {
+                    running--;
+                    if (background) {
+                        runningBackground--;
+                    }
+                    if (running > 0) {
+                        // retried when a running task finishes
+                        queues.get(priority).addFirst(next);
+                        return;
+                    }
+                }
+                if (next == submitted) {
+                    throw e;
+                }
+                LOGGER.warn("Dropping a rejected task, since no task is running to retry it");
+                if (next instanceof PrioritisedRunnable) {
+                    ((PrioritisedRunnable) next).rejected(e);
+                }
+                // try the next task, which may be the submitted one
+            }
+        }
+    }
+
+    private Runnable nextAdmissible() {
+        final Runnable interactive = queues.get(WorkerPriority.INTERACTIVE).pollFirst();
+        if (interactive != null) {
+            return interactive;
+        }
+        final Runnable visible = queues.get(WorkerPriority.VISIBLE_CONTENT).pollFirst();
+        if (visible != null) {
+            return visible;
+        }
+        if (runningBackground < maxRunningBackground) {
+            return queues.get(WorkerPriority.BACKGROUND).pollFirst();
+        }
+        return null;
+    }
+
+    private void finishedRunning(final boolean background) {
+        synchronized (lock) {
+            running--;
+            if (background) {
+                runningBackground--;
+            }
+        }
+        admit(null);
+    }
+}
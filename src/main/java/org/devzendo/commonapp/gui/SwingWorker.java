@@ -16,8 +16,27 @@
 
 package org.devzendo.commonapp.gui;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
 import javax.swing.SwingUtilities;
 
+import org.apache.log4j.Logger;
+
 /**
  * This is the 3rd version of SwingWorker (also known as
  * SwingWorker 3), an abstract class that you subclass to
@@ -29,127 +48,554 @@ import javax.swing.SwingUtilities;
  * Note that the API changed slightly in the 3rd version:
  * You must now invoke start() on the SwingWorker after
  * creating it.
+ *
+ * Unlike the original, this version does not create a Thread
+ * per worker: start() submits the construct() call to an
+ * Executor, by default the shared pool provided by
+ * SwingWorkerExecutors.
+ *
+ * It is also typed by the value that construct() produces, and
+ * is a Future of that value. Its result is also available as a
+ * CompletionStage, so that dependent work can be chained without
+ * blocking a thread in get(). Cancelling a worker interrupts
+ * construct() if requested, and finished() will not be called.
+ *
+ * While construct() runs, it may publish() intermediate results,
+ * which are passed in batches to process() on the event thread.
+ * Chunks published while a batch is waiting to be processed join
+ * that batch, so however quickly they are published, there is only
+ * ever one pending process() call on the event queue.
+ *
+ * The time each worker spends queued, constructing, and waiting for the
+ * event thread to call finished() can be reported to a
+ * SwingWorkerMetricsListener. If none is set, no timings are taken.
+ *
+ * A worker may be given a deadline, after which construct() is
+ * interrupted, and the worker completes with a fallback value, so that
+ * a slow backend degrades the GUI rather than leaving it waiting.
+ *
+ * Workers have a WorkerPriority, VISIBLE_CONTENT unless set otherwise,
+ * which the default Executor uses to decide which queued worker to run
+ * next.
+ *
+ * @param <T> the type of value produced by construct()
+ * @param <V> the type of intermediate results published by
+ * construct()
  */
-public abstract class SwingWorker {
-    private Object myValue; // see getValue(), setValue()
+public abstract class SwingWorker<T, V> implements Future<T> {
+    private static final Logger LOGGER = Logger.getLogger(SwingWorker.class);
+
+    private static final int NEW = 0;
+    private static final int RUNNING = 1;
+    private static final int COMPLETING = 2;
+    private static final int COMPLETED = 3;
+    private static final int FAILED = 4;
+    private static final int CANCELLED = 5;
+
+    private static volatile SwingWorkerMetricsListener metricsListener = null;
+
+    private static final BiConsumer<Object, Throwable> NOTHING = new BiConsumer<Object, Throwable>() {
+        public void accept(final Object value, final Throwable throwable) {
+            // the stage given out is only a view of the worker's result
+        }
+    };
 
     /**
      * Class to maintain reference to current worker thread
-     * under separate synchronization control.
+     * under separate synchronization control, so that it is
+     * only ever interrupted while running construct().
      */
     private static class ThreadVar {
         private Thread myThread;
 
-        ThreadVar(final Thread t) {
+        synchronized void set(final Thread t) {
             myThread = t;
         }
 
-        synchronized Thread get() {
-            return myThread;
-        }
-
         synchronized void clear() {
             myThread = null;
         }
+
+        synchronized void interrupt() {
+            if (myThread != null) {
+                myThread.interrupt();
+            }
+        }
     }
 
+    private final AtomicInteger myState;
+    private volatile T myValue; // written in COMPLETING, before COMPLETED
+    private volatile boolean myTimedOut;
+    private volatile boolean myCallbacksDiscarded;
+    private volatile long myTimeoutNanos;
+    private volatile T myFallbackValue;
+    private volatile ScheduledFuture<?> myDeadline;
+    private final CompletableFuture<T> myFuture;
+    private final CompletionStage<T> myStage;
     private final ThreadVar myThreadVar;
+    private final Executor myExecutor;
+    private volatile Executor myStartedExecutor;
+    private final Runnable myConstruct;
+    private final Runnable myFinished;
+    private final AtomicBoolean myStarted;
+    private volatile WorkerPriority myPriority;
+    // timings are only taken if a metrics listener was set at start()
+    private SwingWorkerMetricsListener myMetrics;
+    private long myQueuedAt;
+    private long myStartedAt;
+    private long myConstructedAt;
+    private final ConcurrentLinkedQueue<V> myChunks;
+    private final AtomicBoolean myProcessScheduled;
+    private final Runnable myProcess;
 
     /**
-     * Get the value produced by the worker thread, or null if it
-     * hasn't been constructed yet.
-     * @return the value produced by the worker thread, or null if it
-     * hasn't been constructed yet.
+     * Set the listener that is notified of the lifecycle of all
+     * subsequently started workers.
+     * @param listener the listener, or null to stop taking timings.
      */
-    protected synchronized Object getValue() {
-        return myValue;
+    public static void setMetricsListener(final SwingWorkerMetricsListener listener) {
+        metricsListener = listener;
     }
 
     /**
-     * Set the value produced by worker thread
+     * @return the listener notified of worker lifecycles, or null if none
+     * has been set.
+     */
+    public static SwingWorkerMetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * Get the value produced by the worker thread, or null if it
+     * hasn't been constructed yet, or the worker failed or was
+     * cancelled.
+     * @return the value produced by the worker thread, or null if it
+     * hasn't been constructed yet.
      */
-    private synchronized void setValue(final Object x) {
-        myValue = x;
+    protected T getValue() {
+        return myState.get() == COMPLETED ? myValue : null;
     }
 
     /**
      * Compute the value to be returned by the <code>get</code> method.
      * @return the value to be returned by get().
      */
-    public abstract Object construct();
+    public abstract T construct();
 
     /**
      * Called on the event dispatching thread (not on the worker thread)
-     * after the <code>construct</code> method has returned.
+     * after the <code>construct</code> method has returned, or the worker's
+     * deadline has passed (see isTimedOut()). Not called if the worker was
+     * cancelled, or <code>construct</code> threw.
      */
     public void finished() {
     }
 
+    /**
+     * Called from construct() to send intermediate results to process()
+     * on the event thread. Chunks published in quick succession are
+     * delivered together. Chunks published after the worker has been
+     * cancelled are discarded.
+     * @param chunks the intermediate results
+     */
+    @SafeVarargs
+    protected final void publish(final V... chunks) {
+        if (isCancelled()) {
+            return;
+        }
+        for (final V chunk : chunks) {
+            myChunks.add(chunk);
+        }
+        if (myProcessScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(myProcess);
+        }
+    }
+
+    /**
+     * Called on the event dispatching thread with the chunks passed to
+     * publish(), in the order they were published. All calls to process()
+     * are made before finished() is called.
+     * @param chunks the intermediate results published since the last
+     * call to process(); never empty
+     */
+    protected void process(final List<V> chunks) {
+    }
+
     /**
      * A new method that interrupts the worker thread.  Call this method
-     * to force the worker to stop what it's doing.
+     * to force the worker to stop what it's doing. This is equivalent to
+     * cancel(true).
      */
     public void interrupt() {
-        final Thread t = myThreadVar.get();
-        if (t != null) {
-            t.interrupt();
+        cancel(true);
+    }
+
+    /**
+     * Cancel the worker. If it has not yet started, construct() will not
+     * be called. If it is running, and mayInterruptIfRunning is true, the
+     * thread running construct() is interrupted. Either way, finished()
+     * will not be called, and its value is discarded.
+     *
+     * @param mayInterruptIfRunning true to interrupt construct()
+     * @return false if the worker had already completed, failed or been
+     * cancelled; true otherwise
+     */
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+        while (true) {
+            final int state = myState.get();
+            if (state >= COMPLETING) {
+                return false;
+            }
+            if (myState.compareAndSet(state, CANCELLED)) {
+                break;
+            }
+        }
+        if (mayInterruptIfRunning) {
+            myThreadVar.interrupt();
         }
-        myThreadVar.clear();
+        cancelDeadline();
+        myFuture.cancel(false);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isCancelled() {
+        return myState.get() == CANCELLED;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isDone() {
+        return myState.get() >= COMPLETED;
     }
 
     /**
      * Return the value created by the <code>construct</code> method.
      * Returns null if either the constructing thread or the current
-     * thread was interrupted before a value was produced.
+     * thread was interrupted before a value was produced, or if
+     * <code>construct</code> threw. Unlike the timed get, this does not
+     * throw; use isCancelled() to distinguish a cancelled worker.
      *
      * @return the value created by the <code>construct</code> method
      */
-    public Object get() {
-        while (true) {
-            final Thread t = myThreadVar.get();
-            if (t == null) {
-                return getValue();
-            }
+    public T get() {
+        if (!isDone()) {
             try {
-                t.join();
+                myFuture.get();
             } catch (final InterruptedException e) {
                 Thread.currentThread().interrupt(); // propagate
                 return null;
+            } catch (final ExecutionException e) {
+                return null;
+            } catch (final CancellationException e) {
+                return null;
             }
         }
+        return getValue();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public T get(final long timeout, final TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        if (myState.get() == COMPLETED) {
+            return myValue;
+        }
+        return myFuture.get(timeout, unit);
     }
 
     /**
-     * Start a thread that will call the <code>construct</code> method
-     * and then exit.
+     * Obtain the result of this worker as a CompletionStage. It completes
+     * normally with the value of <code>construct</code> after finished()
+     * has been passed to the event thread, or exceptionally if
+     * <code>construct</code> throws or the worker is cancelled.
+     * Non-async dependent actions run on the worker's thread.
+     *
+     * @return the CompletionStage
+     */
+    public CompletionStage<T> toCompletionStage() {
+        return myStage;
+    }
+
+    /**
+     * Prepare a worker whose <code>construct</code> method will be
+     * called on the default Executor when it is started.
      */
     public SwingWorker() {
-        final Runnable doFinished = new Runnable() {
+        this(null);
+    }
+
+    /**
+     * Prepare a worker whose <code>construct</code> method will be
+     * called on a given Executor when it is started.
+     * @param executor the Executor to run <code>construct</code> on, or
+     * null to use whichever is the default Executor when the worker is
+     * started.
+     */
+    public SwingWorker(final Executor executor) {
+        myExecutor = executor;
+        myState = new AtomicInteger(NEW);
+        myFuture = new CompletableFuture<T>();
+        myStage = myFuture.whenComplete(NOTHING);
+        myThreadVar = new ThreadVar();
+        myStarted = new AtomicBoolean(false);
+        myPriority = WorkerPriority.VISIBLE_CONTENT;
+        myChunks = new ConcurrentLinkedQueue<V>();
+        myProcessScheduled = new AtomicBoolean(false);
+        myProcess = new Runnable() {
             public void run() {
-                finished();
+                // clear first, so chunks published while draining are
+                // either drained now, or trigger another run
+                myProcessScheduled.set(false);
+                final List<V> chunks = new ArrayList<V>();
+                V chunk;
+                while ((chunk = myChunks.poll()) != null) {
+                    chunks.add(chunk);
+                }
+                if (!chunks.isEmpty() && !isCancelled() && !myCallbacksDiscarded) {
+                    process(chunks);
+                }
             }
         };
-        final Runnable doConstruct = new Runnable() {
+        myFinished = new Runnable() {
             public void run() {
-                try {
-                    setValue(construct());
-                } finally {
-                    myThreadVar.clear();
-                }
-                SwingUtilities.invokeLater(doFinished);
+                runFinished();
             }
         };
-        final Thread t = new Thread(doConstruct);
-        myThreadVar = new ThreadVar(t);
+        myConstruct = new PrioritisedRunnable() {
+            public WorkerPriority getPriority() {
+                return myPriority;
+            }
+
+            public void run() {
+                runConstruct();
+            }
+
+            public void rejected(final RejectedExecutionException rejection) {
+                SwingWorker.this.rejected(rejection);
+            }
+        };
+    }
+
+    private void runConstruct() {
+        final SwingWorkerMetricsListener metrics = myMetrics;
+        if (!myState.compareAndSet(NEW, RUNNING)) {
+            if (metrics != null) {
+                metrics.workerDropped(getClass());
+            }
+            return;
+        }
+        if (metrics != null) {
+            myStartedAt = System.nanoTime();
+            metrics.workerStarted(getClass(), myStartedAt - myQueuedAt);
+        }
+        T value = null;
+        Throwable failure = null;
+        myThreadVar.set(Thread.currentThread());
+        try {
+            // if cancelled before it could be interrupted, don't bother
+            if (myState.get() == RUNNING) {
+                value = construct();
+            }
+        } catch (final Throwable t) {
+            failure = t;
+        } finally {
+            myThreadVar.clear();
+            // don't leak an interrupt into the pool's next task
+            Thread.interrupted();
+        }
+        boolean willFinish = false;
+        if (failure != null) {
+            if (myState.compareAndSet(RUNNING, FAILED)) {
+                cancelDeadline();
+                LOGGER.warn(getClass().getName() + " construct failed: " + failure.getMessage(), failure);
+                myFuture.completeExceptionally(failure);
+            }
+        } else if (myState.compareAndSet(RUNNING, COMPLETING)) {
+            cancelDeadline();
+            myValue = value;
+            myState.set(COMPLETED);
+            willFinish = true;
+        }
+        if (metrics != null) {
+            myConstructedAt = System.nanoTime();
+            metrics.workerConstructed(getClass(), myConstructedAt - myStartedAt, willFinish);
+        }
+        if (willFinish) {
+            SwingUtilities.invokeLater(myFinished);
+            myFuture.complete(value);
+        }
+    }
+
+    private void runFinished() {
+        final SwingWorkerMetricsListener metrics = myMetrics;
+        // a timed out worker is still constructing, as far as metrics go
+        if (metrics != null && !myTimedOut) {
+            metrics.workerFinished(getClass(), System.nanoTime() - myConstructedAt);
+        }
+        if (myState.get() == COMPLETED && !myCallbacksDiscarded) {
+            finished();
+        }
+    }
+
+    private void timeout() {
+        while (true) {
+            final int state = myState.get();
+            if (state >= COMPLETING) {
+                return;
+            }
+            if (myState.compareAndSet(state, COMPLETING)) {
+                break;
+            }
+        }
+        LOGGER.warn(getClass().getName() + " did not complete within " + TimeUnit.NANOSECONDS.toMillis(myTimeoutNanos) + "ms; interrupting it");
+        myTimedOut = true;
+        final T fallback = myFallbackValue;
+        myValue = fallback;
+        myState.set(COMPLETED);
+        myThreadVar.interrupt();
+        SwingUtilities.invokeLater(myFinished);
+        myFuture.complete(fallback);
+    }
+
+    /**
+     * Fail the worker without calling construct(), unless it has already
+     * completed, failed or been cancelled.
+     * @param failure the failure
+     */
+    private void failWith(final Throwable failure) {
+        if (myState.compareAndSet(NEW, FAILED)) {
+            myFuture.completeExceptionally(failure);
+        }
     }
 
     /**
-     * Start the worker thread.
+     * Ensure that no further calls to process() or finished() are made,
+     * even if already passed to the event thread.
+     */
+    final void discardCallbacks() {
+        myCallbacksDiscarded = true;
+    }
+
+    private void cancelDeadline() {
+        final ScheduledFuture<?> deadline = myDeadline;
+        if (deadline != null) {
+            deadline.cancel(false);
+        }
+    }
+
+    /**
+     * Give this worker a deadline, after which, if construct() has not
+     * returned, it is interrupted, and the worker completes with a null
+     * value: finished() is called, and isTimedOut() will return true. The
+     * deadline is measured from the call to start(), so includes any time
+     * spent queued. This only has an effect if set before the worker is
+     * started.
+     * @param timeout the time allowed, or zero for no deadline
+     * @param unit the unit of the timeout
+     */
+    public void setTimeout(final long timeout, final TimeUnit unit) {
+        setTimeout(timeout, unit, null);
+    }
+
+    /**
+     * Give this worker a deadline, after which, if construct() has not
+     * returned, it is interrupted, and the worker completes with a
+     * fallback value: finished() is called, get() and getValue() return
+     * the fallback value, and isTimedOut() will return true. Any value
+     * construct() later returns is discarded. The deadline is measured
+     * from the call to start(), so includes any time spent queued. This
+     * only has an effect if set before the worker is started.
+     * @param timeout the time allowed, or zero for no deadline
+     * @param unit the unit of the timeout
+     * @param fallbackValue the value to complete with on timeout
+     */
+    public void setTimeout(final long timeout, final TimeUnit unit, final T fallbackValue) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("A timeout cannot be negative");
+        }
+        myTimeoutNanos = unit.toNanos(timeout);
+        myFallbackValue = fallbackValue;
+    }
+
+    /**
+     * Did this worker's deadline pass before construct() returned? If so,
+     * its value is the fallback value given with the timeout.
+     * @return true iff the worker timed out
+     */
+    public boolean isTimedOut() {
+        return myTimedOut;
+    }
+
+    /**
+     * @return the priority of this worker
+     */
+    public WorkerPriority getPriority() {
+        return myPriority;
+    }
+
+    /**
+     * Set the priority of this worker. This only has an effect if set
+     * before the worker is started, or while it is waiting to run in a
+     * PriorityWorkerExecutor.
+     * @param priority the new priority
+     */
+    public void setPriority(final WorkerPriority priority) {
+        if (priority == null) {
+            throw new IllegalArgumentException("A worker must have a priority");
+        }
+        myPriority = priority;
+        final Executor executor = myStartedExecutor;
+        if (executor instanceof PriorityWorkerExecutor) {
+            ((PriorityWorkerExecutor) executor).reprioritise(myConstruct);
+        }
+    }
+
+    /**
+     * Start the worker, by submitting it to its Executor. Subsequent calls
+     * have no effect. If the Executor rejects the worker, the worker fails
+     * with the RejectedExecutionException, which is also rethrown. If a
+     * PriorityWorkerExecutor rejects it later, having queued it, the worker
+     * fails with that rejection.
      */
     public void start() {
-        final Thread t = myThreadVar.get();
-        if (t != null) {
-            t.start();
+        if (!myStarted.compareAndSet(false, true)) {
+            return;
+        }
+        final Executor executor = myExecutor == null ? SwingWorkerExecutors.getDefaultExecutor() : myExecutor;
+        final SwingWorkerMetricsListener metrics = metricsListener;
+        if (metrics != null) {
+            myMetrics = metrics;
+            myQueuedAt = System.nanoTime();
+            metrics.workerQueued(getClass());
+        }
+        final long timeoutNanos = myTimeoutNanos;
+        if (timeoutNanos > 0) {
+            myDeadline = SwingWorkerExecutors.getDeadlineScheduler().schedule(new Runnable() {
+                public void run() {
+                    timeout();
+                }
+            }, timeoutNanos, TimeUnit.NANOSECONDS);
+        }
+        myStartedExecutor = executor;
+        try {
+            executor.execute(myConstruct);
+        } catch (final RejectedExecutionException ree) {
+            rejected(ree);
+            throw ree;
+        }
+    }
+
+    private void rejected(final RejectedExecutionException rejection) {
+        cancelDeadline();
+        final SwingWorkerMetricsListener metrics = myMetrics;
+        if (metrics != null) {
+            metrics.workerDropped(getClass());
         }
+        failWith(rejection);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,252 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Provides the Executors that SwingWorkers submit their construct() calls
+ * to.
+ * <p>
+ * By default, all SwingWorkers share a single pool of daemon threads named
+ * "SwingWorker-n", sized to the number of available processors, fronted by
+ * a PriorityWorkerExecutor so that work is started in WorkerPriority order,
+ * and only a limited number of BACKGROUND workers run at once. Threads
+ * that have been idle for a while are retired, so an application that
+ * isn't doing any background work holds no worker threads. The default may
+ * be replaced, e.g. by an application that wants a larger pool, or by unit
+ * tests that want to run workers synchronously.
+ * <p>
+ * Most workers spend their time waiting on I/O. On JVMs that support
+ * virtual threads, the default may instead start a virtual thread per
+ * task; this is enabled by setting the system property named by
+ * VIRTUAL_THREADS_PROPERTY to true, or by calling
+ * setVirtualThreadsEnabled(true). On older JVMs, the shared pool is used.
+ *
+ * @author matt
+ *
+ */
+public final class SwingWorkerExecutors {
+    private static final Logger LOGGER = Logger.getLogger(SwingWorkerExecutors.class);
+    /**
+     * The system property that, if true, causes the default Executor to
+     * use virtual threads, where the JVM supports them.
+     */
+    public static final String VIRTUAL_THREADS_PROPERTY = "org.devzendo.commonapp.gui.virtualthreads";
+    /**
+     * The system property that sets the maximum number of BACKGROUND
+     * workers that the default Executor runs at once. If not set, half
+     * of the workers that may run at once may be BACKGROUND workers.
+     */
+    public static final String MAX_BACKGROUND_WORKERS_PROPERTY = "org.devzendo.commonapp.gui.maxbackgroundworkers";
+    private static final int MIN_POOL_THREADS = 2;
+    private static final int MAX_VIRTUAL_THREADS = 256;
+    private static final int QUEUE_CAPACITY_PER_PRIORITY = 4096;
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+    private static final Object LOCK = new Object();
+    private static Executor defaultExecutor = null; // guarded by LOCK
+    private static boolean virtualThreadsEnabled = Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY); // guarded by LOCK
+    private static ScheduledThreadPoolExecutor deadlineScheduler = null; // guarded by LOCK
+    private static int maxBackgroundWorkers = Integer.getInteger(MAX_BACKGROUND_WORKERS_PROPERTY, 0); // guarded by LOCK
+
+    private SwingWorkerExecutors() {
+        super();
+    }
+
+    /**
+     * Obtain the Executor used by SwingWorkers that were not given one
+     * explicitly. Unless one has been set, this is created on first use,
+     * and is a PriorityWorkerExecutor that runs work on either virtual
+     * threads, if enabled and supported, or a shared pool sized to the
+     * number of available processors.
+     *
+     * @return the default Executor
+     */
+    public static Executor getDefaultExecutor() {
+        synchronized (LOCK) {
+            if (defaultExecutor == null) {
+                Executor underlyingExecutor = null;
+                int maxRunning = MAX_VIRTUAL_THREADS;
+                if (virtualThreadsEnabled) {
+                    underlyingExecutor = createVirtualThreadExecutor("SwingWorker");
+                }
+                if (underlyingExecutor == null) {
+                    maxRunning = Math.max(MIN_POOL_THREADS, Runtime.getRuntime().availableProcessors());
+                    LOGGER.debug("Creating default SwingWorker pool of " + maxRunning + " threads");
+                    underlyingExecutor = createBoundedExecutor("SwingWorker", maxRunning);
+                }
+                final int maxBackground = maxBackgroundWorkers > 0 ? maxBackgroundWorkers : Math.max(1, maxRunning / 2);
+                defaultExecutor = new PriorityWorkerExecutor(underlyingExecutor, maxRunning, maxBackground, QUEUE_CAPACITY_PER_PRIORITY);
+            }
+            return defaultExecutor;
+        }
+    }
+
+    /**
+     * Set the maximum number of BACKGROUND workers that the default
+     * Executor runs at once, if it is a PriorityWorkerExecutor, overriding
+     * the system property named by MAX_BACKGROUND_WORKERS_PROPERTY.
+     *
+     * @param maxBackground the maximum number of BACKGROUND workers, at
+     * least one
+     */
+    public static void setMaxBackgroundWorkers(final int maxBackground) {
+        if (maxBackground < 1) {
+            throw new IllegalArgumentException("At least one BACKGROUND worker must be allowed to run");
+        }
+        synchronized (LOCK) {
+            maxBackgroundWorkers = maxBackground;
+            if (defaultExecutor instanceof PriorityWorkerExecutor) {
+                ((PriorityWorkerExecutor) defaultExecutor).setMaxRunningBackgroundTasks(maxBackground);
+            }
+        }
+    }
+
+    /**
+     * Enable or disable the use of virtual threads by the default Executor.
+     * This replaces any default Executor, whether created here or set
+     * explicitly; workers that have already been started are unaffected.
+     *
+     * @param enabled true to use virtual threads where supported; false to
+     * use the shared pool
+     */
+    public static void setVirtualThreadsEnabled(final boolean enabled) {
+        synchronized (LOCK) {
+            virtualThreadsEnabled = enabled;
+            defaultExecutor = null;
+        }
+    }
+
+    /**
+     * Has the use of virtual threads been enabled? They will only be used
+     * if the JVM also supports them.
+     *
+     * @return true iff enabled via the system property, or
+     * setVirtualThreadsEnabled
+     */
+    public static boolean isVirtualThreadsEnabled() {
+        synchronized (LOCK) {
+            return virtualThreadsEnabled;
+        }
+    }
+
+    /**
+     * Create an Executor that starts a new virtual thread, named after the
+     * Executor, for each task. This is only possible on JVMs that support
+     * virtual threads; it is looked up reflectively so that this code can
+     * also run on older JVMs.
+     *
+     * @param name the name of the Executor; threads are named name-1,
+     * name-2...
+     * @return the new Executor, or null if virtual threads are not
+     * supported by this JVM
+     */
+    public static ExecutorService createVirtualThreadExecutor(final String name) {
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 1L);
+            final ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            final ExecutorService executor = (ExecutorService) Executors.class
+                .getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, threadFactory);
+            LOGGER.debug("Created virtual thread Executor " + name);
+            return executor;
+        } catch (final Exception e) {
+            // Not present before Java 19; a preview feature (throwing
+            // UnsupportedOperationException) until Java 21.
+            LOGGER.info("Virtual threads are not supported by this JVM (" + e.getClass().getSimpleName() + "); using platform threads for " + name);
+            return null;
+        }
+    }
+
+    /**
+     * Replace the Executor used by SwingWorkers that were not given one
+     * explicitly. Workers that have already been started are unaffected.
+     * Any previous default Executor is not shut down.
+     *
+     * @param executor the new default Executor, or null to revert to the
+     * shared pool.
+     */
+    public static void setDefaultExecutor(final Executor executor) {
+        synchronized (LOCK) {
+            defaultExecutor = executor;
+        }
+    }
+
+    /**
+     * Obtain the single daemon thread that SwingWorker deadlines are
+     * timed on. Tasks scheduled on it must be brief.
+     *
+     * @return the deadline scheduler
+     */
+    static ScheduledExecutorService getDeadlineScheduler() {
+        synchronized (LOCK) {
+            if (deadlineScheduler == null) {
+                deadlineScheduler = new ScheduledThreadPoolExecutor(1, new NamedDaemonThreadFactory("SwingWorkerDeadline"));
+                deadlineScheduler.setRemoveOnCancelPolicy(true);
+            }
+            return deadlineScheduler;
+        }
+    }
+
+    /**
+     * Create a pool of at most a given number of daemon threads, each named
+     * after the pool, that retires its threads when they are idle. Tasks
+     * submitted when all threads are busy are queued.
+     *
+     * @param name the name of the pool; threads are named name-1, name-2...
+     * @param maxThreads the maximum number of threads in the pool
+     * @return the new pool
+     */
+    public static ExecutorService createBoundedExecutor(final String name, final int maxThreads) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("A pool of " + maxThreads + " threads cannot be created");
+        }
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads,
+            KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            new NamedDaemonThreadFactory(name));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private static final class NamedDaemonThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger threadNumber = new AtomicInteger(0);
+
+        NamedDaemonThreadFactory(final String poolName) {
+            name = poolName;
+        }
+
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
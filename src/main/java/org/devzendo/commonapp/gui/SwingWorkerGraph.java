@@ -0,0 +1,276 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A SwingWorkerGraph starts a set of SwingWorkers, some of which need the
+ * results of others before they can run.
+ * <p>
+ * Each worker is added with the workers it depends on. When the graph is
+ * started, all workers without dependencies are started, and so run in
+ * parallel on their Executors. As each worker's construct() completes,
+ * any dependents whose dependencies have all completed are started. The
+ * total time taken is therefore that of the critical path, rather than
+ * the sum of all the workers.
+ * <p>
+ * A worker's finished() is passed to the event thread before its
+ * dependents are started, so finished() calls are made in an order
+ * consistent with the dependencies. If a worker fails, is rejected by its
+ * Executor, or is cancelled, its dependents (and theirs) are cancelled.
+ * <p>
+ * The number of the graph's workers running at once may be limited, in
+ * which case workers whose dependencies have completed wait their turn in
+ * the order they became ready.
+ *
+ * @author matt
+ *
+ */
+public final class SwingWorkerGraph {
+    private static final Logger LOGGER = Logger.getLogger(SwingWorkerGraph.class);
+
+    private final class Node {
+        private final SwingWorker<?, ?> worker;
+        private final List<SwingWorker<?, ?>> dependencies;
+        private final List<Node> dependents = new ArrayList<Node>();
+        private final AtomicInteger outstandingDependencies = new AtomicInteger(0);
+        private final AtomicBoolean nodeStarted = new AtomicBoolean(false);
+
+        Node(final SwingWorker<?, ?> swingWorker, final List<SwingWorker<?, ?>> dependsOn) {
+            worker = swingWorker;
+            dependencies = dependsOn;
+        }
+
+        void start() {
+            worker.toCompletionStage().whenComplete(new BiConsumer<Object, Throwable>() {
+                public void accept(final Object value, final Throwable throwable) {
+                    completed(Node.this, throwable == null);
+                }
+            });
+            // a cancelled worker has already completed, above
+            if (!worker.isCancelled()) {
+                try {
+                    worker.start();
+                } catch (final RejectedExecutionException ree) {
+                    // the worker has failed, so has completed, above,
+                    // cancelling its dependents
+                    LOGGER.warn("Worker " + worker + " was rejected by its Executor: " + ree.getMessage());
+                }
+            }
+        }
+    }
+
+    private final Object lock = new Object();
+    private final Map<SwingWorker<?, ?>, Node> nodes; // guarded by lock
+    private final CompletableFuture<Void> allDone;
+    private final AtomicInteger outstandingWorkers;
+    private boolean started; // guarded by lock
+    private final ArrayDeque<Node> readyNodes; // guarded by lock
+    private int maxRunning; // guarded by lock
+    private int running; // guarded by lock
+
+    /**
+     * Create an empty SwingWorkerGraph.
+     */
+    public SwingWorkerGraph() {
+        nodes = new LinkedHashMap<SwingWorker<?, ?>, Node>();
+        allDone = new CompletableFuture<Void>();
+        outstandingWorkers = new AtomicInteger(0);
+        readyNodes = new ArrayDeque<Node>();
+    }
+
+    /**
+     * Limit the number of the graph's workers that may run at once.
+     * @param maxRunningWorkers the maximum number of workers, or zero for
+     * no limit, which is the default
+     */
+    public void setMaxRunningWorkers(final int maxRunningWorkers) {
+        if (maxRunningWorkers < 0) {
+            throw new IllegalArgumentException("The maximum number of running workers cannot be negative");
+        }
+        synchronized (lock) {
+            maxRunning = maxRunningWorkers;
+        }
+        dispatch();
+    }
+
+    /**
+     * Add a worker to the graph. Its dependencies must also be added to
+     * the graph before it is started, in any order.
+     *
+     * @param worker the worker to add, which must not have been started
+     * @param dependencies the workers whose construct() must complete
+     * before this worker is started
+     */
+    public void addSwingWorker(final SwingWorker<?, ?> worker, final SwingWorker<?, ?>... dependencies) {
+        synchronized (lock) {
+            if (started) {
+                throw new IllegalStateException("Cannot add a worker to a graph that has been started");
+            }
+            if (nodes.containsKey(worker)) {
+                throw new IllegalArgumentException("Worker " + worker + " has already been added");
+            }
+            final List<SwingWorker<?, ?>> dependsOn = new ArrayList<SwingWorker<?, ?>>();
+            for (final SwingWorker<?, ?> dependency : dependencies) {
+                dependsOn.add(dependency);
+            }
+            nodes.put(worker, new Node(worker, dependsOn));
+        }
+    }
+
+    /**
+     * Start all the workers that have no dependencies; the others will be
+     * started as their dependencies complete. A graph can only be started
+     * once.
+     * <p>
+     * If a worker depends on one that has not been added, or the
+     * dependencies form a cycle, an IllegalStateException is thrown, and
+     * no workers are started.
+     */
+    public void start() {
+        final List<Node> roots = new ArrayList<Node>();
+        synchronized (lock) {
+            if (started) {
+                throw new IllegalStateException("The graph has already been started");
+            }
+            for (final Node node : nodes.values()) {
+                for (final SwingWorker<?, ?> dependency : node.dependencies) {
+                    final Node dependencyNode = nodes.get(dependency);
+                    if (dependencyNode == null) {
+                        throw new IllegalStateException("Worker " + node.worker + " depends on worker " + dependency + ", which has not been added");
+                    }
+                    dependencyNode.dependents.add(node);
+                }
+                node.outstandingDependencies.set(node.dependencies.size());
+                if (node.dependencies.isEmpty()) {
+                    roots.add(node);
+                }
+            }
+            checkForCycles(roots);
+            started = true;
+            outstandingWorkers.set(nodes.size());
+        }
+        LOGGER.debug("Starting " + roots.size() + " of " + outstandingWorkers.get() + " workers");
+        if (roots.isEmpty()) {
+            allDone.complete(null);
+        }
+        for (final Node root : roots) {
+            ready(root);
+        }
+    }
+
+    private void checkForCycles(final List<Node> roots) {
+        final Map<Node, Integer> incoming = new LinkedHashMap<Node, Integer>();
+        for (final Node node : nodes.values()) {
+            incoming.put(node, node.dependencies.size());
+        }
+        final LinkedList<Node> ready = new LinkedList<Node>(roots);
+        int visited = 0;
+        while (!ready.isEmpty()) {
+            final Node node = ready.removeFirst();
+            visited++;
+            for (final Node dependent : node.dependents) {
+                final int remaining = incoming.get(dependent) - 1;
+                incoming.put(dependent, remaining);
+                if (remaining == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        if (visited != nodes.size()) {
+            for (final Node node : nodes.values()) {
+                node.dependents.clear();
+            }
+            throw new IllegalStateException("The worker dependencies contain a cycle");
+        }
+    }
+
+    private void ready(final Node node) {
+        if (!node.nodeStarted.compareAndSet(false, true)) {
+            return; // cancelled by one dependency before another completed
+        }
+        synchronized (lock) {
+            readyNodes.addLast(node);
+        }
+        dispatch();
+    }
+
+    private void dispatch() {
+        while (true) {
+            final Node next;
+            synchronized (lock) {
+                if (maxRunning > 0 && running >= maxRunning) {
+                    return;
+                }
+                next = readyNodes.pollFirst();
+                if (next == null) {
+                    return;
+                }
+                running++;
+            }
+            next.start();
+        }
+    }
+
+    private void completed(final Node node, final boolean succeeded) {
+        synchronized (lock) {
+            running--;
+        }
+        for (final Node dependent : node.dependents) {
+            if (succeeded) {
+                if (dependent.outstandingDependencies.decrementAndGet() == 0) {
+                    ready(dependent);
+                }
+            } else {
+                // its own completion will cancel its dependents in turn. It
+                // may already have been cancelled, e.g. by a
+                // SwingWorkerScope, but must still be completed.
+                LOGGER.debug("Cancelling worker " + dependent.worker + " since a dependency did not complete");
+                dependent.worker.cancel(true);
+                ready(dependent);
+            }
+        }
+        if (outstandingWorkers.decrementAndGet() == 0) {
+            allDone.complete(null);
+        }
+        dispatch();
+    }
+
+    /**
+     * Obtain a CompletionStage that completes when every worker in the
+     * graph has completed, failed, or been cancelled.
+     *
+     * @return the CompletionStage
+     */
+    public CompletionStage<Void> toCompletionStage() {
+        return allDone;
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A SwingWorkerMetricsListener that aggregates worker lifecycle timings
+ * per worker class: counts, and histograms of the time spent queued,
+ * constructing, and waiting for the event thread to call finished(); and
+ * gauges of the workers currently in each of those stages.
+ *
+ * @author matt
+ *
+ */
+public final class SwingWorkerMetrics implements SwingWorkerMetricsListener {
+    private static final Logger LOGGER = Logger.getLogger(SwingWorkerMetrics.class);
+
+    /**
+     * The metrics for one class of worker.
+     */
+    public static final class WorkerClassMetrics {
+        private final Class<?> workerClass;
+        private final LatencyHistogram queueLatency = new LatencyHistogram();
+        private final LatencyHistogram constructLatency = new LatencyHistogram();
+        private final LatencyHistogram finishedLatency = new LatencyHistogram();
+        private final AtomicInteger queued = new AtomicInteger(0);
+        private final AtomicInteger constructing = new AtomicInteger(0);
+        private final AtomicInteger awaitingFinished = new AtomicInteger(0);
+        private final AtomicInteger dropped = new AtomicInteger(0);
+        private final AtomicInteger unfinished = new AtomicInteger(0);
+
+        WorkerClassMetrics(final Class<?> clazz) {
+            workerClass = clazz;
+        }
+
+        /**
+         * @return the class of worker these metrics are for
+         */
+        public Class<?> getWorkerClass() {
+            return workerClass;
+        }
+
+        /**
+         * @return the time workers spent queued before construct() was
+         * called
+         */
+        public LatencyHistogram getQueueLatency() {
+            return queueLatency;
+        }
+
+        /**
+         * @return the time workers spent in construct()
+         */
+        public LatencyHistogram getConstructLatency() {
+            return constructLatency;
+        }
+
+        /**
+         * @return the time from construct() returning to finished() being
+         * called on the event thread
+         */
+        public LatencyHistogram getFinishedLatency() {
+            return finishedLatency;
+        }
+
+        /**
+         * @return the number of workers currently queued
+         */
+        public int getQueuedCount() {
+            return queued.get();
+        }
+
+        /**
+         * @return the number of workers currently in construct()
+         */
+        public int getConstructingCount() {
+            return constructing.get();
+        }
+
+        /**
+         * @return the number of workers currently waiting for finished()
+         * to be called
+         */
+        public int getAwaitingFinishedCount() {
+            return awaitingFinished.get();
+        }
+
+        /**
+         * @return the number of workers cancelled before construct() was
+         * called
+         */
+        public int getDroppedCount() {
+            return dropped.get();
+        }
+
+        /**
+         * @return the number of workers that failed, were cancelled, or
+         * timed out, during construct(). Timed out workers have had
+         * finished() called with their fallback value.
+         */
+        public int getUnfinishedCount() {
+            return unfinished.get();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return workerClass.getName()
+                + ": in flight " + queued.get() + "/" + constructing.get() + "/" + awaitingFinished.get()
+                + "; queue " + queueLatency
+                + "; construct " + constructLatency
+                + "; finished " + finishedLatency
+                + "; dropped " + dropped.get() + ", unfinished " + unfinished.get();
+        }
+    }
+
+    private final KeyedMetrics<Class<?>, WorkerClassMetrics> metrics = new KeyedMetrics<Class<?>, WorkerClassMetrics>() {
+        @Override
+        protected WorkerClassMetrics create(final Class<?> workerClass) {
+            return new WorkerClassMetrics(workerClass);
+        }
+    };
+
+    /**
+     * Obtain the metrics for a class of worker.
+     * @param workerClass the class of worker
+     * @return its metrics, or null if no workers of that class have been
+     * queued.
+     */
+    public WorkerClassMetrics getMetrics(final Class<?> workerClass) {
+        return metrics.get(workerClass);
+    }
+
+    /**
+     * @return the metrics for every class of worker that has been queued
+     */
+    public List<WorkerClassMetrics> getAllMetrics() {
+        return metrics.getAll();
+    }
+
+    /**
+     * @return the number of workers, of all classes, that have been queued
+     * and have not yet been dropped, failed, or had finished() called.
+     */
+    public int getInFlightCount() {
+        int inFlight = 0;
+        for (final WorkerClassMetrics classMetrics : metrics.getAll()) {
+            inFlight += classMetrics.getQueuedCount() + classMetrics.getConstructingCount() + classMetrics.getAwaitingFinishedCount();
+        }
+        return inFlight;
+    }
+
+    /**
+     * Log the metrics for every class of worker at INFO level.
+     */
+    public void logSummary() {
+        for (final WorkerClassMetrics classMetrics : metrics.getAll()) {
+            LOGGER.info(classMetrics);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void workerQueued(final Class<?> workerClass) {
+        metricsFor(workerClass).queued.incrementAndGet();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void workerDropped(final Class<?> workerClass) {
+        final WorkerClassMetrics classMetrics = metricsFor(workerClass);
+        classMetrics.queued.decrementAndGet();
+        classMetrics.dropped.incrementAndGet();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void workerStarted(final Class<?> workerClass, final long queuedNanos) {
+        final WorkerClassMetrics classMetrics = metricsFor(workerClass);
+        classMetrics.queued.decrementAndGet();
+        classMetrics.constructing.incrementAndGet();
+        classMetrics.queueLatency.record(queuedNanos);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void workerConstructed(final Class<?> workerClass, final long constructNanos, final boolean willFinish) {
+        final WorkerClassMetrics classMetrics = metricsFor(workerClass);
+        classMetrics.constructing.decrementAndGet();
+        classMetrics.constructLatency.record(constructNanos);
+        if (willFinish) {
+            classMetrics.awaitingFinished.incrementAndGet();
+        } else {
+            classMetrics.unfinished.incrementAndGet();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void workerFinished(final Class<?> workerClass, final long finishedDelayNanos) {
+        final WorkerClassMetrics classMetrics = metricsFor(workerClass);
+        classMetrics.awaitingFinished.decrementAndGet();
+        classMetrics.finishedLatency.record(finishedDelayNanos);
+    }
+
+    private WorkerClassMetrics metricsFor(final Class<?> workerClass) {
+        return metrics.getOrCreate(workerClass);
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui;
+
+/**
+ * Notified of the stages in each SwingWorker's lifecycle, with the time
+ * spent in the preceding stage, so that where worker time goes can be
+ * measured. Install with SwingWorker.setMetricsListener.
+ * <p>
+ * A started worker is queued, then either dropped (if cancelled before it
+ * runs, or rejected by its Executor), or started. A started worker is then constructed; if it is to
+ * have its finished() called, that is then reported.
+ * <p>
+ * Methods are called on worker threads and the event thread, so must be
+ * thread-safe, and quick.
+ *
+ * @author matt
+ *
+ */
+public interface SwingWorkerMetricsListener {
+    /**
+     * A worker has been submitted to its Executor.
+     * @param workerClass the class of the worker
+     */
+    void workerQueued(Class<?> workerClass);
+
+    /**
+     * A queued worker was cancelled before construct() was called, or was
+     * rejected by its Executor.
+     * @param workerClass the class of the worker
+     */
+    void workerDropped(Class<?> workerClass);
+
+    /**
+     * A worker's construct() is about to be called.
+     * @param workerClass the class of the worker
+     * @param queuedNanos how long it waited to be run after being
+     * submitted
+     */
+    void workerStarted(Class<?> workerClass, long queuedNanos);
+
+    /**
+     * A worker's construct() has returned or thrown.
+     * @param workerClass the class of the worker
+     * @param constructNanos how long construct() took
+     * @param willFinish true if finished() has been passed to the event
+     * thread; false if the worker failed or was cancelled
+     */
+    void workerConstructed(Class<?> workerClass, long constructNanos, boolean willFinish);
+
+    /**
+     * A worker's finished() is about to be called on the event thread.
+     * @param workerClass the class of the worker
+     * @param finishedDelayNanos how long finished() waited for the event
+     * thread after construct() returned
+     */
+    void workerFinished(Class<?> workerClass, long finishedDelayNanos);
+}
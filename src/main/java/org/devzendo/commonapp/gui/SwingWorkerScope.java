@@ -0,0 +1,235 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui;
+
+import java.awt.Component;
+import java.awt.Window;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A SwingWorkerScope tracks the SwingWorkers doing work for some part of
+ * the GUI, so that they can all be abandoned when it goes away.
+ * <p>
+ * When the scope is closed, every worker in it that has not yet finished
+ * is cancelled, interrupting construct() if it is running, and any
+ * process() or finished() calls that have not yet been made are dropped,
+ * so that nothing is done to components that have been disposed of.
+ * Workers added after closing are cancelled immediately. A scope can be
+ * closed explicitly, or tied to the lifetime of a Window (closed when it
+ * is disposed of) or Component (closed when it is no longer displayable).
+ *
+ * @author matt
+ *
+ */
+public final class SwingWorkerScope {
+    private static final Logger LOGGER = Logger.getLogger(SwingWorkerScope.class);
+
+    private final String name;
+    private final Object lock = new Object();
+    private final Map<SwingWorker<?, ?>, Boolean> workers; // guarded by lock
+    private boolean closed; // guarded by lock
+    private int abandonedCount; // guarded by lock
+    private Runnable detach; // guarded by lock
+
+    /**
+     * Create a scope that is closed explicitly.
+     * @param scopeName the name of the scope, for diagnostics
+     */
+    public SwingWorkerScope(final String scopeName) {
+        name = scopeName;
+        workers = new IdentityHashMap<SwingWorker<?, ?>, Boolean>();
+    }
+
+    /**
+     * Create a scope that is closed when a Window is disposed of.
+     * @param window the Window
+     * @return the scope
+     */
+    public static SwingWorkerScope forWindow(final Window window) {
+        final SwingWorkerScope scope = new SwingWorkerScope(window.getClass().getSimpleName());
+        final WindowAdapter windowListener = new WindowAdapter() {
+            @Override
+            public void windowClosed(final WindowEvent e) {
+                scope.close();
+            }
+        };
+        window.addWindowListener(windowListener);
+        scope.setDetach(new Runnable() {
+            public void run() {
+                window.removeWindowListener(windowListener);
+            }
+        });
+        return scope;
+    }
+
+    /**
+     * Create a scope that is closed when a Component stops being
+     * displayable, e.g. when the Window containing it is disposed of, or
+     * it is removed from its container.
+     * @param component the Component
+     * @return the scope
+     */
+    public static SwingWorkerScope forComponent(final Component component) {
+        final SwingWorkerScope scope = new SwingWorkerScope(component.getClass().getSimpleName());
+        final HierarchyListener hierarchyListener = new HierarchyListener() {
+            public void hierarchyChanged(final HierarchyEvent e) {
+                if ((e.getChangeFlags() & HierarchyEvent.DISPLAYABILITY_CHANGED) != 0
+                        && !component.isDisplayable()) {
+                    scope.close();
+                }
+            }
+        };
+        component.addHierarchyListener(hierarchyListener);
+        scope.setDetach(new Runnable() {
+            public void run() {
+                component.removeHierarchyListener(hierarchyListener);
+            }
+        });
+        return scope;
+    }
+
+    private void setDetach(final Runnable detachRunnable) {
+        synchronized (lock) {
+            detach = detachRunnable;
+        }
+    }
+
+    /**
+     * Add a worker to the scope, without starting it. It stays in the
+     * scope until its finished() has been called, or it fails or is
+     * cancelled.
+     * @param worker the worker
+     */
+    public void add(final SwingWorker<?, ?> worker) {
+        final boolean alreadyClosed;
+        synchronized (lock) {
+            alreadyClosed = closed;
+            if (alreadyClosed) {
+                abandonedCount++;
+            } else {
+                workers.put(worker, Boolean.TRUE);
+            }
+        }
+        if (alreadyClosed) {
+            abandon(worker);
+            return;
+        }
+        worker.toCompletionStage().whenComplete(new BiConsumer<Object, Throwable>() {
+            public void accept(final Object value, final Throwable throwable) {
+                // finished() has been passed to the event thread, so
+                // remove after it has been called
+                GUIUtils.invokeLaterOnEventThread(new Runnable() {
+                    public void run() {
+                        synchronized (lock) {
+                            workers.remove(worker);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Add a worker to the scope, and start it.
+     * @param worker the worker
+     */
+    public void start(final SwingWorker<?, ?> worker) {
+        add(worker);
+        worker.start();
+    }
+
+    /**
+     * Close the scope, abandoning all the workers in it. Subsequent calls
+     * have no effect.
+     * @return the number of workers abandoned
+     */
+    public int close() {
+        final List<SwingWorker<?, ?>> abandoned;
+        final Runnable detachRunnable;
+        synchronized (lock) {
+            if (closed) {
+                return 0;
+            }
+            closed = true;
+            abandoned = new ArrayList<SwingWorker<?, ?>>(workers.keySet());
+            workers.clear();
+            detachRunnable = detach;
+            detach = null;
+        }
+        int stillWorking = 0;
+        for (final SwingWorker<?, ?> worker : abandoned) {
+            if (abandon(worker)) {
+                stillWorking++;
+            }
+        }
+        synchronized (lock) {
+            abandonedCount += abandoned.size();
+        }
+        if (detachRunnable != null) {
+            detachRunnable.run();
+        }
+        if (!abandoned.isEmpty()) {
+            LOGGER.info("Closed worker scope " + name + ": abandoned " + abandoned.size()
+                + " workers, of which " + stillWorking + " had not completed");
+        }
+        return abandoned.size();
+    }
+
+    private boolean abandon(final SwingWorker<?, ?> worker) {
+        worker.discardCallbacks();
+        return worker.cancel(true);
+    }
+
+    /**
+     * @return true iff the scope has been closed
+     */
+    public boolean isClosed() {
+        synchronized (lock) {
+            return closed;
+        }
+    }
+
+    /**
+     * @return the number of workers in the scope that have not yet
+     * finished
+     */
+    public int getActiveCount() {
+        synchronized (lock) {
+            return workers.size();
+        }
+    }
+
+    /**
+     * @return the number of workers that were abandoned when the scope was
+     * closed
+     */
+    public int getAbandonedCount() {
+        synchronized (lock) {
+            return abandonedCount;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui;
+
+/**
+ * The classes of priority of background GUI work, highest first. Queued
+ * work of a higher priority is always started before queued work of a
+ * lower priority.
+ *
+ * @author matt
+ *
+ */
+public enum WorkerPriority {
+    /**
+     * Work the user has just asked for, and is waiting on, e.g. the
+     * result of choosing a menu item.
+     */
+    INTERACTIVE,
+
+    /**
+     * Work that loads content the user can currently see, e.g. the
+     * sections of a dialog that is being opened. This is the default.
+     */
+    VISIBLE_CONTENT,
+
+    /**
+     * Work that the user isn't waiting on, e.g. refreshes, or loading
+     * content that isn't yet visible.
+     */
+    BACKGROUND
+}
@@ -16,20 +16,34 @@
 
 package org.devzendo.commonapp.gui.dialog.snaildialog;
 
-import java.awt.AWTEvent;
+import java.awt.Component;
 import java.awt.Container;
 import java.awt.Frame;
-import java.awt.Toolkit;
-import java.awt.event.AWTEventListener;
-import java.awt.event.WindowEvent;
+import java.awt.Window;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
 
 import javax.swing.JDialog;
+import javax.swing.JTabbedPane;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
 import org.apache.log4j.Logger;
 import org.devzendo.commonapp.gui.CursorManager;
+import org.devzendo.commonapp.gui.GUIUtils;
 import org.devzendo.commonapp.gui.SwingWorker;
+import org.devzendo.commonapp.gui.SwingWorkerGraph;
+import org.devzendo.commonapp.gui.SwingWorkerScope;
+import org.devzendo.commonapp.gui.WorkerPriority;
+import org.devzendo.commonapp.gui.dialog.snaildialog.SnailDialogWorkers.Registration;
 
 
 /**
@@ -54,8 +68,38 @@ import org.devzendo.commonapp.gui.SwingWorker;
  * construction is finished, it will be set back to normal. 
  *
  * During initialisation, several SwingWorkers can be constructed and added
- * to a list. Once the dialog is visible, these will be executed (then the
- * cursor is set back normal).
+ * to a list. Once the dialog is visible, these will be executed one at a
+ * time, in the order they were added (then the cursor is set back normal,
+ * after every worker has finished). Workers that need the results of others
+ * can be added with those dependencies, and will be started once they have
+ * completed. Dialogs whose workers may run together can set an execution
+ * policy that allows it, e.g. SnailDialogExecutionPolicy.PARALLEL. Workers
+ * may be added to
+ * numbered phases, so that e.g. the visible tab is loaded before the others.
+ * If the dialog is closed before they have all finished, the remainder are
+ * abandoned.
+ *
+ * Dialogs that are expensive to build and opened repeatedly may be made
+ * reusable: clearAndHide() then hides the dialog rather than disposing of
+ * it, keeping its loaded content, and when it is shown again only the
+ * workers added by initialiseRefresh() are executed.
+ *
+ * Parts of the dialog may be placed in SnailDialogSections, added with the
+ * workers that load them; each shows a placeholder until its workers have
+ * finished. In progressive mode, the hourglass is removed as soon as the
+ * first worker has finished, rather than the last. The time taken for the
+ * window to open, the first content to be shown, and the dialog to be
+ * fully loaded are reported to the SnailDialogTimingListener, if set.
+ *
+ * The content of a JTabbedPane's tabs may be loaded lazily: only the workers
+ * of the tab that is selected when the dialog opens are executed with the
+ * others, those of the other tabs being executed when the tab is first
+ * selected, or optionally in the background once the dialog has loaded.
+ * Each such tab shows a placeholder until its workers have finished.
+ *
+ * Dialogs may also be built ahead of time, while the application is idle,
+ * by a SnailDialogPreconstructor, which runs their workers at background
+ * priority before they are shown.
  * @author matt
  *
  */
@@ -63,10 +107,52 @@ import org.devzendo.commonapp.gui.SwingWorker;
 public abstract class AbstractSnailDialog extends JDialog {
     private static final Logger LOGGER = Logger
             .getLogger(AbstractSnailDialog.class);
+    /**
+     * The phase that workers added without one are executed in.
+     */
+    public static final int DEFAULT_PHASE = 0;
+
+    // Static, so that it doesn't keep the dialog from being collected
+    private static final WindowOpenedDispatcher.WindowOpenedListener OPENED_LISTENER =
+        new WindowOpenedDispatcher.WindowOpenedListener() {
+            public void windowOpened(final Window window) {
+                ((AbstractSnailDialog) window).opened();
+            }
+        };
+
+    private static volatile SnailDialogTimingListener timingListener;
+
+    private static final class TabLoad {
+        private final JTabbedPane tabbedPane;
+        private final Component tab;
+        private final SnailDialogTabPlaceholder placeholder;
+        private final List<Registration> registrations = new ArrayList<Registration>();
+        private boolean started;
+
+        TabLoad(final JTabbedPane tabs, final Component tabComponent, final SnailDialogTabPlaceholder tabPlaceholder) {
+            tabbedPane = tabs;
+            tab = tabComponent;
+            placeholder = tabPlaceholder;
+        }
+    }
+
     private final CursorManager cursorManager;
-    private final List<SwingWorker> workers;
+    private final SnailDialogWorkers workers; // guarded by lock
+    private final SwingWorkerScope scope;
     private final Object lock;
-    private AWTEventListener awtEventListener;
+    private boolean workersStarted; // guarded by lock
+    private boolean workersRunning; // guarded by lock
+    private boolean reusable; // guarded by lock
+    private boolean hiddenForReuse; // guarded by lock
+    private boolean hourglassShown; // guarded by lock
+    private boolean progressive; // guarded by lock
+    private long loadStartedAt; // guarded by lock
+    private boolean contentShown; // guarded by lock
+    private int outstandingWorkers; // guarded by lock
+    private boolean preconstructed; // guarded by lock
+    private final Map<Component, TabLoad> tabLoads; // guarded by lock
+    private final Set<JTabbedPane> tabbedPanes; // guarded by lock
+    private boolean loadTabsInBackground; // guarded by lock
 
     /**
      * Construct the AbstractSnailDialog
@@ -80,7 +166,10 @@ public abstract class AbstractSnailDialog extends JDialog {
         cursorManager = cursor;
         setTitle(title);
         lock = new Object();
-        workers = new ArrayList<SwingWorker>();
+        workers = new SnailDialogWorkers();
+        tabLoads = new LinkedHashMap<Component, TabLoad>();
+        tabbedPanes = new HashSet<JTabbedPane>();
+        scope = SwingWorkerScope.forWindow(this);
     }
 
     /**
@@ -88,36 +177,89 @@ public abstract class AbstractSnailDialog extends JDialog {
      * construction process.
      */
     public final void postConstruct() {
+        synchronized (lock) {
+            hourglassShown = true;
+            loadStartedAt = System.nanoTime();
+        }
         cursorManager.hourglassViaEventThread(this.getClass().getSimpleName());
+        construct();
+    }
+
+    /**
+     * Construct the dialog ahead of its being shown, starting its workers
+     * at background priority now rather than when it becomes visible. The
+     * cursor is left alone. Called on the event thread by a
+     * SnailDialogPreconstructor instead of postConstruct().
+     */
+    final void preconstruct() {
+        synchronized (lock) {
+            loadStartedAt = System.nanoTime();
+            preconstructed = true;
+        }
+        construct();
+        startWorkers();
+    }
+
+    /**
+     * A preconstructed dialog is being handed over to be shown; if its
+     * workers have not all finished, they are no longer background work:
+     * raise their priority, and show the hourglass until they have.
+     */
+    final void handedOver() {
+        final List<SwingWorker<?, ?>> unfinished;
+        final boolean showHourglass;
+        synchronized (lock) {
+            if (!workersRunning) {
+                return;
+            }
+            unfinished = workers.getUnfinishedWorkers();
+            showHourglass = !hourglassShown;
+            hourglassShown = true;
+        }
+        // outside the lock, since a queued worker may now be started
+        for (final SwingWorker<?, ?> worker : unfinished) {
+            worker.setPriority(WorkerPriority.VISIBLE_CONTENT);
+        }
+        if (showHourglass) {
+            cursorManager.hourglassViaEventThread(this.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * @return true if the dialog's workers have all finished
+     */
+    final boolean isLoaded() {
+        synchronized (lock) {
+            return workersStarted && !workersRunning;
+        }
+    }
+
+    /**
+     * Abandon a dialog that was preconstructed but will never be shown:
+     * its unfinished workers are abandoned and it is disposed of.
+     */
+    final void discard() {
+        scope.close();
+        WindowOpenedDispatcher.getInstance().deregister(this);
+        dispose();
+    }
+
+    private void construct() {
         setContentPane(createMainComponent());
         initialise();
-        addCursorNormalWorker();
         
         // Load and display the about texts after the window has been
         // made visible. Performance legerdemain...
-        awtEventListener = new AWTEventListener() {
-                            public void eventDispatched(final AWTEvent event) {
-                                if (event.getID() == WindowEvent.WINDOW_OPENED && event.getSource() == AbstractSnailDialog.this) {
-                                    synchronized (lock) {
-                                        final Thread swingWorkerExecutorThread = new Thread(new Runnable() {
-                                            public void run() {
-                                                LOGGER.debug("executing all swing workers");
-                                                for (SwingWorker worker : workers) {
-                                                    LOGGER.debug("executing swing worker");
-                                                    worker.start();
-                                                    LOGGER.debug("executed swing worker");
-                                                }
-                                                LOGGER.debug("executed all swing workers");
-                                            }
-                                        });
-                                        swingWorkerExecutorThread.setName("SwingWorkerExecutor");
-                                        swingWorkerExecutorThread.start();
-                                    }
-                                }
-                            }
-                            };
-        Toolkit.getDefaultToolkit().addAWTEventListener(awtEventListener, AWTEvent.WINDOW_EVENT_MASK);
+        WindowOpenedDispatcher.getInstance().register(this, OPENED_LISTENER);
+        // WINDOW_OPENED is only dispatched the first time the dialog is shown
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentShown(final ComponentEvent e) {
+                reopened();
+            }
+        });
     }
+
     
     /**
      * Create and return the dialog's main component; might be a JPanel or
@@ -127,21 +269,83 @@ public abstract class AbstractSnailDialog extends JDialog {
      */
     protected abstract Container createMainComponent();
 
-    private void addCursorNormalWorker() {
-        addSwingWorker(new SwingWorker() {
+    /**
+     * Make this dialog reusable, or not, as it is by default. A reusable
+     * dialog is hidden by clearAndHide() rather than disposed of; showing
+     * it again executes the workers added by initialiseRefresh(). Dispose
+     * of a reusable dialog when it is no longer needed.
+     * @param reuse true to make the dialog reusable
+     */
+    public final void setReusable(final boolean reuse) {
+        synchronized (lock) {
+            reusable = reuse;
+        }
+    }
 
-            @Override
-            public Object construct() {
-                LOGGER.debug("Normal Cursor SwingWorker - construct");
-                return null;
-            }
-            
-            @Override
-            public void finished() {
-                LOGGER.debug("Normal Cursor SwingWorker - finished");
-                cursorManager.normal(this.getClass().getSimpleName());
+    /**
+     * @return true if the dialog is reusable
+     */
+    public final boolean isReusable() {
+        synchronized (lock) {
+            return reusable;
+        }
+    }
+
+    /**
+     * Set the listener notified of all dialogs' load timings.
+     * @param listener the listener, or null for none
+     */
+    public static void setTimingListener(final SnailDialogTimingListener listener) {
+        timingListener = listener;
+    }
+
+    /**
+     * @return the listener notified of all dialogs' load timings, or null
+     */
+    public static SnailDialogTimingListener getTimingListener() {
+        return timingListener;
+    }
+
+    /**
+     * Set progressive mode, in which the hourglass is removed once the
+     * first worker has finished, its section being usable, rather than
+     * once all of them have.
+     * @param progressiveMode true for progressive mode
+     */
+    protected final void setProgressive(final boolean progressiveMode) {
+        synchronized (lock) {
+            progressive = progressiveMode;
+        }
+    }
+
+    /**
+     * Set whether the workers of tabs added with addTabSwingWorker that
+     * have not been selected are executed at background priority once the
+     * dialog has loaded, or not until the tab is first selected, as by
+     * default.
+     * @param background true to load unselected tabs in the background
+     */
+    protected final void setLoadTabsInBackground(final boolean background) {
+        synchronized (lock) {
+            loadTabsInBackground = background;
+        }
+    }
+
+    /**
+     * Set the policy controlling how many workers run at once, and whether
+     * phases run in sequence. Must be called before the dialog is made
+     * visible, typically from initialise.
+     * @param policy the execution policy
+     * @throws IllegalArgumentException if the policy has sequential phases,
+     * and a worker already added depends on a worker in another phase
+     */
+    protected final void setExecutionPolicy(final SnailDialogExecutionPolicy policy) {
+        synchronized (lock) {
+            if (workersStarted) {
+                throw new IllegalStateException("Cannot change the execution policy once the workers have started");
             }
-        });
+            workers.setExecutionPolicy(policy);
+        }
     }
 
     /**
@@ -149,27 +353,381 @@ public abstract class AbstractSnailDialog extends JDialog {
      * of workers that will be executed when the window is visible.
      * @param worker the worker to execute upon visibility.
      */
-    protected final void addSwingWorker(final SwingWorker worker) {
+    protected final void addSwingWorker(final SwingWorker<?, ?> worker) {
+        addPhasedSwingWorker(DEFAULT_PHASE, worker);
+    }
+
+    /**
+     * Called by subclasses' initialise method, add a SwingWorker to the list
+     * of workers that will be executed when the window is visible, once the
+     * workers it depends on have completed. Those workers must also be added.
+     * @param worker the worker to execute upon visibility.
+     * @param dependencies the workers whose results this worker needs.
+     */
+    protected final void addSwingWorker(final SwingWorker<?, ?> worker, final SwingWorker<?, ?>... dependencies) {
+        addPhasedSwingWorker(DEFAULT_PHASE, worker, dependencies);
+    }
+
+    /**
+     * Called by subclasses' initialise method, add a SwingWorker to the list
+     * of workers that will be executed in a given phase when the window is
+     * visible; lower phases are executed first. If the execution policy has
+     * sequential phases, the worker's dependencies must be in the same phase.
+     * @param phase the phase in which to execute the worker.
+     * @param worker the worker to execute upon visibility.
+     * @param dependencies the workers whose results this worker needs.
+     * @throws IllegalArgumentException if the execution policy has
+     * sequential phases, and the worker depends on, or is depended on by, a
+     * worker in another phase
+     */
+    protected final void addPhasedSwingWorker(final int phase, final SwingWorker<?, ?> worker, final SwingWorker<?, ?>... dependencies) {
+        addPhasedSectionSwingWorker(phase, null, worker, dependencies);
+    }
+
+    /**
+     * Called by subclasses' initialise method, add a SwingWorker that loads
+     * (part of) a section's content to the list of workers that will be
+     * executed when the window is visible. The section shows its
+     * placeholder until all the workers added for it have finished.
+     * @param section the section whose content the worker loads.
+     * @param worker the worker to execute upon visibility.
+     * @param dependencies the workers whose results this worker needs.
+     */
+    protected final void addSectionSwingWorker(final SnailDialogSection section, final SwingWorker<?, ?> worker, final SwingWorker<?, ?>... dependencies) {
+        addPhasedSectionSwingWorker(DEFAULT_PHASE, section, worker, dependencies);
+    }
+
+    /**
+     * Called by subclasses' initialise method, add a SwingWorker that loads
+     * (part of) a section's content to the list of workers that will be
+     * executed in a given phase when the window is visible.
+     * @param phase the phase in which to execute the worker.
+     * @param section the section whose content the worker loads, or null
+     * @param worker the worker to execute upon visibility.
+     * @param dependencies the workers whose results this worker needs.
+     * @throws IllegalArgumentException if the execution policy has
+     * sequential phases, and the worker depends on, or is depended on by, a
+     * worker in another phase
+     */
+    protected final void addPhasedSectionSwingWorker(final int phase, final SnailDialogSection section, final SwingWorker<?, ?> worker, final SwingWorker<?, ?>... dependencies) {
+        addRegistration(phase, new Registration(worker, dependencies, section, null));
+        if (section != null) {
+            section.workerAdded();
+        }
+    }
+
+    private void addRegistration(final int phase, final Registration registration) {
+        final SwingWorker<?, ?> worker = registration.worker;
         synchronized (lock) {
-            workers.add(worker);
+            if (workersStarted) {
+                throw new IllegalStateException("Cannot add a worker once the workers have started");
+            }
+            if (scope.isClosed()) {
+                throw new IllegalStateException("Cannot add a worker to a dialog that has been disposed");
+            }
+            workers.add(phase, registration);
+            scope.add(worker);
         }
     }
-    
+
+    /**
+     * Called by subclasses' initialise method, add a SwingWorker that loads
+     * (part of) the content of a tab. The tab's workers are executed with
+     * the dialog's others if it is selected when the dialog opens,
+     * otherwise when it is first selected. Until they have finished, a
+     * placeholder is shown over the tab; the tab's component is left in the
+     * tabbed pane. Must be called on the event thread.
+     * @param tabs the tabbed pane
+     * @param tab the tab's component, as added to the tabbed pane
+     * @param worker the worker that loads the tab's content.
+     * @param dependencies the workers whose results this worker needs,
+     * which must be workers of the same tab.
+     */
+    protected final void addTabSwingWorker(final JTabbedPane tabs, final Component tab, final SwingWorker<?, ?> worker, final SwingWorker<?, ?>... dependencies) {
+        final TabLoad load;
+        synchronized (lock) {
+            TabLoad existing = tabLoads.get(tab);
+            if (existing == null) {
+                if (tabs.indexOfComponent(tab) == -1) {
+                    throw new IllegalArgumentException("Component " + tab + " is not a tab of " + tabs);
+                }
+                existing = new TabLoad(tabs, tab, new SnailDialogTabPlaceholder(tab, getLayeredPane()));
+                tabLoads.put(tab, existing);
+                if (tabbedPanes.add(tabs)) {
+                    tabs.addChangeListener(new ChangeListener() {
+                        public void stateChanged(final ChangeEvent e) {
+                            tabSelected(tabs);
+                        }
+                    });
+                }
+            }
+            load = existing;
+            if (!load.started) {
+                if (scope.isClosed()) {
+                    throw new IllegalStateException("Cannot add a worker to a dialog that has been disposed");
+                }
+                load.registrations.add(new Registration(worker, dependencies, null, load.placeholder));
+                scope.add(worker);
+            }
+        }
+        if (load.started) {
+            // refreshing a tab that has been loaded
+            addRegistration(DEFAULT_PHASE, new Registration(worker, dependencies, null, load.placeholder));
+        }
+        load.placeholder.workerAdded();
+    }
+
+    private void tabSelected(final JTabbedPane tabs) {
+        TabLoad selected = null;
+        synchronized (lock) {
+            if (!workersStarted) {
+                return; // the selected tab is loaded when the workers start
+            }
+            for (final TabLoad load : tabLoads.values()) {
+                if (load.tabbedPane == tabs && load.tab == tabs.getSelectedComponent()) {
+                    selected = load;
+                    break;
+                }
+            }
+        }
+        if (selected != null) {
+            startTab(selected, WorkerPriority.INTERACTIVE);
+        }
+    }
+
+    private void startTab(final TabLoad load, final WorkerPriority priority) {
+        final SwingWorkerGraph graph;
+        synchronized (lock) {
+            if (load.started || scope.isClosed()) {
+                return;
+            }
+            load.started = true;
+            for (final Registration registration : load.registrations) {
+                registration.worker.setPriority(priority);
+            }
+            graph = workers.createGraph(load.registrations);
+        }
+        LOGGER.debug("executing swing workers of tab " + load.tabbedPane.indexOfComponent(load.tab) + " at " + priority + " priority");
+        for (final Registration registration : load.registrations) {
+            registration.worker.toCompletionStage().whenComplete(new BiConsumer<Object, Throwable>() {
+                public void accept(final Object value, final Throwable throwable) {
+                    // the worker may complete on the event thread, e.g. when
+                    // cancelled or rejected there, before its finished()
+                    // has run
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            if (!scope.isClosed()) {
+                                load.placeholder.workerDone();
+                            }
+                        }
+                    });
+                }
+            });
+        }
+        SnailDialogWorkers.start(graph, load.registrations);
+    }
+
+    private void opened() {
+        final SnailDialogTimingListener listener = timingListener;
+        if (listener != null) {
+            listener.windowOpened(this, sinceLoadStarted());
+        }
+        startWorkers();
+    }
+
+    private long sinceLoadStarted() {
+        synchronized (lock) {
+            return System.nanoTime() - loadStartedAt;
+        }
+    }
+
+    private void startWorkers() {
+        final List<SwingWorkerGraph> graphs;
+        final List<Registration> all = new ArrayList<Registration>();
+        synchronized (lock) {
+            if (workersStarted) {
+                return;
+            }
+            workersStarted = true;
+            workersRunning = true;
+            contentShown = false;
+            for (final TabLoad load : tabLoads.values()) {
+                if (!load.started && load.tabbedPane.getSelectedComponent() == load.tab) {
+                    load.started = true;
+                    workers.addAll(DEFAULT_PHASE, load.registrations);
+                }
+            }
+            LOGGER.debug("executing all swing workers; " + workers.getExecutionPolicy());
+            graphs = workers.createGraphs(all);
+            if (preconstructed) {
+                for (final Registration registration : all) {
+                    registration.worker.setPriority(WorkerPriority.BACKGROUND);
+                }
+            }
+            outstandingWorkers = all.size();
+            preconstructed = false;
+        }
+        for (final Registration registration : all) {
+            // Runs after the worker's finished(), which is posted before
+            // its completion.
+            registration.worker.toCompletionStage().whenComplete(new BiConsumer<Object, Throwable>() {
+                public void accept(final Object value, final Throwable throwable) {
+                    // the worker may complete on the event thread, e.g. when
+                    // cancelled or rejected there, before its finished()
+                    // has run
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            workerDone(registration);
+                        }
+                    });
+                }
+            });
+        }
+        if (all.isEmpty()) {
+            GUIUtils.invokeLaterOnEventThread(new Runnable() {
+                public void run() {
+                    loadComplete();
+                }
+            });
+        }
+        SnailDialogWorkers.startInSequence(graphs, all, scope);
+    }
+
+    private void workerDone(final Registration registration) {
+        if (scope.isClosed()) {
+            return;
+        }
+        if (registration.section != null) {
+            registration.section.workerDone();
+        }
+        if (registration.tabPlaceholder != null) {
+            registration.tabPlaceholder.workerDone();
+        }
+        final boolean first;
+        final boolean removeHourglass;
+        final boolean last;
+        synchronized (lock) {
+            first = !contentShown;
+            contentShown = true;
+            removeHourglass = first && progressive && hourglassShown;
+            if (removeHourglass) {
+                hourglassShown = false;
+            }
+            last = --outstandingWorkers == 0;
+        }
+        if (first) {
+            final SnailDialogTimingListener listener = timingListener;
+            if (listener != null) {
+                listener.firstContent(this, sinceLoadStarted());
+            }
+        }
+        if (removeHourglass) {
+            cursorManager.normal(getClass().getSimpleName());
+        }
+        if (last) {
+            loadComplete();
+        }
+    }
+
+    private void loadComplete() {
+        final boolean removeHourglass;
+        final List<TabLoad> backgroundTabs = new ArrayList<TabLoad>();
+        synchronized (lock) {
+            if (!workersRunning) {
+                return;
+            }
+            workersRunning = false;
+            removeHourglass = hourglassShown;
+            hourglassShown = false;
+            if (loadTabsInBackground) {
+                for (final TabLoad load : tabLoads.values()) {
+                    if (!load.started) {
+                        backgroundTabs.add(load);
+                    }
+                }
+            }
+        }
+        LOGGER.debug("all swing workers finished");
+        final SnailDialogTimingListener listener = timingListener;
+        if (listener != null) {
+            listener.fullyLoaded(this, sinceLoadStarted());
+        }
+        if (removeHourglass) {
+            cursorManager.normal(getClass().getSimpleName());
+        }
+        for (final TabLoad load : backgroundTabs) {
+            startTab(load, WorkerPriority.BACKGROUND);
+        }
+    }
+
     /**
      * Initialise the dialog by adding SwingWorkers to the worker list.
      */
     protected abstract void initialise();
 
+    /**
+     * Called when a reusable dialog is shown again, to add the SwingWorkers
+     * that bring its content up to date; these are executed as the
+     * workers added by initialise were. By default, nothing is refreshed.
+     */
+    protected void initialiseRefresh() {
+        // nothing to refresh
+    }
+
+    private void reopened() {
+        final boolean stillLoading;
+        final boolean showHourglass;
+        synchronized (lock) {
+            if (!hiddenForReuse) {
+                return;
+            }
+            hiddenForReuse = false;
+            stillLoading = workersRunning;
+            showHourglass = !hourglassShown;
+            hourglassShown = true;
+            if (!stillLoading) {
+                workers.clear();
+                workersStarted = false;
+                loadStartedAt = System.nanoTime();
+            }
+        }
+        if (stillLoading) {
+            // the previous load has not finished; its content is still on
+            // its way
+            LOGGER.debug("reopened while still executing swing workers");
+            if (showHourglass) {
+                cursorManager.hourglass(this.getClass().getSimpleName());
+            }
+            return;
+        }
+        LOGGER.debug("reopened; refreshing");
+        cursorManager.hourglass(this.getClass().getSimpleName());
+        initialiseRefresh();
+        startWorkers();
+    }
 
     /**
-     * This method clears the dialog and hides it.
+     * This method clears the dialog and hides it. Unless the dialog is
+     * reusable, any workers that have not yet finished are abandoned, and
+     * the dialog is disposed of. A reusable dialog's workers continue, so
+     * that its content is complete when it is shown again.
      */
     public final void clearAndHide() {
-        if (awtEventListener != null) {
-            Toolkit.getDefaultToolkit().removeAWTEventListener(awtEventListener);
+        final boolean reuse;
+        synchronized (lock) {
+            reuse = reusable;
+            // if never shown, the initial workers are still to be started
+            hiddenForReuse = reuse && workersStarted;
+            hourglassShown = false;
         }
+        if (!reuse) {
+            scope.close();
+        }
+        WindowOpenedDispatcher.getInstance().deregister(this);
         setVisible(false);
         cursorManager.normal(this.getClass().getSimpleName());
-        dispose();
+        if (!reuse) {
+            dispose();
+        }
     }
 }
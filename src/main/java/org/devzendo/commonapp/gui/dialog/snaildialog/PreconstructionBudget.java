@@ -0,0 +1,193 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.devzendo.commonapp.gui.dialog.snaildialog;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * The bookkeeping of a SnailDialogPreconstructor: the factories registered,
+ * in order, the estimated memory their dialogs occupy, and the dialogs
+ * prepared by them, which in total must fit within a memory budget. This
+ * needs no window, so is kept apart from the preconstructor.
+ * <p>
+ * Not thread safe; the preconstructor is used on the event thread.
+ *
+ * @author matt
+ *
+ * @param <F> the type of factory
+ * @param <P> the type of what the factories prepare
+ */
+final class PreconstructionBudget<F, P> {
+    private static final class Entry<P> {
+        private final long estimatedBytes;
+        private P prepared;
+        private boolean failed;
+
+        Entry(final long bytes) {
+            estimatedBytes = bytes;
+        }
+    }
+
+    private final Map<F, Entry<P>> entries;
+    private final long memoryBudget;
+    private long preparedBytes;
+
+    /**
+     * Create a PreconstructionBudget.
+     * @param memoryBudgetBytes the estimated memory that prepared dialogs may
+     * occupy in total
+     */
+    PreconstructionBudget(final long memoryBudgetBytes) {
+        entries = new LinkedHashMap<F, Entry<P>>();
+        memoryBudget = memoryBudgetBytes;
+    }
+
+    /**
+     * @param estimatedBytes an estimate of the memory a dialog occupies
+     * @return true if such a dialog could ever be prepared
+     */
+    boolean fits(final long estimatedBytes) {
+        return estimatedBytes <= memoryBudget;
+    }
+
+    /**
+     * Register a factory.
+     * @param factory the factory
+     * @param estimatedBytes an estimate of the memory its dialog occupies
+     * @throws IllegalArgumentException if it is already registered
+     */
+    void register(final F factory, final long estimatedBytes) {
+        if (entries.containsKey(factory)) {
+            throw new IllegalArgumentException("Factory " + factory + " has already been registered");
+        }
+        entries.put(factory, new Entry<P>(estimatedBytes));
+    }
+
+    /**
+     * Unregister a factory; anything it prepared should first be taken.
+     * @param factory the factory
+     * @return true if it was registered
+     */
+    boolean unregister(final F factory) {
+        final Entry<P> entry = entries.remove(factory);
+        if (entry == null) {
+            return false;
+        }
+        release(entry);
+        return true;
+    }
+
+    /**
+     * Take what a factory prepared, freeing its share of the budget.
+     * @param factory the factory
+     * @return what the factory prepared, or null if nothing is ready
+     */
+    P take(final F factory) {
+        final Entry<P> entry = entries.get(factory);
+        if (entry == null) {
+            return null;
+        }
+        return release(entry);
+    }
+
+    private P release(final Entry<P> entry) {
+        final P prepared = entry.prepared;
+        if (prepared != null) {
+            entry.prepared = null;
+            preparedBytes -= entry.estimatedBytes;
+        }
+        return prepared;
+    }
+
+    /**
+     * @param factory the factory
+     * @return true if the factory has prepared something not yet taken
+     */
+    boolean isPrepared(final F factory) {
+        final Entry<P> entry = entries.get(factory);
+        return entry != null && entry.prepared != null;
+    }
+
+    /**
+     * @return the first factory, in order of registration, that has
+     * nothing prepared, has not failed, and whose dialog fits within what
+     * is left of the budget; or null if there is none
+     */
+    F next() {
+        for (final Map.Entry<F, Entry<P>> mapEntry : entries.entrySet()) {
+            final Entry<P> entry = mapEntry.getValue();
+            if (entry.prepared == null && !entry.failed && preparedBytes + entry.estimatedBytes <= memoryBudget) {
+                return mapEntry.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Record what a factory has prepared.
+     * @param factory the factory
+     * @param prepared what it prepared
+     * @throws IllegalStateException if the factory is not registered, or
+     * has already prepared something
+     */
+    void prepared(final F factory, final P prepared) {
+        final Entry<P> entry = entries.get(factory);
+        if (entry == null || entry.prepared != null) {
+            throw new IllegalStateException("Factory " + factory + " is not waiting to prepare");
+        }
+        entry.prepared = prepared;
+        preparedBytes += entry.estimatedBytes;
+    }
+
+    /**
+     * Record that a factory failed to prepare, so that it is not asked to
+     * again.
+     * @param factory the factory
+     */
+    void failed(final F factory) {
+        final Entry<P> entry = entries.get(factory);
+        if (entry != null) {
+            entry.failed = true;
+        }
+    }
+
+    /**
+     * @return the estimated memory occupied by what has been prepared
+     */
+    long getPreparedBytes() {
+        return preparedBytes;
+    }
+
+    /**
+     * Unregister every factory.
+     * @return what they prepared, to be discarded
+     */
+    List<P> clear() {
+        final List<P> prepared = new ArrayList<P>();
+        for (final Entry<P> entry : entries.values()) {
+            final P entryPrepared = release(entry);
+            if (entryPrepared != null) {
+                prepared.add(entryPrepared);
+            }
+        }
+        entries.clear();
+        return prepared;
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui.dialog.snaildialog;
+
+/**
+ * Controls how an AbstractSnailDialog executes the SwingWorkers added during
+ * its initialisation. By default, they are executed one at a time; dialogs
+ * whose workers can safely run together opt in to parallelism by setting
+ * another policy.
+ * <p>
+ * At most maxParallelWorkers of the dialog's workers run at once; the rest
+ * wait until a running worker completes. Workers are added to numbered
+ * phases, lower phases first (e.g. the visible tab's content in phase 0,
+ * the other tabs in phase 1). With sequential phases, no worker of a phase
+ * starts until every worker of the previous phases has finished; otherwise
+ * the phases only decide which waiting workers start first, and workers may
+ * depend on workers in other phases.
+ * <p>
+ * Whatever the policy, the cursor is set back to normal once every worker
+ * has finished.
+ *
+ * @author matt
+ *
+ */
+public final class SnailDialogExecutionPolicy {
+    /**
+     * The number of workers that run at once under the PARALLEL policy.
+     */
+    public static final int DEFAULT_MAX_PARALLEL_WORKERS = 4;
+
+    /**
+     * The default policy: one worker at a time, in the order they were
+     * added, phases run in sequence. Workers that share state need no
+     * further synchronisation.
+     */
+    public static final SnailDialogExecutionPolicy DEFAULT =
+        new SnailDialogExecutionPolicy(1, true);
+
+    /**
+     * A few workers at once, phases run in sequence; for dialogs whose
+     * workers are independent of each other, other than through declared
+     * dependencies.
+     */
+    public static final SnailDialogExecutionPolicy PARALLEL =
+        new SnailDialogExecutionPolicy(DEFAULT_MAX_PARALLEL_WORKERS, true);
+
+    /**
+     * All workers start at once, phases only ordering them.
+     */
+    public static final SnailDialogExecutionPolicy UNBOUNDED =
+        new SnailDialogExecutionPolicy(0, false);
+
+    private final int maxParallelWorkers;
+    private final boolean sequentialPhases;
+
+    /**
+     * Create an execution policy.
+     * @param maxWorkers the maximum number of the dialog's workers that may
+     * run at once, or zero for no limit
+     * @param sequential true if each phase must finish before the next
+     * starts; false if phases merely order the workers' start
+     */
+    public SnailDialogExecutionPolicy(final int maxWorkers, final boolean sequential) {
+        if (maxWorkers < 0) {
+            throw new IllegalArgumentException("The maximum number of parallel workers cannot be negative");
+        }
+        maxParallelWorkers = maxWorkers;
+        sequentialPhases = sequential;
+    }
+
+    /**
+     * @return the maximum number of workers that may run at once, or zero
+     * for no limit
+     */
+    public int getMaxParallelWorkers() {
+        return maxParallelWorkers;
+    }
+
+    /**
+     * @return true if each phase must finish before the next starts
+     */
+    public boolean isSequentialPhases() {
+        return sequentialPhases;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "max parallel workers " + (maxParallelWorkers == 0 ? "unbounded" : String.valueOf(maxParallelWorkers))
+            + ", " + (sequentialPhases ? "sequential" : "overlapping") + " phases";
+    }
+}
@@ -0,0 +1,282 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui.dialog.snaildialog;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import org.apache.log4j.Logger;
+
+
+/**
+ * Builds AbstractSnailDialogs ahead of time, while the application is idle,
+ * so that when the user asks for one it can be shown without the wait.
+ * <p>
+ * Dialog factories are registered with an estimate of the memory their
+ * dialog occupies once loaded. While the event thread is idle, one dialog
+ * at a time is created and its main component and initialise() run, and
+ * its workers started at background priority. Dialogs are only built while
+ * their estimated total fits within the memory budget, and the heap is not
+ * too full. take() hands over a prepared dialog, or builds one in the usual
+ * way if none is ready; a replacement is then prepared at the next idle
+ * time.
+ * <p>
+ * The event thread's business is measured by how long a probe posted to
+ * it waits to run. While it is busy, probing backs off. While the heap is
+ * too full, probing continues only at the longest interval, until it has
+ * been collected. Once there is nothing left to prepare, probing stops,
+ * until a factory is registered or unregistered, or a prepared dialog is
+ * taken.
+ * <p>
+ * A prepared dialog is neither refreshed nor expired: it is handed over
+ * with the content loaded when it was prepared. A factory whose dialog
+ * could not be prepared is not asked again; take() still builds its
+ * dialogs in the usual way. In either case, unregistering the factory and
+ * registering it again has its dialog prepared afresh.
+ * <p>
+ * All methods are to be called on the event thread.
+ *
+ * @author matt
+ *
+ */
+public final class SnailDialogPreconstructor {
+    private static final Logger LOGGER = Logger
+            .getLogger(SnailDialogPreconstructor.class);
+
+    /**
+     * Creates a dialog, without calling postConstruct().
+     *
+     * @param <D> the type of dialog created
+     */
+    public interface Factory<D extends AbstractSnailDialog> {
+        /**
+         * @return a new dialog
+         */
+        D createDialog();
+    }
+
+    /**
+     * How often the event thread is probed for idleness, by default.
+     */
+    public static final int DEFAULT_PROBE_INTERVAL_MILLISECONDS = 250;
+
+    /**
+     * How long a probe may wait on the event thread before it is considered
+     * busy, by default.
+     */
+    public static final int DEFAULT_BUSY_THRESHOLD_MILLISECONDS = 20;
+
+    private static final int MAX_PROBE_INTERVAL_MILLISECONDS = 8000;
+    private static final double MAX_HEAP_USAGE = 0.75;
+
+    private final PreconstructionBudget<Factory<?>, AbstractSnailDialog> budget;
+    private final int probeInterval;
+    private final long busyThresholdNanos;
+    private final Timer probeTimer;
+    private int currentProbeInterval;
+    private boolean probing;
+    private boolean shutdown;
+
+    /**
+     * Create a SnailDialogPreconstructor probing at the default interval.
+     * @param memoryBudgetBytes the estimated memory that prepared dialogs may
+     * occupy in total
+     */
+    public SnailDialogPreconstructor(final long memoryBudgetBytes) {
+        this(memoryBudgetBytes, DEFAULT_PROBE_INTERVAL_MILLISECONDS, DEFAULT_BUSY_THRESHOLD_MILLISECONDS);
+    }
+
+    /**
+     * Create a SnailDialogPreconstructor.
+     * @param memoryBudgetBytes the estimated memory that prepared dialogs may
+     * occupy in total
+     * @param probeIntervalMilliseconds how often to probe the event thread
+     * for idleness
+     * @param busyThresholdMilliseconds how long a probe may wait on the
+     * event thread before it is considered busy
+     */
+    public SnailDialogPreconstructor(final long memoryBudgetBytes, final int probeIntervalMilliseconds, final int busyThresholdMilliseconds) {
+        budget = new PreconstructionBudget<Factory<?>, AbstractSnailDialog>(memoryBudgetBytes);
+        probeInterval = probeIntervalMilliseconds;
+        currentProbeInterval = probeIntervalMilliseconds;
+        busyThresholdNanos = busyThresholdMilliseconds * 1000000L;
+        probeTimer = new Timer(probeIntervalMilliseconds, new ActionListener() {
+            public void actionPerformed(final ActionEvent e) {
+                probe();
+            }
+        });
+        probeTimer.setRepeats(false);
+    }
+
+    /**
+     * Register a dialog factory, whose dialog will be prepared when the
+     * application is next idle. Dialogs are prepared in the order their
+     * factories were registered.
+     * @param factory the factory
+     * @param estimatedBytes an estimate of the memory the dialog occupies
+     * once loaded
+     */
+    public void register(final Factory<?> factory, final long estimatedBytes) {
+        if (shutdown) {
+            throw new IllegalStateException("The preconstructor has been shut down");
+        }
+        budget.register(factory, estimatedBytes);
+        if (!budget.fits(estimatedBytes)) {
+            LOGGER.warn("Factory " + factory + "'s dialog exceeds the memory budget and will not be preconstructed");
+        }
+        startProbing();
+    }
+
+    /**
+     * Unregister a dialog factory, discarding any dialog prepared by it.
+     * @param factory the factory
+     */
+    public void unregister(final Factory<?> factory) {
+        final AbstractSnailDialog prepared = budget.take(factory);
+        if (prepared != null) {
+            prepared.discard();
+        }
+        if (budget.unregister(factory)) {
+            startProbing(); // others may now fit the budget
+        }
+    }
+
+    /**
+     * Obtain a dialog, ready to be shown. If one has been prepared by the
+     * factory, it is handed over, with its workers possibly still running;
+     * otherwise the factory creates one and its postConstruct() is called.
+     * @param <D> the type of dialog created
+     * @param factory the factory, which need not be registered
+     * @return the dialog
+     */
+    @SuppressWarnings("unchecked")
+    public <D extends AbstractSnailDialog> D take(final Factory<D> factory) {
+        final D prepared = (D) budget.take(factory);
+        if (prepared != null) {
+            LOGGER.debug("Handing over preconstructed " + prepared.getClass().getSimpleName()
+                + (prepared.isLoaded() ? "" : ", still loading"));
+            prepared.handedOver();
+            startProbing(); // to prepare its replacement
+            return prepared;
+        }
+        final D dialog = factory.createDialog();
+        dialog.postConstruct();
+        return dialog;
+    }
+
+    /**
+     * @return true if the event thread is being probed, to prepare dialogs
+     * when it is idle
+     */
+    public boolean isProbing() {
+        return probing;
+    }
+
+    /**
+     * @param factory the factory
+     * @return true if a dialog has been prepared by the factory, and not yet
+     * taken
+     */
+    public boolean isPrepared(final Factory<?> factory) {
+        return budget.isPrepared(factory);
+    }
+
+    /**
+     * Stop preparing dialogs, and discard those that have been prepared.
+     */
+    public void shutdown() {
+        shutdown = true;
+        probing = false;
+        probeTimer.stop();
+        for (final AbstractSnailDialog prepared : budget.clear()) {
+            prepared.discard();
+        }
+    }
+
+    private void startProbing() {
+        if (probing || shutdown) {
+            return;
+        }
+        probing = true;
+        currentProbeInterval = probeInterval;
+        probeTimer.setInitialDelay(currentProbeInterval);
+        probeTimer.start();
+    }
+
+    private void probe() {
+        // The timer fires on the event thread; anything queued behind it
+        // delays the probe.
+        final long posted = System.nanoTime();
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                probed(System.nanoTime() - posted);
+            }
+        });
+    }
+
+    private void probed(final long latencyNanos) {
+        if (shutdown) {
+            return;
+        }
+        if (latencyNanos > busyThresholdNanos) {
+            currentProbeInterval = Math.min(currentProbeInterval * 2, MAX_PROBE_INTERVAL_MILLISECONDS);
+            LOGGER.debug("Event thread busy; probing again in " + currentProbeInterval + "ms");
+        } else {
+            final Factory<?> factory = budget.next();
+            if (factory == null) {
+                LOGGER.debug("Nothing left to preconstruct; probing stopped");
+                probing = false;
+                return;
+            }
+            if (prepare(factory)) {
+                currentProbeInterval = probeInterval;
+            } else {
+                // idle, but probing at the usual rate cannot help
+                currentProbeInterval = MAX_PROBE_INTERVAL_MILLISECONDS;
+                LOGGER.debug("Heap too full to preconstruct dialogs; probing again in " + currentProbeInterval + "ms");
+            }
+        }
+        probeTimer.setInitialDelay(currentProbeInterval);
+        probeTimer.start();
+    }
+
+    // One per idle period. Returns false if the heap is too full to try.
+    private boolean prepare(final Factory<?> factory) {
+        if (heapTooFull()) {
+            return false;
+        }
+        try {
+            final AbstractSnailDialog dialog = factory.createDialog();
+            dialog.preconstruct();
+            budget.prepared(factory, dialog);
+            LOGGER.debug("Preconstructed " + dialog.getClass().getSimpleName());
+        } catch (final RuntimeException re) {
+            LOGGER.warn("Could not preconstruct a dialog from factory " + factory + ": " + re.getMessage(), re);
+            budget.failed(factory);
+        }
+        return true;
+    }
+
+    private static boolean heapTooFull() {
+        final Runtime runtime = Runtime.getRuntime();
+        final long used = runtime.totalMemory() - runtime.freeMemory();
+        return used > runtime.maxMemory() * MAX_HEAP_USAGE;
+    }
+}
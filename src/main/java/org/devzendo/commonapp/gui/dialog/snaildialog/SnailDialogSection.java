@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui.dialog.snaildialog;
+
+import java.awt.BorderLayout;
+import java.awt.CardLayout;
+import java.awt.Component;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.SwingConstants;
+
+import org.devzendo.commonapp.gui.GUIUtils;
+
+
+/**
+ * A section of an AbstractSnailDialog whose content is loaded by one or
+ * more SwingWorkers. A placeholder is shown in place of the content until
+ * all the workers added for the section have finished, so the rest of the
+ * dialog can be used while it loads.
+ * <p>
+ * Sections are to be used on the event thread; the count of their
+ * outstanding workers is only changed there.
+ *
+ * @author matt
+ *
+ */
+@SuppressWarnings("serial")
+public final class SnailDialogSection extends JPanel {
+    private static final String PLACEHOLDER = "placeholder";
+    private static final String CONTENT = "content";
+
+    private final CardLayout cardLayout;
+    private int pendingWorkers; // event thread only
+    private boolean loaded; // event thread only
+
+    /**
+     * Create a section showing "Loading..." until its content is loaded.
+     * @param content the section's content, which its workers populate
+     */
+    public SnailDialogSection(final Component content) {
+        this(content, new JLabel("Loading...", SwingConstants.CENTER));
+    }
+
+    /**
+     * Create a section.
+     * @param content the section's content, which its workers populate
+     * @param placeholder the component shown until the content is loaded
+     */
+    public SnailDialogSection(final Component content, final Component placeholder) {
+        cardLayout = new CardLayout();
+        setLayout(cardLayout);
+        add(wrap(placeholder), PLACEHOLDER);
+        add(wrap(content), CONTENT);
+        cardLayout.show(this, PLACEHOLDER);
+    }
+
+    private static JPanel wrap(final Component component) {
+        final JPanel panel = new JPanel(new BorderLayout());
+        panel.add(component, BorderLayout.CENTER);
+        return panel;
+    }
+
+    /**
+     * @return true once the workers added for this section have finished,
+     * and its content is shown
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * A worker that loads this section's content has been added. May be
+     * called on any thread; if not on the event thread, the count is
+     * changed there, before the worker's completion can be posted to it.
+     */
+    void workerAdded() {
+        GUIUtils.invokeLaterOnEventThread(new Runnable() {
+            public void run() {
+                pendingWorkers++;
+            }
+        });
+    }
+
+    /**
+     * A worker that loads this section's content has finished, or failed;
+     * once none remain, the content is shown. Once loaded, a section is
+     * not returned to its placeholder by workers that refresh it. Called
+     * on the event thread.
+     * @return true if the section has just been loaded
+     */
+    boolean workerDone() {
+        pendingWorkers--;
+        if (pendingWorkers > 0 || loaded) {
+            return false;
+        }
+        loaded = true;
+        cardLayout.show(this, CONTENT);
+        return true;
+    }
+}
@@ -0,0 +1,228 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui.dialog.snaildialog;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.FocusTraversalPolicy;
+import java.awt.Rectangle;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.HierarchyBoundsAdapter;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
+import java.awt.event.MouseAdapter;
+
+import javax.swing.JLabel;
+import javax.swing.JLayeredPane;
+import javax.swing.JPanel;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+
+import org.devzendo.commonapp.gui.GUIUtils;
+
+
+/**
+ * Covers a lazily loaded tab of an AbstractSnailDialog with a placeholder
+ * until all the workers added for the tab have finished. The tab's own
+ * component stays in its tabbed pane; the placeholder is laid over it in
+ * the dialog's layered pane, following its bounds, and shown only while
+ * the tab is. Until the tab is loaded, the placeholder takes the mouse
+ * input meant for it, and keyboard focus traversal skips its content.
+ * <p>
+ * Placeholders are to be used on the event thread; the count of their
+ * outstanding workers is only changed there.
+ *
+ * @author matt
+ *
+ */
+final class SnailDialogTabPlaceholder {
+    // Declines every component, so that traversal skips the tab's content
+    private static final FocusTraversalPolicy NOTHING_FOCUSABLE = new FocusTraversalPolicy() {
+        @Override
+        public Component getComponentAfter(final Container aContainer, final Component aComponent) {
+            return null;
+        }
+
+        @Override
+        public Component getComponentBefore(final Container aContainer, final Component aComponent) {
+            return null;
+        }
+
+        @Override
+        public Component getFirstComponent(final Container aContainer) {
+            return null;
+        }
+
+        @Override
+        public Component getLastComponent(final Container aContainer) {
+            return null;
+        }
+
+        @Override
+        public Component getDefaultComponent(final Container aContainer) {
+            return null;
+        }
+    };
+
+    private final Component tab;
+    private final JLayeredPane layeredPane;
+    private final JPanel placeholder;
+    private final ComponentAdapter componentListener;
+    private final HierarchyListener hierarchyListener;
+    private final HierarchyBoundsAdapter hierarchyBoundsListener;
+    private final boolean tabPolicyProvider;
+    private final FocusTraversalPolicy tabPolicy;
+    private int pendingWorkers; // event thread only
+    private boolean loaded; // event thread only
+
+    /**
+     * Cover a tab with a "Loading..." placeholder.
+     * @param tabComponent the tab's component
+     * @param pane the layered pane of the tab's dialog
+     */
+    SnailDialogTabPlaceholder(final Component tabComponent, final JLayeredPane pane) {
+        tab = tabComponent;
+        layeredPane = pane;
+        placeholder = new JPanel(new BorderLayout());
+        placeholder.add(new JLabel("Loading...", SwingConstants.CENTER), BorderLayout.CENTER);
+        placeholder.setVisible(false);
+        // Listening for the mouse is enough to stop its events passing
+        // through to the tab beneath
+        final MouseAdapter mouseConsumer = new MouseAdapter() {
+        };
+        placeholder.addMouseListener(mouseConsumer);
+        placeholder.addMouseMotionListener(mouseConsumer);
+        placeholder.addMouseWheelListener(mouseConsumer);
+        layeredPane.add(placeholder, JLayeredPane.PALETTE_LAYER);
+        if (tab instanceof Container) {
+            final Container container = (Container) tab;
+            tabPolicyProvider = container.isFocusTraversalPolicyProvider();
+            tabPolicy = container.isFocusTraversalPolicySet() ? container.getFocusTraversalPolicy() : null;
+            container.setFocusTraversalPolicy(NOTHING_FOCUSABLE);
+            container.setFocusTraversalPolicyProvider(true);
+        } else {
+            tabPolicyProvider = false;
+            tabPolicy = null;
+        }
+        componentListener = new ComponentAdapter() {
+            @Override
+            public void componentResized(final ComponentEvent e) {
+                follow();
+            }
+
+            @Override
+            public void componentMoved(final ComponentEvent e) {
+                follow();
+            }
+        };
+        hierarchyListener = new HierarchyListener() {
+            public void hierarchyChanged(final HierarchyEvent e) {
+                if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0) {
+                    follow();
+                }
+            }
+        };
+        hierarchyBoundsListener = new HierarchyBoundsAdapter() {
+            @Override
+            public void ancestorMoved(final HierarchyEvent e) {
+                follow();
+            }
+
+            @Override
+            public void ancestorResized(final HierarchyEvent e) {
+                follow();
+            }
+        };
+        tab.addComponentListener(componentListener);
+        tab.addHierarchyListener(hierarchyListener);
+        tab.addHierarchyBoundsListener(hierarchyBoundsListener);
+        follow();
+    }
+
+    // Cover the tab's bounds while it is showing.
+    private void follow() {
+        if (loaded) {
+            return;
+        }
+        final boolean showing = tab.isShowing() && layeredPane.isShowing();
+        if (showing) {
+            final Rectangle bounds = SwingUtilities.convertRectangle(tab.getParent(), tab.getBounds(), layeredPane);
+            placeholder.setBounds(bounds);
+            placeholder.validate();
+        }
+        placeholder.setVisible(showing);
+    }
+
+    /**
+     * @return true once the workers added for the tab have finished, and
+     * the placeholder has been removed
+     */
+    boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return true if the placeholder is currently shown over the tab
+     */
+    boolean isPlaceholderShowing() {
+        return placeholder.isShowing();
+    }
+
+    /**
+     * A worker that loads the tab's content has been added. May be called
+     * on any thread; if not on the event thread, the count is changed
+     * there, before the worker's completion can be posted to it.
+     */
+    void workerAdded() {
+        GUIUtils.invokeLaterOnEventThread(new Runnable() {
+            public void run() {
+                pendingWorkers++;
+            }
+        });
+    }
+
+    /**
+     * A worker that loads the tab's content has finished, or failed; once
+     * none remain, the placeholder is removed. Called on the event thread.
+     * @return true if the tab has just been loaded
+     */
+    boolean workerDone() {
+        pendingWorkers--;
+        if (pendingWorkers > 0 || loaded) {
+            return false;
+        }
+        loaded = true;
+        remove();
+        return true;
+    }
+
+    private void remove() {
+        tab.removeComponentListener(componentListener);
+        tab.removeHierarchyListener(hierarchyListener);
+        tab.removeHierarchyBoundsListener(hierarchyBoundsListener);
+        if (tab instanceof Container) {
+            final Container container = (Container) tab;
+            container.setFocusTraversalPolicy(tabPolicy);
+            container.setFocusTraversalPolicyProvider(tabPolicyProvider);
+        }
+        final Rectangle bounds = placeholder.getBounds();
+        layeredPane.remove(placeholder);
+        layeredPane.repaint(bounds);
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui.dialog.snaildialog;
+
+/**
+ * Notified of the time taken by AbstractSnailDialogs to become usable, to
+ * track their performance. Times are in nanoseconds since the dialog's
+ * construction started (or, for a reusable dialog shown again, since it
+ * was shown), and notifications are made on the event thread.
+ *
+ * @author matt
+ *
+ */
+public interface SnailDialogTimingListener {
+    /**
+     * The dialog's window has been opened.
+     * @param dialog the dialog
+     * @param nanos the time taken
+     */
+    void windowOpened(AbstractSnailDialog dialog, long nanos);
+
+    /**
+     * The first of the dialog's workers has finished, so some of its
+     * content is shown.
+     * @param dialog the dialog
+     * @param nanos the time taken
+     */
+    void firstContent(AbstractSnailDialog dialog, long nanos);
+
+    /**
+     * All of the dialog's workers have finished.
+     * @param dialog the dialog
+     * @param nanos the time taken
+     */
+    void fullyLoaded(AbstractSnailDialog dialog, long nanos);
+}
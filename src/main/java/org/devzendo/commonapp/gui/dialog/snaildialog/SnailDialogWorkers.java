@@ -0,0 +1,281 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.devzendo.commonapp.gui.dialog.snaildialog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+
+import org.apache.log4j.Logger;
+import org.devzendo.commonapp.gui.SwingWorker;
+import org.devzendo.commonapp.gui.SwingWorkerGraph;
+import org.devzendo.commonapp.gui.SwingWorkerScope;
+
+
+/**
+ * The workers added to an AbstractSnailDialog, by phase, and the graphs that
+ * execute them according to its execution policy. This needs no window, so
+ * is kept apart from the dialog.
+ * <p>
+ * Not thread safe; the dialog guards it with its lock.
+ *
+ * @author matt
+ *
+ */
+final class SnailDialogWorkers {
+    private static final Logger LOGGER = Logger
+            .getLogger(SnailDialogWorkers.class);
+
+    /**
+     * A worker, with the workers it depends on, and the section or tab it
+     * loads, if any.
+     */
+    static final class Registration {
+        final SwingWorker<?, ?> worker;
+        final SwingWorker<?, ?>[] dependencies;
+        final SnailDialogSection section;
+        final SnailDialogTabPlaceholder tabPlaceholder;
+
+        Registration(final SwingWorker<?, ?> swingWorker, final SwingWorker<?, ?>[] dependsOn,
+                final SnailDialogSection loadsSection, final SnailDialogTabPlaceholder loadsTab) {
+            worker = swingWorker;
+            dependencies = dependsOn;
+            section = loadsSection;
+            tabPlaceholder = loadsTab;
+        }
+    }
+
+    private final Map<Integer, List<Registration>> phases;
+    private SnailDialogExecutionPolicy executionPolicy;
+
+    /**
+     * Create an empty SnailDialogWorkers, with the default execution policy.
+     */
+    SnailDialogWorkers() {
+        phases = new TreeMap<Integer, List<Registration>>();
+        executionPolicy = SnailDialogExecutionPolicy.DEFAULT;
+    }
+
+    /**
+     * @return the execution policy
+     */
+    SnailDialogExecutionPolicy getExecutionPolicy() {
+        return executionPolicy;
+    }
+
+    /**
+     * Set the execution policy.
+     * @param policy the execution policy
+     * @throws IllegalArgumentException if the policy has sequential phases,
+     * and a worker already added depends on a worker in another phase
+     */
+    void setExecutionPolicy(final SnailDialogExecutionPolicy policy) {
+        for (final Map.Entry<Integer, List<Registration>> entry : phases.entrySet()) {
+            for (final Registration registration : entry.getValue()) {
+                checkSamePhase(policy, entry.getKey(), registration.worker, registration.dependencies);
+            }
+        }
+        executionPolicy = policy;
+    }
+
+    /**
+     * Add a worker to a phase.
+     * @param phase the phase in which to execute the worker
+     * @param registration the worker, and what it loads
+     * @throws IllegalArgumentException if the execution policy has
+     * sequential phases, and the worker depends on, or is depended on by, a
+     * worker in another phase
+     */
+    void add(final int phase, final Registration registration) {
+        checkSamePhase(executionPolicy, phase, registration.worker, registration.dependencies);
+        phase(phase).add(registration);
+    }
+
+    /**
+     * Add the workers of a tab to a phase. The workers of a tab depend
+     * only on each other, so need no checking.
+     * @param phase the phase in which to execute the workers
+     * @param registrations the workers, and what they load
+     */
+    void addAll(final int phase, final List<Registration> registrations) {
+        phase(phase).addAll(registrations);
+    }
+
+    private List<Registration> phase(final int phase) {
+        List<Registration> registrations = phases.get(phase);
+        if (registrations == null) {
+            registrations = new ArrayList<Registration>();
+            phases.put(phase, registrations);
+        }
+        return registrations;
+    }
+
+    // Workers of one phase cannot wait for those of a later phase, which
+    // only start once it has finished.
+    private void checkSamePhase(final SnailDialogExecutionPolicy policy, final int phase, final SwingWorker<?, ?> worker, final SwingWorker<?, ?>[] dependencies) {
+        if (!policy.isSequentialPhases()) {
+            return;
+        }
+        for (final Map.Entry<Integer, List<Registration>> entry : phases.entrySet()) {
+            if (entry.getKey() == phase) {
+                continue;
+            }
+            for (final Registration registration : entry.getValue()) {
+                for (final SwingWorker<?, ?> dependency : dependencies) {
+                    if (registration.worker == dependency) {
+                        throw new IllegalArgumentException("Worker " + worker + " in phase " + phase
+                            + " depends on worker " + dependency + " in phase " + entry.getKey()
+                            + "; with sequential phases, dependencies must be in the same phase");
+                    }
+                }
+                for (final SwingWorker<?, ?> dependency : registration.dependencies) {
+                    if (dependency == worker) {
+                        throw new IllegalArgumentException("Worker " + registration.worker + " in phase " + entry.getKey()
+                            + " depends on worker " + worker + " in phase " + phase
+                            + "; with sequential phases, dependencies must be in the same phase");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the workers added that have not yet finished
+     */
+    List<SwingWorker<?, ?>> getUnfinishedWorkers() {
+        final List<SwingWorker<?, ?>> unfinished = new ArrayList<SwingWorker<?, ?>>();
+        for (final List<Registration> registrations : phases.values()) {
+            for (final Registration registration : registrations) {
+                if (!registration.worker.isDone()) {
+                    unfinished.add(registration.worker);
+                }
+            }
+        }
+        return unfinished;
+    }
+
+    /**
+     * Forget the workers added, e.g. so that a reused dialog's refresh
+     * workers can be added.
+     */
+    void clear() {
+        phases.clear();
+    }
+
+    /**
+     * Create the graphs that execute the workers added: one per phase if
+     * the execution policy has sequential phases, otherwise one for all.
+     * @param all a list to which the workers' registrations are added, in
+     * phase order
+     * @return the graphs, to be started in order by startInSequence
+     */
+    List<SwingWorkerGraph> createGraphs(final List<Registration> all) {
+        final List<SwingWorkerGraph> graphs = new ArrayList<SwingWorkerGraph>();
+        SwingWorkerGraph graph = null;
+        for (final List<Registration> registrations : phases.values()) {
+            if (graph == null || executionPolicy.isSequentialPhases()) {
+                graph = createGraph();
+                graphs.add(graph);
+            }
+            for (final Registration registration : registrations) {
+                graph.addSwingWorker(registration.worker, registration.dependencies);
+                all.add(registration);
+            }
+        }
+        return graphs;
+    }
+
+    /**
+     * Create a graph that executes the given workers, e.g. those of a tab,
+     * as many at once as the execution policy allows.
+     * @param registrations the workers
+     * @return the graph
+     */
+    SwingWorkerGraph createGraph(final List<Registration> registrations) {
+        final SwingWorkerGraph graph = createGraph();
+        for (final Registration registration : registrations) {
+            graph.addSwingWorker(registration.worker, registration.dependencies);
+        }
+        return graph;
+    }
+
+    private SwingWorkerGraph createGraph() {
+        final SwingWorkerGraph graph = new SwingWorkerGraph();
+        graph.setMaxRunningWorkers(executionPolicy.getMaxParallelWorkers());
+        return graph;
+    }
+
+    /**
+     * Start each graph once the one before it has completed, until the
+     * scope is closed. If a graph cannot be started, the workers that have
+     * not finished are cancelled, so that each still completes.
+     * @param graphs the graphs, as returned by createGraphs
+     * @param all the workers' registrations, as added by createGraphs
+     * @param scope the scope of the workers
+     */
+    static void startInSequence(final List<SwingWorkerGraph> graphs, final List<Registration> all, final SwingWorkerScope scope) {
+        startPhase(graphs, 0, all, scope);
+    }
+
+    private static void startPhase(final List<SwingWorkerGraph> graphs, final int index, final List<Registration> all, final SwingWorkerScope scope) {
+        if (scope.isClosed()) {
+            LOGGER.debug("dialog closed; not executing remaining swing workers");
+            return;
+        }
+        if (index == graphs.size()) {
+            LOGGER.debug("executed all swing workers");
+            return;
+        }
+        if (!start(graphs.get(index), all)) {
+            return;
+        }
+        graphs.get(index).toCompletionStage().whenComplete(new BiConsumer<Void, Throwable>() {
+            public void accept(final Void value, final Throwable throwable) {
+                startPhase(graphs, index + 1, all, scope);
+            }
+        });
+    }
+
+    /**
+     * Start a graph. If it cannot be started, the workers that have not
+     * finished are cancelled, so that each still completes.
+     * @param graph the graph
+     * @param registrations the graph's workers' registrations, and any
+     * others to be cancelled with them
+     * @return true if the graph was started
+     */
+    static boolean start(final SwingWorkerGraph graph, final List<Registration> registrations) {
+        try {
+            graph.start();
+            return true;
+        } catch (final IllegalStateException ise) {
+            notStarted(registrations, ise);
+        } catch (final RejectedExecutionException ree) {
+            notStarted(registrations, ree);
+        }
+        return false;
+    }
+
+    private static void notStarted(final List<Registration> registrations, final RuntimeException cause) {
+        LOGGER.warn("Could not execute swing workers: " + cause.getMessage());
+        for (final Registration registration : registrations) {
+            registration.worker.cancel(true);
+        }
+    }
+}
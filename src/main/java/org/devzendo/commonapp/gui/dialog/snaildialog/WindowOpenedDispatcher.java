@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui.dialog.snaildialog;
+
+import java.awt.AWTEvent;
+import java.awt.Toolkit;
+import java.awt.Window;
+import java.awt.event.AWTEventListener;
+import java.awt.event.WindowEvent;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Notifies listeners when their window is first opened, via a single
+ * Toolkit-wide AWTEventListener shared by all windows, so that the cost of
+ * each window event does not grow with the number of windows registered.
+ * <p>
+ * Windows are held weakly, and deregistered once opened, or when closed, so
+ * a window that is never opened does not leak. Windows that have been
+ * collected are deregistered on the next window event, or registration,
+ * and the AWTEventListener removed once none are left. The listener must
+ * not refer to the window itself, or it would never be collected; it is
+ * passed the window instead.
+ *
+ * @author matt
+ *
+ */
+final class WindowOpenedDispatcher {
+    /**
+     * Notified when a registered window is opened.
+     */
+    interface WindowOpenedListener {
+        /**
+         * The window has been opened; called on the event thread.
+         * @param window the window
+         */
+        void windowOpened(Window window);
+    }
+
+    /**
+     * A window, held weakly, and compared by identity while it is reachable.
+     */
+    private static final class WindowReference extends WeakReference<Window> {
+        private final int hash;
+
+        WindowReference(final Window window, final ReferenceQueue<Window> queue) {
+            super(window, queue);
+            hash = System.identityHashCode(window);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof WindowReference)) {
+                return false;
+            }
+            final Window window = get();
+            return window != null && window == ((WindowReference) obj).get();
+        }
+    }
+
+    private static final WindowOpenedDispatcher INSTANCE = new WindowOpenedDispatcher();
+
+    private final Object lock = new Object();
+    private final Map<WindowReference, WindowOpenedListener> listeners; // guarded by lock
+    private final ReferenceQueue<Window> collected;
+    private final AWTEventListener awtEventListener;
+    private boolean installed; // guarded by lock
+
+    private WindowOpenedDispatcher() {
+        listeners = new HashMap<WindowReference, WindowOpenedListener>();
+        collected = new ReferenceQueue<Window>();
+        awtEventListener = new AWTEventListener() {
+            public void eventDispatched(final AWTEvent event) {
+                dispatch(event);
+            }
+        };
+    }
+
+    /**
+     * @return the shared dispatcher
+     */
+    static WindowOpenedDispatcher getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Notify a listener when a window is opened.
+     * @param window the window
+     * @param listener the listener, which must not refer to the window
+     */
+    void register(final Window window, final WindowOpenedListener listener) {
+        synchronized (lock) {
+            removeCollected();
+            listeners.put(new WindowReference(window, collected), listener);
+            if (!installed) {
+                installed = true;
+                Toolkit.getDefaultToolkit().addAWTEventListener(awtEventListener, AWTEvent.WINDOW_EVENT_MASK);
+            }
+        }
+    }
+
+    /**
+     * Stop notifying a window's listener.
+     * @param window the window
+     */
+    void deregister(final Window window) {
+        synchronized (lock) {
+            listeners.remove(new WindowReference(window, null));
+            removeCollected();
+            uninstallIfUnused();
+        }
+    }
+
+    /**
+     * @return the number of windows registered
+     */
+    int getRegisteredCount() {
+        synchronized (lock) {
+            return listeners.size();
+        }
+    }
+
+    /**
+     * @return true if the AWTEventListener is installed
+     */
+    boolean isInstalled() {
+        synchronized (lock) {
+            return installed;
+        }
+    }
+
+    private void dispatch(final AWTEvent event) {
+        final int id = event.getID();
+        final boolean openedOrClosed = id == WindowEvent.WINDOW_OPENED || id == WindowEvent.WINDOW_CLOSED;
+        final Object source = event.getSource();
+        final WindowOpenedListener listener;
+        synchronized (lock) {
+            listener = openedOrClosed && source instanceof Window
+                ? listeners.remove(new WindowReference((Window) source, null))
+                : null;
+            removeCollected();
+            uninstallIfUnused();
+        }
+        if (listener != null && id == WindowEvent.WINDOW_OPENED) {
+            listener.windowOpened((Window) source);
+        }
+    }
+
+    private void removeCollected() {
+        // guarded by lock
+        Reference<? extends Window> reference;
+        while ((reference = collected.poll()) != null) {
+            listeners.remove(reference);
+        }
+    }
+
+    private void uninstallIfUnused() {
+        // guarded by lock
+        if (installed && listeners.isEmpty()) {
+            installed = false;
+            Toolkit.getDefaultToolkit().removeAWTEventListener(awtEventListener);
+        }
+    }
+}
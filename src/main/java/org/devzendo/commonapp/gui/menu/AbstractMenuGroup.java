@@ -17,6 +17,10 @@
 package org.devzendo.commonapp.gui.menu;
 
 import javax.swing.JMenu;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
+
+import org.apache.log4j.Logger;
 
 
 
@@ -30,6 +34,7 @@ import javax.swing.JMenu;
  *
  */
 public abstract class AbstractMenuGroup {
+    private static final Logger LOGGER = Logger.getLogger(AbstractMenuGroup.class);
     private final MenuWiring menuWiring;
 
     /**
@@ -70,6 +75,41 @@ public abstract class AbstractMenuGroup {
             menuWiring.createMenuItem(menuIdentifier, menuItemText, mnemonic));
     }
 
+    /**
+     * Populate a menu lazily: its items are built by the builder when the
+     * menu is first selected, rather than now. The MenuIdentifiers of the
+     * items the builder will create are declared to the MenuWiring, so
+     * their ActionListeners may be set and triggered, and their enabled
+     * state, visibility and text set, before they are built. Keyboard accelerators of these items
+     * do not work until the menu has been built.
+     * Called on the EDT
+     * @param menu the menu to populate when first selected
+     * @param builder the builder of the menu's items
+     * @param menuIdentifiers the MenuIdentifiers of the items the builder
+     * will create
+     */
+    public final void populateOnFirstSelection(final JMenu menu,
+            final LazyMenuBuilder builder, final MenuIdentifier... menuIdentifiers) {
+        for (final MenuIdentifier menuIdentifier : menuIdentifiers) {
+            menuWiring.declareMenuItem(menuIdentifier);
+        }
+        menu.addMenuListener(new MenuListener() {
+            public void menuSelected(final MenuEvent e) {
+                menu.removeMenuListener(this);
+                LOGGER.debug("Building menu '" + menu.getText() + "' on first selection");
+                builder.buildMenu(menu);
+            }
+
+            public void menuDeselected(final MenuEvent e) {
+                // nothing
+            }
+
+            public void menuCanceled(final MenuEvent e) {
+                // nothing
+            }
+        });
+    }
+
     /**
      * Replace a new JMenuItem, and wire it into the MenuWiring.
      * Called on the EDT
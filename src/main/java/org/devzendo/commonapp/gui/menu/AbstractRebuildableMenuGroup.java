@@ -16,16 +16,41 @@
 
 package org.devzendo.commonapp.gui.menu;
 
+import java.awt.Component;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javax.swing.JMenu;
+import javax.swing.JMenuItem;
+
+import org.apache.log4j.Logger;
+
 /**
  * An AbstractRebuildableMenuGroup is a menu group that can be rebuilt. These
  * are used for menus that add/remove MenuItems, such as the View menu (when
  * certain tabs are enabled/disabled), the Window menu (when databases are
  * added/removed), and the File menu (when databases are opened, the Recent
  * files list needs updating).
+ * <p>
+ * Menus whose items are all described by a list of MenuItemDescriptions can
+ * be rebuilt incrementally with updateMenuItems, which only changes the
+ * items that differ from the last update.
  * 
  * @author matt
  */
 public abstract class AbstractRebuildableMenuGroup extends AbstractMenuGroup {
+    private static final Logger LOGGER = Logger.getLogger(AbstractRebuildableMenuGroup.class);
+    // the identifiers of the items placed in each menu by updateMenuItems;
+    // held weakly, so discarded menus can be collected (JMenus compare by
+    // identity)
+    private final Map<JMenu, List<MenuIdentifier>> updatedMenuIdentifiers =
+        new WeakHashMap<JMenu, List<MenuIdentifier>>();
+
     /**
      * Construct given the main menu, which subclasses will probably use to
      * cause updates to other parts of the menu system.
@@ -41,4 +66,139 @@ public abstract class AbstractRebuildableMenuGroup extends AbstractMenuGroup {
      * which means it has to be rebuilt.
      */
     public abstract void rebuildMenuGroup();
+
+    /**
+     * Update a menu to contain the described items, in order, changing only
+     * what differs from the last update of this menu: items no longer
+     * described are removed from the menu and the MenuWiring, new items are
+     * created and inserted, and existing items, and any ActionListeners set
+     * for them, are kept, with their text and mnemonic updated and their
+     * position changed only if necessary: the fewest items are moved to put
+     * the menu in order. The cost of an update therefore
+     * depends on the number of items changed, not the number of items.
+     * <p>
+     * The menu is expected to contain only the items placed in it by this
+     * method. The MenuIdentifiers of removed items are no longer held, so
+     * their ids may be reused once the caller no longer holds them either.
+     * A menu that is no longer used should be updated to contain no items,
+     * so that the MenuWiring no longer holds its items.
+     * Called on the EDT
+     * @param menu the menu to update
+     * @param menuItemDescriptions the items it is to contain, in order
+     * @return the number of items inserted, removed, moved or changed
+     */
+    public final int updateMenuItems(final JMenu menu, final List<MenuItemDescription> menuItemDescriptions) {
+        final MenuWiring menuWiring = getMenuWiring();
+        final List<MenuIdentifier> previousMenuIdentifiers = updatedMenuIdentifiers.get(menu);
+        final List<MenuIdentifier> menuIdentifiers = new ArrayList<MenuIdentifier>(menuItemDescriptions.size());
+        for (final MenuItemDescription menuItemDescription : menuItemDescriptions) {
+            menuIdentifiers.add(menuItemDescription.getMenuIdentifier());
+        }
+        int changes = 0;
+
+        if (previousMenuIdentifiers != null) {
+            final Set<MenuIdentifier> keptMenuIdentifiers = new HashSet<MenuIdentifier>(menuIdentifiers);
+            for (final MenuIdentifier previousMenuIdentifier : previousMenuIdentifiers) {
+                if (!keptMenuIdentifiers.contains(previousMenuIdentifier)) {
+                    final JMenuItem removedMenuItem = menuWiring.removeMenuItem(previousMenuIdentifier);
+                    if (removedMenuItem != null) {
+                        menu.remove(removedMenuItem);
+                    }
+                    changes++;
+                }
+            }
+        }
+
+        final List<JMenuItem> menuItems = new ArrayList<JMenuItem>(menuItemDescriptions.size());
+        final boolean[] changed = new boolean[menuItemDescriptions.size()];
+        for (int i = 0; i < menuItemDescriptions.size(); i++) {
+            final MenuItemDescription menuItemDescription = menuItemDescriptions.get(i);
+            final JMenuItem menuItem = menuWiring.createMenuItem(menuItemDescription.getMenuIdentifier(),
+                menuItemDescription.getText(), menuItemDescription.getMnemonic());
+            if (!menuItemDescription.getText().equals(menuItem.getText())) {
+                menuItem.setText(menuItemDescription.getText());
+                changed[i] = true;
+            }
+            // setMnemonic stores the key code, which is that of the upper
+            // case character
+            if (menuItem.getMnemonic() != Character.toUpperCase(menuItemDescription.getMnemonic())) {
+                menuItem.setMnemonic(menuItemDescription.getMnemonic());
+                changed[i] = true;
+            }
+            menuItems.add(menuItem);
+        }
+
+        // Items already in the menu, in the longest run in the right order,
+        // stay where they are; the others are moved, or inserted if new.
+        final boolean[] staying = inOrderMenuItems(menu, menuItems);
+        for (int i = 0; i < menuItems.size(); i++) {
+            final JMenuItem menuItem = menuItems.get(i);
+            if (!staying[i] && menuItem.getParent() == menu.getPopupMenu()) {
+                menu.remove(menuItem);
+            }
+        }
+        for (int i = 0; i < menuItems.size(); i++) {
+            if (!staying[i]) {
+                menu.insert(menuItems.get(i), i);
+                changed[i] = true;
+            }
+            if (changed[i]) {
+                changes++;
+            }
+        }
+
+        updatedMenuIdentifiers.put(menu, menuIdentifiers);
+        LOGGER.debug("Updated menu '" + menu.getText() + "' with " + changes + " change(s) to "
+            + menuItemDescriptions.size() + " item(s)");
+        return changes;
+    }
+
+    /**
+     * Find the longest run of menu items, not necessarily adjacent, that
+     * are already in the menu in the order given.
+     * @param menu the menu
+     * @param menuItems the items, in the order they are to be in
+     * @return for each item, whether it is in the run
+     */
+    private static boolean[] inOrderMenuItems(final JMenu menu, final List<JMenuItem> menuItems) {
+        final Map<Component, Integer> positions = new IdentityHashMap<Component, Integer>();
+        final Component[] menuComponents = menu.getMenuComponents();
+        for (int i = 0; i < menuComponents.length; i++) {
+            positions.put(menuComponents[i], Integer.valueOf(i));
+        }
+        // runEnds[length - 1] is the index of the item ending the run of
+        // that length whose last position is lowest; previous links runs
+        final int size = menuItems.size();
+        final int[] position = new int[size];
+        final int[] runEnds = new int[size];
+        final int[] previous = new int[size];
+        int longest = 0;
+        for (int i = 0; i < size; i++) {
+            final Integer menuPosition = positions.get(menuItems.get(i));
+            position[i] = menuPosition == null ? -1 : menuPosition.intValue();
+            if (position[i] == -1) {
+                continue;
+            }
+            int low = 0;
+            int high = longest;
+            while (low < high) {
+                final int middle = (low + high) >>> 1;
+                if (position[runEnds[middle]] < position[i]) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            previous[i] = low == 0 ? -1 : runEnds[low - 1];
+            runEnds[low] = i;
+            if (low == longest) {
+                longest++;
+            }
+        }
+        final boolean[] inOrder = new boolean[size];
+        for (int i = longest == 0 ? -1 : runEnds[longest - 1]; i != -1; i = previous[i]) {
+            inOrder[i] = true;
+        }
+        return inOrder;
+    }
 }
@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui.menu;
+
+import javax.swing.JMenu;
+
+/**
+ * Builds the contents of a menu when it is first selected, rather than when
+ * the menu bar is created.
+ * 
+ * @author matt
+ *
+ */
+public interface LazyMenuBuilder {
+    /**
+     * Add the menu's items. Called on the EDT, once, when the menu is first
+     * selected.
+     * 
+     * @param menu the menu to populate
+     */
+    void buildMenu(JMenu menu);
+}
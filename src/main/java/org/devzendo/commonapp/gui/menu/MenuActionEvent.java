@@ -0,0 +1,109 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui.menu;
+
+import java.awt.event.ActionEvent;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * The ActionEvent passed to menu items' ActionListeners by MenuWiring,
+ * which measures the time taken for their actions to finish.
+ * <p>
+ * An action that continues after its ActionListener returns (e.g. in a
+ * SwingWorker) should call deferCompletion() before returning, and
+ * actionFinished() once it has finished. A listener that decides not to
+ * perform the action (e.g. ignoring a repeated click) should call
+ * dropped(), so that the invocation is not taken for a quick action.
+ *
+ * @author matt
+ *
+ */
+@SuppressWarnings("serial")
+public final class MenuActionEvent extends ActionEvent {
+    private final transient MenuIdentifier menuIdentifier;
+    private final transient MenuActionMetrics metrics;
+    private final long dispatchedAt;
+    // the dispatch itself, plus each deferral
+    private final AtomicInteger outstanding;
+    private volatile boolean dropped;
+
+    /**
+     * Create a MenuActionEvent, as dispatched for a menu identifier.
+     * @param event the event being dispatched
+     * @param identifier the menu identifier it is being dispatched for
+     * @param actionMetrics the metrics to record its invocation in
+     */
+    MenuActionEvent(final ActionEvent event, final MenuIdentifier identifier, final MenuActionMetrics actionMetrics) {
+        super(event.getSource(), event.getID(), event.getActionCommand(), event.getWhen(), event.getModifiers());
+        menuIdentifier = identifier;
+        metrics = actionMetrics;
+        dispatchedAt = System.nanoTime();
+        outstanding = new AtomicInteger(1);
+        metrics.invoked(identifier);
+    }
+
+    /**
+     * @return the identifier of the menu item whose action this is
+     */
+    public MenuIdentifier getMenuIdentifier() {
+        return menuIdentifier;
+    }
+
+    /**
+     * The action continues after its ActionListener returns; it will call
+     * actionFinished() when it has finished.
+     */
+    public void deferCompletion() {
+        outstanding.incrementAndGet();
+    }
+
+    /**
+     * The action will not be performed for this invocation; it is counted
+     * as dropped when it finishes, rather than its latency recorded.
+     */
+    public void dropped() {
+        dropped = true;
+    }
+
+    /**
+     * An action whose completion was deferred has finished.
+     */
+    public void actionFinished() {
+        completed();
+    }
+
+    /**
+     * The event has been dispatched to the ActionListeners.
+     */
+    void dispatched() {
+        completed();
+    }
+
+    private void completed() {
+        final int remaining = outstanding.decrementAndGet();
+        if (remaining == 0) {
+            if (dropped) {
+                metrics.dropped(menuIdentifier);
+            } else {
+                metrics.finished(menuIdentifier, System.nanoTime() - dispatchedAt);
+            }
+        } else if (remaining < 0) {
+            throw new IllegalStateException("The action for " + menuIdentifier + " has already finished");
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui.menu;
+
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.devzendo.commonapp.gui.KeyedMetrics;
+import org.devzendo.commonapp.gui.LatencyHistogram;
+
+
+/**
+ * Aggregates the invocations of menu actions dispatched via MenuWiring,
+ * per MenuIdentifier: a count of invocations, and a histogram of the time
+ * from their dispatch to their actions finishing. An action that continues
+ * after its ActionListener returns, such as a SnailActionListener's, is
+ * finished when it says so via its MenuActionEvent. Invocations whose
+ * action was not performed, e.g. repeated clicks ignored by a debouncing
+ * SnailActionListener, are counted as dropped, without their latency being
+ * recorded.
+ * <p>
+ * The metrics are kept by name, so they do not keep the MenuIdentifiers of
+ * short-lived menu items, and their ids, in use.
+ *
+ * @author matt
+ *
+ */
+public final class MenuActionMetrics {
+    private static final Logger LOGGER = Logger.getLogger(MenuActionMetrics.class);
+
+    /**
+     * The metrics for one menu item.
+     */
+    public static final class MenuItemMetrics {
+        private final String menuName;
+        private final AtomicLong invocations = new AtomicLong(0);
+        private final AtomicLong dropped = new AtomicLong(0);
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        MenuItemMetrics(final String name) {
+            menuName = name;
+        }
+
+        /**
+         * @return the menu identifier these metrics are for
+         */
+        public MenuIdentifier getMenuIdentifier() {
+            return MenuIdentifier.valueOf(menuName);
+        }
+
+        /**
+         * @return the number of times the menu item's action has been
+         * invoked
+         */
+        public long getInvocationCount() {
+            return invocations.get();
+        }
+
+        /**
+         * @return the number of invocations whose action was not performed
+         */
+        public long getDroppedCount() {
+            return dropped.get();
+        }
+
+        /**
+         * @return the time from the menu item's action being dispatched to
+         * its finishing, for those that have finished, and were not dropped
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return menuName + ": invoked " + invocations.get()
+                + "; dropped " + dropped.get()
+                + "; finished " + latency;
+        }
+    }
+
+    private final KeyedMetrics<String, MenuItemMetrics> metrics = new KeyedMetrics<String, MenuItemMetrics>() {
+        @Override
+        protected MenuItemMetrics create(final String menuName) {
+            return new MenuItemMetrics(menuName);
+        }
+    };
+    private final Object lock = new Object();
+    private ScheduledThreadPoolExecutor summaryScheduler; // guarded by lock
+    private ScheduledFuture<?> periodicSummary; // guarded by lock
+
+    /**
+     * Obtain the metrics for a menu item.
+     * @param menuIdentifier the menu item's identifier
+     * @return its metrics, or null if it has not been invoked
+     */
+    public MenuItemMetrics getMetrics(final MenuIdentifier menuIdentifier) {
+        return metrics.get(menuIdentifier.getName());
+    }
+
+    /**
+     * @return the metrics for every menu item that has been invoked
+     */
+    public List<MenuItemMetrics> getAllMetrics() {
+        return metrics.getAll();
+    }
+
+    /**
+     * Forget all metrics gathered so far.
+     */
+    public void reset() {
+        metrics.clear();
+    }
+
+    /**
+     * Log the metrics for every menu item that has been invoked at INFO
+     * level.
+     */
+    public void logSummary() {
+        for (final MenuItemMetrics itemMetrics : metrics.getAll()) {
+            LOGGER.info(itemMetrics);
+        }
+    }
+
+    /**
+     * Log the summary periodically, on a daemon thread, until stopped.
+     * Any existing periodic summary is replaced. The thread ends when the
+     * summary is stopped.
+     * @param period the time between summaries
+     * @param unit the unit of period
+     */
+    public void startPeriodicSummary(final long period, final TimeUnit unit) {
+        synchronized (lock) {
+            stopPeriodicSummary();
+            summaryScheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "MenuActionMetricsSummary");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            periodicSummary = summaryScheduler.scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    logSummary();
+                }
+            }, period, period, unit);
+        }
+    }
+
+    /**
+     * Stop logging the summary periodically.
+     */
+    public void stopPeriodicSummary() {
+        synchronized (lock) {
+            if (periodicSummary != null) {
+                periodicSummary.cancel(false);
+                periodicSummary = null;
+            }
+            if (summaryScheduler != null) {
+                summaryScheduler.shutdown();
+                summaryScheduler = null;
+            }
+        }
+    }
+
+    /**
+     * A menu item's action has been invoked.
+     * @param menuIdentifier the menu item's identifier
+     */
+    void invoked(final MenuIdentifier menuIdentifier) {
+        metricsFor(menuIdentifier).invocations.incrementAndGet();
+    }
+
+    /**
+     * A menu item's invocation was dropped, its action not being performed.
+     * @param menuIdentifier the menu item's identifier
+     */
+    void dropped(final MenuIdentifier menuIdentifier) {
+        metricsFor(menuIdentifier).dropped.incrementAndGet();
+    }
+
+    /**
+     * A menu item's action has finished.
+     * @param menuIdentifier the menu item's identifier
+     * @param latencyNanos the time since its dispatch
+     */
+    void finished(final MenuIdentifier menuIdentifier, final long latencyNanos) {
+        metricsFor(menuIdentifier).latency.record(latencyNanos);
+    }
+
+    private MenuItemMetrics metricsFor(final MenuIdentifier menuIdentifier) {
+        return metrics.getOrCreate(menuIdentifier.getName());
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui.menu;
+
+/**
+ * Decides whether a menu item is enabled, given the application's state.
+ * Rules must decide solely on the facts they read, so that they need only
+ * be evaluated again when those change.
+ *
+ * @author matt
+ *
+ */
+public interface MenuEnablementRule {
+    /**
+     * @param facts the application's state
+     * @return true iff the menu item is to be enabled
+     */
+    boolean isEnabled(MenuFacts facts);
+}
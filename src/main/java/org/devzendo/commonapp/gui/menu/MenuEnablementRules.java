@@ -0,0 +1,302 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui.menu;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.SwingUtilities;
+
+import org.apache.log4j.Logger;
+
+
+/**
+ * Enables and disables the menu items in a MenuWiring according to
+ * declared rules, instead of by calls scattered through the application.
+ * <p>
+ * Each MenuIdentifier has a MenuEnablementRule, which decides upon named
+ * facts about the application's state. The facts each rule reads when it
+ * is evaluated are recorded; when facts change, only the rules that read
+ * them are evaluated again, and only the menu items whose enablement has
+ * changed are updated, via MenuWiring's batch update. The cost of a change
+ * is therefore proportional to what it affects, not to the size of the
+ * menu.
+ * <p>
+ * Facts may be changed on any thread. The rules are evaluated on the
+ * thread that changed the facts, with no lock held, so they may call back
+ * into these rules or the MenuWiring; a rule whose facts change while it
+ * is being evaluated is evaluated again. The menu items are updated on the
+ * event thread: immediately if the facts were changed there, otherwise
+ * shortly afterwards.
+ *
+ * @author matt
+ *
+ */
+public final class MenuEnablementRules {
+    private static final Logger LOGGER = Logger.getLogger(MenuEnablementRules.class);
+
+    private static final class RuleState {
+        private final MenuIdentifier menuIdentifier;
+        private final MenuEnablementRule rule;
+        private Set<String> readFacts = new HashSet<String>();
+        private Boolean enabled;
+
+        RuleState(final MenuIdentifier identifier, final MenuEnablementRule enablementRule) {
+            menuIdentifier = identifier;
+            rule = enablementRule;
+        }
+    }
+
+    private final MenuWiring menuWiring;
+    private final Object lock = new Object();
+    private final Map<String, Object> facts; // guarded by lock
+    private final Map<MenuIdentifier, RuleState> rules; // guarded by lock
+    private final Map<String, Set<RuleState>> dependentRules; // guarded by lock
+    private final Set<MenuIdentifier> changedItems; // guarded by lock
+    private boolean updateScheduled; // guarded by lock
+    private long evaluationCount; // guarded by lock
+
+    /**
+     * Create the rules for a MenuWiring's menu items.
+     * @param wiring the MenuWiring
+     */
+    public MenuEnablementRules(final MenuWiring wiring) {
+        menuWiring = wiring;
+        facts = new HashMap<String, Object>();
+        rules = new HashMap<MenuIdentifier, RuleState>();
+        dependentRules = new HashMap<String, Set<RuleState>>();
+        changedItems = new LinkedHashSet<MenuIdentifier>();
+    }
+
+    /**
+     * Declare the rule for a menu item, replacing any existing one. It is
+     * evaluated now, and then whenever the facts it reads change.
+     * @param menuIdentifier the menu item's identifier
+     * @param rule the rule deciding whether it is enabled
+     */
+    public void setRule(final MenuIdentifier menuIdentifier, final MenuEnablementRule rule) {
+        final RuleState ruleState = new RuleState(menuIdentifier, rule);
+        synchronized (lock) {
+            final RuleState existing = rules.remove(menuIdentifier);
+            if (existing != null) {
+                forgetDependencies(existing);
+            }
+            changedItems.remove(menuIdentifier);
+            rules.put(menuIdentifier, ruleState);
+        }
+        evaluate(ruleState);
+        updateMenuItems();
+    }
+
+    /**
+     * Remove the rule for a menu item, leaving it in its current state.
+     * @param menuIdentifier the menu item's identifier
+     */
+    public void removeRule(final MenuIdentifier menuIdentifier) {
+        synchronized (lock) {
+            final RuleState existing = rules.remove(menuIdentifier);
+            if (existing != null) {
+                forgetDependencies(existing);
+            }
+            changedItems.remove(menuIdentifier);
+        }
+    }
+
+    /**
+     * Change a fact, evaluating the rules that depend on it if its value
+     * has changed.
+     * @param name the name of the fact
+     * @param value its new value
+     */
+    public void setFact(final String name, final Object value) {
+        final Map<String, Object> changedFacts = new HashMap<String, Object>();
+        changedFacts.put(name, value);
+        setFacts(changedFacts);
+    }
+
+    /**
+     * Change several facts at once, evaluating each rule that depends on
+     * any that have changed once.
+     * @param changedFacts the names and new values of the facts
+     */
+    public void setFacts(final Map<String, Object> changedFacts) {
+        final Set<RuleState> affected = new LinkedHashSet<RuleState>();
+        synchronized (lock) {
+            for (final Map.Entry<String, Object> fact : changedFacts.entrySet()) {
+                final Object previous = facts.put(fact.getKey(), fact.getValue());
+                if (previous == null ? fact.getValue() == null : previous.equals(fact.getValue())) {
+                    continue;
+                }
+                final Set<RuleState> dependents = dependentRules.get(fact.getKey());
+                if (dependents != null) {
+                    affected.addAll(dependents);
+                }
+            }
+        }
+        for (final RuleState ruleState : affected) {
+            evaluate(ruleState);
+        }
+        updateMenuItems();
+    }
+
+    /**
+     * Update every menu item that has a rule to its rule's current result,
+     * e.g. once menu items whose rules were declared before they were
+     * created have been created.
+     */
+    public void updateAllMenuItems() {
+        synchronized (lock) {
+            changedItems.addAll(rules.keySet());
+        }
+        updateMenuItems();
+    }
+
+    /**
+     * @param name the name of the fact
+     * @return its value, or null if it has not been set
+     */
+    public Object getFact(final String name) {
+        synchronized (lock) {
+            return facts.get(name);
+        }
+    }
+
+    /**
+     * @return the number of rule evaluations made so far
+     */
+    public long getEvaluationCount() {
+        synchronized (lock) {
+            return evaluationCount;
+        }
+    }
+
+    private void evaluate(final RuleState ruleState) {
+        // not guarded by lock: the rule is the application's code
+        while (true) {
+            final Map<String, Object> read = new HashMap<String, Object>();
+            final MenuFacts recordingFacts = new MenuFacts() {
+                public Object getFact(final String name) {
+                    final Object value;
+                    synchronized (lock) {
+                        value = facts.get(name);
+                    }
+                    if (!read.containsKey(name)) {
+                        read.put(name, value);
+                    }
+                    return value;
+                }
+
+                public boolean isTrue(final String name) {
+                    return Boolean.TRUE.equals(getFact(name));
+                }
+            };
+            boolean enabled;
+            try {
+                enabled = ruleState.rule.isEnabled(recordingFacts);
+            } catch (final RuntimeException re) {
+                LOGGER.warn("The enablement rule for " + ruleState.menuIdentifier + " failed; disabling it: " + re.getMessage(), re);
+                enabled = false;
+            }
+            synchronized (lock) {
+                evaluationCount++;
+                if (rules.get(ruleState.menuIdentifier) != ruleState) {
+                    return; // removed or replaced meanwhile
+                }
+                if (!isCurrent(read)) {
+                    continue; // its facts changed meanwhile
+                }
+                forgetDependencies(ruleState);
+                ruleState.readFacts = new HashSet<String>(read.keySet());
+                for (final String name : ruleState.readFacts) {
+                    Set<RuleState> dependents = dependentRules.get(name);
+                    if (dependents == null) {
+                        dependents = new HashSet<RuleState>();
+                        dependentRules.put(name, dependents);
+                    }
+                    dependents.add(ruleState);
+                }
+                if (ruleState.enabled == null || ruleState.enabled.booleanValue() != enabled) {
+                    ruleState.enabled = Boolean.valueOf(enabled);
+                    changedItems.add(ruleState.menuIdentifier);
+                }
+                return;
+            }
+        }
+    }
+
+    private boolean isCurrent(final Map<String, Object> read) {
+        // guarded by lock
+        for (final Map.Entry<String, Object> fact : read.entrySet()) {
+            final Object value = facts.get(fact.getKey());
+            if (value == null ? fact.getValue() != null : !value.equals(fact.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void forgetDependencies(final RuleState ruleState) {
+        // guarded by lock
+        for (final String name : ruleState.readFacts) {
+            final Set<RuleState> dependents = dependentRules.get(name);
+            if (dependents != null) {
+                dependents.remove(ruleState);
+                if (dependents.isEmpty()) {
+                    dependentRules.remove(name);
+                }
+            }
+        }
+        ruleState.readFacts = new HashSet<String>();
+    }
+
+    private void updateMenuItems() {
+        if (SwingUtilities.isEventDispatchThread()) {
+            pushChanges();
+            return;
+        }
+        synchronized (lock) {
+            if (updateScheduled || changedItems.isEmpty()) {
+                return;
+            }
+            updateScheduled = true;
+        }
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                pushChanges();
+            }
+        });
+    }
+
+    private void pushChanges() {
+        // Uses the current results, so changes pushed out of order still
+        // leave the menu items in the latest state
+        final Map<MenuIdentifier, MenuItemState> states = new HashMap<MenuIdentifier, MenuItemState>();
+        synchronized (lock) {
+            updateScheduled = false;
+            for (final MenuIdentifier menuIdentifier : changedItems) {
+                states.put(menuIdentifier, MenuItemState.enabled(rules.get(menuIdentifier).enabled.booleanValue()));
+            }
+            changedItems.clear();
+        }
+        if (!states.isEmpty()) {
+            menuWiring.applyMenuItemStates(states);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui.menu;
+
+/**
+ * The named facts about the application's state that a
+ * MenuEnablementRule decides upon. Reading a fact makes the rule depend on
+ * it, so that it is only evaluated again when one of the facts it read
+ * has changed.
+ *
+ * @author matt
+ *
+ */
+public interface MenuFacts {
+    /**
+     * @param name the name of the fact
+     * @return its value, or null if it has not been set
+     */
+    Object getFact(String name);
+
+    /**
+     * @param name the name of the fact
+     * @return true iff its value is Boolean.TRUE
+     */
+    boolean isTrue(String name);
+}
@@ -15,24 +15,134 @@
  */
 package org.devzendo.commonapp.gui.menu;
 
-import org.apache.commons.lang.builder.EqualsBuilder;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.apache.commons.lang.builder.HashCodeBuilder;
 
 /**
  * How a menu item is identified.
+ * <p>
+ * Each distinct name in use is given a small, dense integer id, and the hash
+ * code is computed once, so MenuIdentifiers can be compared and looked up
+ * without allocation. Use {@link #valueOf(String)} to obtain the canonical
+ * instance for a name; instances created with the constructor are equal to
+ * it, and share its id.
+ * <p>
+ * Names are only held while some MenuIdentifier for them is reachable, e.g.
+ * from a MenuWiring; once none is, the name is forgotten and its id is given
+ * to the next new name, so identifiers made for short-lived, dynamic menu
+ * items do not accumulate.
  * 
  * @author matt
  *
  */
 public final class MenuIdentifier {
+    /**
+     * A weak reference to the canonical instance for a name, which frees its
+     * id once that instance is collected.
+     */
+    private static final class CanonicalReference extends WeakReference<MenuIdentifier> {
+        private final String mName;
+        private final int mId;
+
+        CanonicalReference(final MenuIdentifier canonical, final ReferenceQueue<MenuIdentifier> queue) {
+            super(canonical, queue);
+            mName = canonical.mName;
+            mId = canonical.mId;
+        }
+    }
+
+    // serialises the allocation and freeing of ids; finding the canonical
+    // instance of a name in use needs no lock
+    private static final Object REGISTRY_LOCK = new Object();
+    private static final ConcurrentMap<String, CanonicalReference> CANONICAL =
+        new ConcurrentHashMap<String, CanonicalReference>();
+    private static final ReferenceQueue<MenuIdentifier> COLLECTED = new ReferenceQueue<MenuIdentifier>();
+    private static final BitSet USED_IDS = new BitSet();
+
     private final String mName;
+    private final int mId;
+    private final int mHashCode;
+    // keeps the name, and so the id, in use while this instance is
+    private final MenuIdentifier mCanonical;
+
     /**
      * @param name the name of the menu identifier
      */
     public MenuIdentifier(final String name) {
+        mCanonical = valueOf(name);
         mName = name;
+        mId = mCanonical.mId;
+        mHashCode = mCanonical.mHashCode;
     }
-    
+
+    private MenuIdentifier(final String name, final int id) {
+        mCanonical = this;
+        mName = name;
+        mId = id;
+        mHashCode = new HashCodeBuilder(1, 31).append(mName).toHashCode();
+    }
+
+    /**
+     * Obtain the canonical MenuIdentifier for a name.
+     * 
+     * @param name the name of the menu identifier
+     * @return the one MenuIdentifier instance held for this name while it
+     * is in use
+     */
+    public static MenuIdentifier valueOf(final String name) {
+        final MenuIdentifier canonical = canonicalOrNull(name);
+        if (canonical != null) {
+            return canonical;
+        }
+        synchronized (REGISTRY_LOCK) {
+            freeCollectedIds();
+            final MenuIdentifier existing = canonicalOrNull(name);
+            if (existing != null) {
+                return existing;
+            }
+            final int id = USED_IDS.nextClearBit(0);
+            USED_IDS.set(id);
+            final MenuIdentifier created = new MenuIdentifier(name, id);
+            CANONICAL.put(name, new CanonicalReference(created, COLLECTED));
+            return created;
+        }
+    }
+
+    private static MenuIdentifier canonicalOrNull(final String name) {
+        final CanonicalReference reference = CANONICAL.get(name);
+        return reference == null ? null : reference.get();
+    }
+
+    // must be called with REGISTRY_LOCK held
+    private static void freeCollectedIds() {
+        CanonicalReference reference;
+        while ((reference = (CanonicalReference) COLLECTED.poll()) != null) {
+            CANONICAL.remove(reference.mName, reference);
+            USED_IDS.clear(reference.mId);
+        }
+    }
+
+    /**
+     * @return the dense id of this name; ids are allocated from the lowest
+     * unused id upwards, equal MenuIdentifiers have equal ids, and an id is
+     * only reused once no MenuIdentifier for its name is reachable
+     */
+    int getId() {
+        return mId;
+    }
+
+    /**
+     * @return the name of the menu identifier
+     */
+    String getName() {
+        return mName;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -44,8 +154,7 @@ public final class MenuIdentifier {
         if (obj == null || getClass() != obj.getClass()) {
             return false;
         }
-        final MenuIdentifier other = (MenuIdentifier) obj;
-        return new EqualsBuilder().append(this.mName, other.mName).isEquals();
+        return mId == ((MenuIdentifier) obj).mId;
     }
     
     /**
@@ -53,8 +162,7 @@ public final class MenuIdentifier {
      */
     @Override
     public int hashCode() {
-        return new HashCodeBuilder(1, 31)
-        .append(mName).toHashCode();
+        return mHashCode;
     }
     
     /**
@@ -64,4 +172,4 @@ public final class MenuIdentifier {
     public String toString() {
         return mName;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui.menu;
+
+
+/**
+ * A description of a menu item for an incremental rebuild of a menu: its
+ * MenuIdentifier, which identifies the item across rebuilds, its text, and
+ * its mnemonic.
+ *
+ * @author matt
+ *
+ */
+public final class MenuItemDescription {
+    private final MenuIdentifier menuIdentifier;
+    private final String text;
+    private final char mnemonic;
+
+    /**
+     * Create a MenuItemDescription
+     * @param identifier the MenuIdentifier of the item
+     * @param itemText the item's text
+     * @param itemMnemonic the item's mnemonic
+     */
+    public MenuItemDescription(final MenuIdentifier identifier, final String itemText, final char itemMnemonic) {
+        menuIdentifier = identifier;
+        text = itemText;
+        mnemonic = itemMnemonic;
+    }
+
+    /**
+     * @return the MenuIdentifier of the item
+     */
+    public MenuIdentifier getMenuIdentifier() {
+        return menuIdentifier;
+    }
+
+    /**
+     * @return the item's text
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return the item's mnemonic
+     */
+    public char getMnemonic() {
+        return mnemonic;
+    }
+}
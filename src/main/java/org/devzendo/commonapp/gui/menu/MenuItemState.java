@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui.menu;
+
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+
+
+/**
+ * The desired state of a menu item, for MenuWiring's batch update: whether
+ * it is enabled, whether it is visible, and its text. Any of these may be
+ * left unspecified, in which case it is not changed.
+ *
+ * @author matt
+ *
+ */
+public final class MenuItemState {
+    private final Boolean enabled;
+    private final Boolean visible;
+    private final String text;
+
+    /**
+     * Create a MenuItemState
+     * @param enabledState whether the item is to be enabled, or null to
+     * leave it unchanged
+     * @param visibleState whether the item is to be visible, or null to
+     * leave it unchanged
+     * @param itemText the item's text, or null to leave it unchanged
+     */
+    public MenuItemState(final Boolean enabledState, final Boolean visibleState, final String itemText) {
+        enabled = enabledState;
+        visible = visibleState;
+        text = itemText;
+    }
+
+    /**
+     * Create a MenuItemState that only enables or disables the item.
+     * @param enabledState whether the item is to be enabled
+     * @return the MenuItemState
+     */
+    public static MenuItemState enabled(final boolean enabledState) {
+        return new MenuItemState(Boolean.valueOf(enabledState), null, null);
+    }
+
+    /**
+     * @return whether the item is to be enabled, or null to leave it
+     * unchanged
+     */
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return whether the item is to be visible, or null to leave it
+     * unchanged
+     */
+    public Boolean getVisible() {
+        return visible;
+    }
+
+    /**
+     * @return the item's text, or null to leave it unchanged
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Combine this state with one applied after it.
+     * @param later the state applied after this one
+     * @return the state the item would be left in by applying this state and
+     * then the later one
+     */
+    MenuItemState followedBy(final MenuItemState later) {
+        return new MenuItemState(
+            later.enabled != null ? later.enabled : enabled,
+            later.visible != null ? later.visible : visible,
+            later.text != null ? later.text : text);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final MenuItemState other = (MenuItemState) obj;
+        return new EqualsBuilder()
+            .append(this.enabled, other.enabled)
+            .append(this.visible, other.visible)
+            .append(this.text, other.text)
+            .isEquals();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder(1, 31)
+            .append(this.enabled)
+            .append(this.visible)
+            .append(this.text)
+            .toHashCode();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "enabled " + enabled + ", visible " + visible + ", text " + text;
+    }
+}
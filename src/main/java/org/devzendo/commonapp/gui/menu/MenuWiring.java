@@ -18,10 +18,14 @@ package org.devzendo.commonapp.gui.menu;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.HashMap;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javax.swing.JMenuItem;
+import javax.swing.SwingUtilities;
 
 import org.apache.log4j.Logger;
 
@@ -29,12 +33,24 @@ import org.apache.log4j.Logger;
 /**
  * Provides wiring between MenuItems (referenced via MenuIdentifiers) and their
  * ActionListeners.
+ * <p>
+ * ActionListeners are passed MenuActionEvents, through which the time taken
+ * by each menu item's action is recorded in the wiring's MenuActionMetrics.
+ * <p>
+ * Lookups do not block or allocate: the wiring is held in an array indexed by
+ * each MenuIdentifier's id, which stays in use while the MenuIdentifier is
+ * wired, and is freed for reuse once it is removed and no longer referenced
+ * elsewhere, so the array only grows with the number of identifiers in use
+ * at once. Changes to the wiring are serialised, and ActionListeners
+ * are looked up and then called with no lock held, so a slow action does not
+ * hold up other threads' use of the wiring.
  * 
  * @author matt
  *
  */
 public final class MenuWiring {
     private static final Logger LOGGER = Logger.getLogger(MenuWiring.class);
+    private static final int INITIAL_CAPACITY = 64;
     /**
      * A stash for JMenuItems and their ActionListeners
      * 
@@ -42,15 +58,21 @@ public final class MenuWiring {
      *
      */
     private class MenuDetails {
-        private JMenuItem mMenuItem;
-        private ActionListener mActionListener;
+        // keeps the identifier's id from being reused while it is wired
+        private final MenuIdentifier mMenuIdentifier;
+        private volatile JMenuItem mMenuItem;
+        private volatile ActionListener mActionListener;
+        private volatile boolean mDeclared;
+        private volatile MenuItemState mPendingState;
 
         /**
          * Create a MenuDetails with no JMenuItem until set, and no
          * ActionListener until one is set.
          * 
+         * @param menuIdentifier the MenuIdentifier these are the details of
          */
-        public MenuDetails() {
+        public MenuDetails(final MenuIdentifier menuIdentifier) {
+            this.mMenuIdentifier = menuIdentifier;
             this.mMenuItem = null;
             this.mActionListener = null;
         }
@@ -59,9 +81,11 @@ public final class MenuWiring {
          * Create a MenuDetails for a given JMenuItem, with no ActionListener
          * until one is set.
          * 
+         * @param menuIdentifier the MenuIdentifier these are the details of
          * @param jMenuItem the JMenuItem for this stash 
          */
-        public MenuDetails(final JMenuItem menuItem) {
+        public MenuDetails(final MenuIdentifier menuIdentifier, final JMenuItem menuItem) {
+            this.mMenuIdentifier = menuIdentifier;
             this.mMenuItem = menuItem;
             this.mActionListener = null;
         }
@@ -93,14 +117,97 @@ public final class MenuWiring {
         public JMenuItem getMenuItem() {
             return mMenuItem;
         }
+
+        /**
+         * Note that the JMenuItem will be stored later, when it is built.
+         */
+        public void setDeclared() {
+            this.mDeclared = true;
+        }
+
+        /**
+         * @return true iff the JMenuItem has been declared, to be stored
+         * later
+         */
+        public boolean isDeclared() {
+            return mDeclared;
+        }
+
+        /**
+         * @param state the state to give the JMenuItem when it is stored, or
+         * null to leave it as built
+         */
+        public void setPendingState(final MenuItemState state) {
+            this.mPendingState = state;
+        }
+
+        /**
+         * @return the state to give the JMenuItem when it is stored, or null
+         * if none has been set
+         */
+        public MenuItemState getPendingState() {
+            return mPendingState;
+        }
+
+        /**
+         * Combine a state with any already set, to give the JMenuItem when it
+         * is stored.
+         * @param state the state applied
+         * @return true iff this changed the state to give the JMenuItem
+         */
+        public boolean applyPendingState(final MenuItemState state) {
+            final MenuItemState pendingState = mPendingState;
+            final MenuItemState combinedState = pendingState == null ? state : pendingState.followedBy(state);
+            if (combinedState.equals(pendingState)) {
+                return false;
+            }
+            this.mPendingState = combinedState;
+            return true;
+        }
     }
-    private final Map<MenuIdentifier, MenuDetails> menuDetailsMap;
+    // indexed by MenuIdentifier id; grown (by replacement) under changeLock,
+    // lookups need no lock
+    private volatile AtomicReferenceArray<MenuDetails> menuDetailsArray;
+    // serialises changes to menuDetailsArray; lookups need no lock
+    private final Object changeLock;
+    private final MenuActionMetrics actionMetrics;
 
     /**
      * Create some MenuWiring
      */
     public MenuWiring() {
-        menuDetailsMap = new HashMap<MenuIdentifier, MenuDetails>();
+        menuDetailsArray = new AtomicReferenceArray<MenuDetails>(INITIAL_CAPACITY);
+        changeLock = new Object();
+        actionMetrics = new MenuActionMetrics();
+    }
+
+    private MenuDetails getMenuDetails(final MenuIdentifier menuIdentifier) {
+        final AtomicReferenceArray<MenuDetails> array = menuDetailsArray;
+        final int id = menuIdentifier.getId();
+        return id < array.length() ? array.get(id) : null;
+    }
+
+    // must be called with changeLock held
+    private void putMenuDetails(final MenuIdentifier menuIdentifier, final MenuDetails menuDetails) {
+        final int id = menuIdentifier.getId();
+        AtomicReferenceArray<MenuDetails> array = menuDetailsArray;
+        if (id >= array.length()) {
+            final AtomicReferenceArray<MenuDetails> grown =
+                new AtomicReferenceArray<MenuDetails>(Math.max(id + 1, array.length() * 2));
+            for (int i = 0; i < array.length(); i++) {
+                grown.set(i, array.get(i));
+            }
+            menuDetailsArray = grown;
+            array = grown;
+        }
+        array.set(id, menuDetails);
+    }
+
+    /**
+     * @return the metrics of the menu items' actions
+     */
+    public MenuActionMetrics getActionMetrics() {
+        return actionMetrics;
     }
 
     /**
@@ -110,13 +217,11 @@ public final class MenuWiring {
      * @return the ActionListener, if one has been set, or null if not set.
      */
     public ActionListener getActionListener(final MenuIdentifier menuIdentifier) {
-        synchronized (menuDetailsMap) {
-            final MenuDetails menuDetails = menuDetailsMap.get(menuIdentifier);
-            if (menuDetails == null) {
-                return null;
-            }
-            return menuDetails.getActionListener();
+        final MenuDetails menuDetails = getMenuDetails(menuIdentifier);
+        if (menuDetails == null) {
+            return null;
         }
+        return menuDetails.getActionListener();
     }
 
     /**
@@ -126,13 +231,11 @@ public final class MenuWiring {
      * null if not set.
      */
     public JMenuItem getMenuItem(final MenuIdentifier menuIdentifier) {
-        synchronized (menuDetailsMap) {
-            final MenuDetails menuDetails = menuDetailsMap.get(menuIdentifier);
-            if (menuDetails == null) {
-                return null;
-            }
-            return menuDetails.getMenuItem();
+        final MenuDetails menuDetails = getMenuDetails(menuIdentifier);
+        if (menuDetails == null) {
+            return null;
         }
+        return menuDetails.getMenuItem();
     }
     
     /**
@@ -149,23 +252,31 @@ public final class MenuWiring {
         // can be wired up after the menu has been created
         return new ActionListener() {
             public void actionPerformed(final ActionEvent e) {
-                synchronized (menuDetailsMap) {
-                    final MenuDetails menuDetails = menuDetailsMap.get(menuIdentifier);
-                    if (menuDetails == null) {
-                        return;
-                    }
-                    final ActionListener actionListener = menuDetails.getActionListener();
-                    if (actionListener == null) {
-                        LOGGER.debug("No indirect ActionListener stored for menu identifier " + menuIdentifier);
-                    } else {
-                        LOGGER.debug("Calling indirect ActionListener " + actionListener + " for menu identifier " + menuIdentifier);
-                        actionListener.actionPerformed(e);
-                    }
+                final ActionListener actionListener = getActionListener(menuIdentifier);
+                if (actionListener == null) {
+                    LOGGER.debug("No indirect ActionListener stored for menu identifier " + menuIdentifier);
+                } else {
+                    LOGGER.debug("Calling indirect ActionListener " + actionListener + " for menu identifier " + menuIdentifier);
+                    dispatch(menuIdentifier, actionListener, e);
                 }
             }
         };
     }
     
+    private void dispatch(final MenuIdentifier menuIdentifier, final ActionListener actionListener, final ActionEvent e) {
+        if (e instanceof MenuActionEvent) {
+            // triggered, and already being measured
+            actionListener.actionPerformed(e);
+            return;
+        }
+        final MenuActionEvent menuActionEvent = new MenuActionEvent(e, menuIdentifier, actionMetrics);
+        try {
+            actionListener.actionPerformed(menuActionEvent);
+        } finally {
+            menuActionEvent.dispatched();
+        }
+    }
+
     /**
      * Create the mapping between a JMenuItem and its MenuIdentifier, and set
      * the JMenuItem's direct ActionListener.
@@ -174,17 +285,53 @@ public final class MenuWiring {
      * @param menuItem the JMenuItem to map
      */
     public void storeMenuItem(final MenuIdentifier menuIdentifier, final JMenuItem menuItem) {
-        synchronized (menuDetailsMap) {
-            final MenuDetails existingMenuDetails = menuDetailsMap.get(menuIdentifier);
+        synchronized (changeLock) {
+            final MenuDetails existingMenuDetails = getMenuDetails(menuIdentifier);
             if (existingMenuDetails == null) {
-                menuDetailsMap.put(menuIdentifier, new MenuDetails(menuItem));
+                putMenuDetails(menuIdentifier, new MenuDetails(menuIdentifier, menuItem));
             } else {
+                final MenuItemState pendingState = existingMenuDetails.getPendingState();
+                if (pendingState != null) {
+                    applyMenuItemState(menuItem, pendingState);
+                    existingMenuDetails.setPendingState(null);
+                }
                 existingMenuDetails.setMenuItem(menuItem);
             }
             menuItem.addActionListener(generateDirectActionListener(menuIdentifier));
         }
     }
     
+    /**
+     * Declare that a JMenuItem will be stored for a MenuIdentifier later, e.g.
+     * when a lazily populated menu is first selected. Until it is stored,
+     * ActionListeners may be set and triggered for the MenuIdentifier, and
+     * its state may be set, by setMenuItemEnabled or applyMenuItemStates, and
+     * its enabled state queried; the JMenuItem is given the last enabled
+     * state, visibility and text set when it is stored.
+     * 
+     * @param menuIdentifier the MenuIdentifier whose JMenuItem will be
+     * stored later
+     */
+    public void declareMenuItem(final MenuIdentifier menuIdentifier) {
+        synchronized (changeLock) {
+            MenuDetails menuDetails = getMenuDetails(menuIdentifier);
+            if (menuDetails == null) {
+                menuDetails = new MenuDetails(menuIdentifier);
+                putMenuDetails(menuIdentifier, menuDetails);
+            }
+            menuDetails.setDeclared();
+        }
+    }
+
+    // the details of a declared MenuIdentifier whose JMenuItem is not yet stored
+    private MenuDetails getDeclaredMenuDetails(final MenuIdentifier menuIdentifier) {
+        final MenuDetails menuDetails = getMenuDetails(menuIdentifier);
+        if (menuDetails != null && menuDetails.isDeclared() && menuDetails.getMenuItem() == null) {
+            return menuDetails;
+        }
+        return null;
+    }
+
     /**
      * Store an indirect ActionListener for a MenuIdentifier. The JMenuItem would have
      * an initial direct ActionListener bound - see storeMenuItem. This sets the 
@@ -194,14 +341,17 @@ public final class MenuWiring {
      * @param actionListener the indirect ActionListener.
      */
     public void setActionListener(final MenuIdentifier menuIdentifier, final ActionListener actionListener) {
-        synchronized (menuDetailsMap) {
-            final MenuDetails menuDetails = menuDetailsMap.get(menuIdentifier);
+        synchronized (changeLock) {
+            final MenuDetails menuDetails = getMenuDetails(menuIdentifier);
             if (menuDetails == null) {
-                final MenuDetails newMenuDetails = new MenuDetails();
+                final MenuDetails newMenuDetails = new MenuDetails(menuIdentifier);
                 newMenuDetails.setActionListener(actionListener);
-                menuDetailsMap.put(menuIdentifier, newMenuDetails);
+                putMenuDetails(menuIdentifier, newMenuDetails);
                 LOGGER.warn("Setting ActionListener for menu identifier " + menuIdentifier + ": it currently has no associated menu item");
             } else {
+                if (menuDetails.getMenuItem() == null && !menuDetails.isDeclared()) {
+                    LOGGER.warn("Setting ActionListener for menu identifier " + menuIdentifier + ": it currently has no associated menu item");
+                }
                 LOGGER.debug("Storing indirect ActionListener " + actionListener + " for menu identifier " + menuIdentifier);
                 menuDetails.setActionListener(actionListener);
             }
@@ -225,25 +375,32 @@ public final class MenuWiring {
      * action listener is to be triggered.
      */
     public void triggerActionListener(final MenuIdentifier menuIdentifier) {
-        synchronized (menuDetailsMap) {
-            LOGGER.debug("Triggering action listener for " + menuIdentifier);
-            final MenuDetails menuDetails = menuDetailsMap.get(menuIdentifier);
-            if (menuDetails != null) {
-                final JMenuItem menuItem = menuDetails.getMenuItem();
-                if (menuItem == null) {
+        LOGGER.debug("Triggering action listener for " + menuIdentifier);
+        final MenuDetails menuDetails = getMenuDetails(menuIdentifier);
+        if (menuDetails != null) {
+            final JMenuItem menuItem = menuDetails.getMenuItem();
+            if (menuItem == null) {
+                if (menuDetails.isDeclared()) {
+                    LOGGER.debug("The menu item for menu identifier " + menuIdentifier + " has not been built yet: passing to indirect action listener");
+                } else {
                     LOGGER.warn("There is no menu item stored for menu identifier " + menuIdentifier + ": passing to indirect action listener");
-                    final ActionListener indirectActionListener = menuDetails.mActionListener;
-                    if (indirectActionListener != null) {
-                        indirectActionListener.actionPerformed(new ActionEvent(menuIdentifier, 0, ""));
-                    } else {
-                        LOGGER.warn("There is no indirect action listener for menu identifier " + menuIdentifier + ": cannot deliver event");
-                    }
+                }
+                final ActionListener indirectActionListener = menuDetails.getActionListener();
+                if (indirectActionListener != null) {
+                    dispatch(menuIdentifier, indirectActionListener, new ActionEvent(menuIdentifier, 0, ""));
                 } else {
-                    injectActionEvent(menuIdentifier, new ActionEvent(menuItem, 0, ""));
+                    LOGGER.warn("There is no indirect action listener for menu identifier " + menuIdentifier + ": cannot deliver event");
                 }
             } else {
-                LOGGER.warn("Not triggering action listener since there are no menu details stored for " + menuIdentifier);
+                final MenuActionEvent menuActionEvent = new MenuActionEvent(new ActionEvent(menuItem, 0, ""), menuIdentifier, actionMetrics);
+                try {
+                    injectActionEvent(menuIdentifier, menuActionEvent);
+                } finally {
+                    menuActionEvent.dispatched();
+                }
             }
+        } else {
+            LOGGER.warn("Not triggering action listener since there are no menu details stored for " + menuIdentifier);
         }
     }
 
@@ -255,12 +412,11 @@ public final class MenuWiring {
      * @param event the event to dispatch
      */
     void injectActionEvent(final MenuIdentifier menuIdentifier, final ActionEvent event) {
-        synchronized (menuDetailsMap) {
-            final MenuDetails menuDetails = menuDetailsMap.get(menuIdentifier);
-            if (menuDetails != null && menuDetails.getMenuItem() != null) {
-                for (final ActionListener actionListener : menuDetails.getMenuItem().getActionListeners()) {
-                    actionListener.actionPerformed(event);
-                }
+        final JMenuItem menuItem = getMenuItem(menuIdentifier);
+        if (menuItem != null) {
+            // getActionListeners returns a copy
+            for (final ActionListener actionListener : menuItem.getActionListeners()) {
+                actionListener.actionPerformed(event);
             }
         }
     }
@@ -268,13 +424,22 @@ public final class MenuWiring {
     /**
      * Is the menu item for this identifier enabled?
      * <p>
-     * If no menu item has been stored for this menu identifier, an 
+     * If no menu item has been stored or declared for this menu identifier, an
      * IllegalStateException will be thrown.
      * 
      * @param menuIdentifier the menu identifier to check for enabledness
      * @return true iff the menu item is enabled
      */
     public boolean isMenuItemEnabled(final MenuIdentifier menuIdentifier) {
+        final JMenuItem menuItem = getMenuItem(menuIdentifier);
+        if (menuItem == null) {
+            final MenuDetails declaredMenuDetails = getDeclaredMenuDetails(menuIdentifier);
+            if (declaredMenuDetails != null) {
+                final MenuItemState pendingState = declaredMenuDetails.getPendingState();
+                return pendingState == null || pendingState.getEnabled() == null
+                    || pendingState.getEnabled().booleanValue();
+            }
+        }
         return getMenuItemThrowingIfNull(menuIdentifier).isEnabled();
     }
 
@@ -289,7 +454,7 @@ public final class MenuWiring {
     /**
      * Disable a menu item identified by a menu identifier.
      * <p>
-     * If no menu item has been stored for this menu identifier, an 
+     * If no menu item has been stored or declared for this menu identifier, an
      * IllegalStateException will be thrown.
      * @param menuIdentifier the menu identifier to disable
      */
@@ -300,7 +465,7 @@ public final class MenuWiring {
     /**
      * Enable a menu item identified by a menu identifier.
      * <p>
-     * If no menu item has been stored for this menu identifier, an 
+     * If no menu item has been stored or declared for this menu identifier, an
      * IllegalStateException will be thrown.
      * @param menuIdentifier the menu identifier to enable
      */
@@ -311,16 +476,120 @@ public final class MenuWiring {
     /**
      * Enable or disable a menu item identified by a menu identifier.
      * <p>
-     * If no menu item has been stored for this menu identifier, an 
+     * If no menu item has been stored or declared for this menu identifier, an
      * IllegalStateException will be thrown.
      * @param menuIdentifier the menu identifier to enable
      * @param enable true to enable; false to disable
      */
     public void setMenuItemEnabled(final MenuIdentifier menuIdentifier, final boolean enable) {
         LOGGER.debug((enable ? "Enabling " : "Disabling ") + menuIdentifier);
+        if (getMenuItem(menuIdentifier) == null) {
+            synchronized (changeLock) {
+                final MenuDetails declaredMenuDetails = getDeclaredMenuDetails(menuIdentifier);
+                if (declaredMenuDetails != null) {
+                    declaredMenuDetails.applyPendingState(MenuItemState.enabled(enable));
+                    return;
+                }
+            }
+        }
         getMenuItemThrowingIfNull(menuIdentifier).setEnabled(enable);
     }
 
+    /**
+     * Update the state of several menu items at once, on the event thread,
+     * waiting for this to be done if called on another thread. Only the
+     * parts of each item's state that differ from those desired are
+     * changed, so items already in the desired state are not repainted.
+     * <p>
+     * The state of menu identifiers with no menu item stored, whether
+     * declared or not yet created, is kept until their menu item is stored.
+     * <p>
+     * The menu items are changed with no lock held, so their listeners may
+     * use the wiring. Any exception thrown while changing them, e.g. by a
+     * listener on one of them, is rethrown to the caller, whichever thread
+     * it called on; items before the failing one will have been changed,
+     * and the state of those with no menu item kept. If the
+     * calling thread is interrupted while waiting, an IllegalStateException
+     * is thrown, and the update may still happen later.
+     * 
+     * @param menuItemStates the desired state of each menu item
+     * @return the number of menu items that were changed
+     */
+    public int applyMenuItemStates(final Map<MenuIdentifier, MenuItemState> menuItemStates) {
+        final int[] changed = new int[] {0};
+        final Runnable apply = new Runnable() {
+            public void run() {
+                final List<JMenuItem> menuItems = new ArrayList<JMenuItem>();
+                final List<MenuItemState> states = new ArrayList<MenuItemState>();
+                synchronized (changeLock) {
+                    for (final Map.Entry<MenuIdentifier, MenuItemState> entry : menuItemStates.entrySet()) {
+                        MenuDetails menuDetails = getMenuDetails(entry.getKey());
+                        final JMenuItem menuItem = menuDetails == null ? null : menuDetails.getMenuItem();
+                        if (menuItem != null) {
+                            menuItems.add(menuItem);
+                            states.add(entry.getValue());
+                        } else {
+                            if (menuDetails == null) {
+                                menuDetails = new MenuDetails(entry.getKey());
+                                putMenuDetails(entry.getKey(), menuDetails);
+                            }
+                            if (menuDetails.applyPendingState(entry.getValue())) {
+                                changed[0]++;
+                            }
+                        }
+                    }
+                }
+                // the setters notify the menu items' listeners
+                for (int i = 0; i < menuItems.size(); i++) {
+                    if (applyMenuItemState(menuItems.get(i), states.get(i))) {
+                        changed[0]++;
+                    }
+                }
+            }
+        };
+        if (SwingUtilities.isEventDispatchThread()) {
+            apply.run();
+        } else {
+            try {
+                SwingUtilities.invokeAndWait(apply);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while applying menu item states", e);
+            } catch (final InvocationTargetException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException("Could not apply menu item states", cause);
+            }
+        }
+        LOGGER.debug("Changed " + changed[0] + " of " + menuItemStates.size() + " menu items");
+        return changed[0];
+    }
+
+    private static boolean applyMenuItemState(final JMenuItem menuItem, final MenuItemState state) {
+        boolean changed = false;
+        final Boolean enabled = state.getEnabled();
+        if (enabled != null && menuItem.isEnabled() != enabled.booleanValue()) {
+            menuItem.setEnabled(enabled.booleanValue());
+            changed = true;
+        }
+        final Boolean visible = state.getVisible();
+        if (visible != null && menuItem.isVisible() != visible.booleanValue()) {
+            menuItem.setVisible(visible.booleanValue());
+            changed = true;
+        }
+        final String text = state.getText();
+        if (text != null && !text.equals(menuItem.getText())) {
+            menuItem.setText(text);
+            changed = true;
+        }
+        return changed;
+    }
+
     /**
      * Create a JMenuItem for the given menu identifier, item text
      * and mnemonic and store it in the wiring map, or, if one
@@ -334,14 +603,35 @@ public final class MenuWiring {
      */
     public JMenuItem createMenuItem(final MenuIdentifier menuIdentifier,
            final String menuItemText, final char mnemonic) {
-        final JMenuItem existingMenuItem = getMenuItem(menuIdentifier);
-        if (existingMenuItem != null) {
-            return existingMenuItem;
-        } else {
-            final JMenuItem menuItem = new JMenuItem(menuItemText);
-            menuItem.setMnemonic(mnemonic);
-            storeMenuItem(menuIdentifier, menuItem);
-            return menuItem;
+        synchronized (changeLock) {
+            final JMenuItem existingMenuItem = getMenuItem(menuIdentifier);
+            if (existingMenuItem != null) {
+                return existingMenuItem;
+            } else {
+                final JMenuItem menuItem = new JMenuItem(menuItemText);
+                menuItem.setMnemonic(mnemonic);
+                storeMenuItem(menuIdentifier, menuItem);
+                return menuItem;
+            }
+        }
+    }
+
+    /**
+     * Remove the JMenuItem stored for a menu identifier, along with any
+     * ActionListener set for it, e.g. when the item is removed from its menu.
+     * 
+     * @param menuIdentifier the MenuIdentifier
+     * @return the JMenuItem that was stored for this identifier, or null if
+     * there was none
+     */
+    public JMenuItem removeMenuItem(final MenuIdentifier menuIdentifier) {
+        synchronized (changeLock) {
+            final MenuDetails menuDetails = getMenuDetails(menuIdentifier);
+            if (menuDetails == null) {
+                return null;
+            }
+            putMenuDetails(menuIdentifier, null);
+            return menuDetails.getMenuItem();
         }
     }
 
@@ -358,8 +648,8 @@ public final class MenuWiring {
      */
     public JMenuItem replaceMenuItem(final MenuIdentifier menuIdentifier,
             final String menuItemText, final char mnemonic) {
-        synchronized (menuDetailsMap) {
-            menuDetailsMap.remove(menuIdentifier);
+        synchronized (changeLock) {
+            putMenuDetails(menuIdentifier, null);
             final JMenuItem menuItem = new JMenuItem(menuItemText);
             menuItem.setMnemonic(mnemonic);
             storeMenuItem(menuIdentifier, menuItem);
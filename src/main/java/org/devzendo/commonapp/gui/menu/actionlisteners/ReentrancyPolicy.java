@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui.menu.actionlisteners;
+
+/**
+ * What a SnailActionListener does when it is invoked while its action is
+ * still being performed.
+ *
+ * @author matt
+ *
+ */
+public enum ReentrancyPolicy {
+    /**
+     * Ignore the invocation.
+     */
+    DROP,
+
+    /**
+     * Perform the action once more when it has finished, however many
+     * times it was invoked meanwhile; the latest event is used.
+     */
+    COALESCE,
+
+    /**
+     * Perform the action again for each invocation, in turn. This is the
+     * default.
+     */
+    QUEUE
+}
@@ -18,9 +18,14 @@ package org.devzendo.commonapp.gui.menu.actionlisteners;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
 
+import javax.swing.SwingUtilities;
+
+import org.apache.log4j.Logger;
 import org.devzendo.commonapp.gui.CursorManager;
-import org.devzendo.commonapp.gui.GUIUtils;
+import org.devzendo.commonapp.gui.menu.MenuActionEvent;
 
 
 /**
@@ -28,49 +33,209 @@ import org.devzendo.commonapp.gui.GUIUtils;
  * that when the user selects the menu item, the event thread isn't so tied up
  * with doing the menu item's code so that it can't redraw. The effect is that
  * the menu gets "stuck" on screen for a short while.
- * So, start an hourglass, and spawn a separate thread to let the EDT catch up.
+ * So, start an hourglass, and perform the action later on the event thread,
+ * once the events already queued (such as the repaint of the area under the
+ * menu) have been processed. No threads are used. Invocations made off the
+ * event thread are passed to it first.
+ * <p>
+ * By default, every invocation is performed, in turn. Listeners may instead
+ * be created with a debounce interval, within which invocations that follow
+ * the last accepted one (e.g. a double- or triple-click) are ignored, and a
+ * ReentrancyPolicy deciding whether an invocation made while the action is
+ * still being performed is dropped, coalesced into one further
+ * performance, or queued.
+ * <p>
+ * When invoked with a MenuActionEvent, its action is reported finished once
+ * it has been performed, including any wait for the event thread or for
+ * earlier performances, so that MenuWiring's metrics measure the delay the
+ * user sees.
  * 
  * @author matt
  *
  */
 public abstract class SnailActionListener implements ActionListener {
+    private static final Logger LOGGER = Logger
+            .getLogger(SnailActionListener.class);
+
+    /**
+     * A suitable debounce interval, ignoring double- and triple-clicks.
+     */
+    public static final long DEFAULT_DEBOUNCE_MILLISECONDS = 300;
+
     private final CursorManager cursorManager;
+    private final ReentrancyPolicy reentrancyPolicy;
+    private final long debounceNanos;
+    // all accessed on the event thread
+    private final ArrayDeque<ActionEvent> pendingEvents;
+    private boolean performing;
+    private ActionEvent performingEvent;
+    private boolean completionDeferred;
+    private boolean acceptedBefore;
+    private long lastAcceptedAt;
 
     /**
-     * Create a SnailActionListener
+     * Create a SnailActionListener that performs every invocation, in
+     * turn.
      * @param cursor the cursor manager
      */
     public SnailActionListener(final CursorManager cursor) {
+        this(cursor, ReentrancyPolicy.QUEUE, 0);
+    }
+
+    /**
+     * Create a SnailActionListener
+     * @param cursor the cursor manager
+     * @param policy what to do with invocations made while the action is
+     * being performed
+     * @param debounceMilliseconds invocations within this time of the
+     * last accepted one are ignored; zero to accept all of them
+     */
+    public SnailActionListener(final CursorManager cursor, final ReentrancyPolicy policy, final long debounceMilliseconds) {
         this.cursorManager = cursor;
+        this.reentrancyPolicy = policy;
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMilliseconds);
+        this.pendingEvents = new ArrayDeque<ActionEvent>();
     }
     
     /**
      * {@inheritDoc}
      */
     public final void actionPerformed(final ActionEvent e) {
+        if (!SwingUtilities.isEventDispatchThread()) {
+            // e.g. MenuWiring.triggerActionListener; the action is not
+            // finished until it has been handled there
+            deferMenuAction(e);
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run() {
+                    try {
+                        actionPerformed(e);
+                    } finally {
+                        finishedMenuAction(e);
+                    }
+                }
+            });
+            return;
+        }
+        final long now = System.nanoTime();
+        if (acceptedBefore && now - lastAcceptedAt < debounceNanos) {
+            // the interval runs from the last accepted invocation, so
+            // steady clicking is not ignored indefinitely
+            LOGGER.debug("Ignoring repeated invocation of " + this.getClass().getSimpleName());
+            droppedMenuAction(e);
+            return;
+        }
+        acceptedBefore = true;
+        lastAcceptedAt = now;
+        if (!performing) {
+            perform(e);
+            return;
+        }
+        switch (reentrancyPolicy) {
+            case DROP:
+                LOGGER.debug("Dropping invocation of " + this.getClass().getSimpleName() + " while it is being performed");
+                droppedMenuAction(e);
+                break;
+            case COALESCE:
+                for (final ActionEvent coalesced : pendingEvents) {
+                    droppedMenuAction(coalesced);
+                    finishedMenuAction(coalesced);
+                }
+                pendingEvents.clear();
+                deferMenuAction(e);
+                pendingEvents.add(e);
+                break;
+            default:
+                deferMenuAction(e);
+                pendingEvents.add(e);
+                break;
+        }
+    }
+
+    private void perform(final ActionEvent e) {
+        if (!performing) {
+            deferMenuAction(e); // pending events were deferred when queued
+        }
+        performing = true;
+        performingEvent = e;
         cursorManager.hourglass(this.getClass().getSimpleName());
-        new Thread(new Runnable() {
+        // not GUIUtils.invokeLaterOnEventThread, which would run it now
+        SwingUtilities.invokeLater(new Runnable() {
             public void run() {
-                GUIUtils.invokeLaterOnEventThread(new Runnable() {
-                    public void run() {
-                        actionPerformedSlowly(e);
+                completionDeferred = false;
+                boolean performed = false;
+                try {
+                    actionPerformedSlowly(e);
+                    performed = true;
+                } finally {
+                    if (!performed || !completionDeferred) {
+                        completionDeferred = false;
                         actionFinished();
                     }
-                });
+                }
             }
-        }).start();
+        });
     }
     
     /**
-     * Perform the action.
+     * Perform the action, on the event thread.
      * @param e the ActionEvent to process.
      */
     public abstract void actionPerformedSlowly(final ActionEvent e);
 
-    private void actionFinished() {
+    /**
+     * Called from actionPerformedSlowly, indicate that the action continues
+     * after it returns, e.g. in a SwingWorker; the action is not finished,
+     * and the hourglass remains, until actionFinished() is called.
+     * <p>
+     * If actionPerformedSlowly throws after calling this, the action is
+     * finished at once, and undoing what it started is the caller's job:
+     * whatever was to call actionFinished() must not do so, or it would
+     * finish the next action instead. Calling this only once the work that
+     * continues has been started avoids this.
+     */
+    protected final void deferCompletion() {
+        completionDeferred = true;
+    }
+
+    /**
+     * Indicate that an action whose completion was deferred has finished.
+     * Called on the event thread, once per action; calls made while no
+     * action is being performed are ignored.
+     */
+    protected final void actionFinished() {
+        if (!performing) {
+            LOGGER.warn("Ignoring the finish of " + this.getClass().getSimpleName() + ", which is not being performed");
+            return;
+        }
         cursorManager.normal(this.getClass().getSimpleName());
+        finishedMenuAction(performingEvent);
+        performingEvent = null;
+        final ActionEvent next = pendingEvents.poll();
+        if (next != null) {
+            perform(next);
+        } else {
+            performing = false;
+        }
     }
     
+    private static void deferMenuAction(final ActionEvent e) {
+        if (e instanceof MenuActionEvent) {
+            ((MenuActionEvent) e).deferCompletion();
+        }
+    }
+
+    private static void droppedMenuAction(final ActionEvent e) {
+        if (e instanceof MenuActionEvent) {
+            ((MenuActionEvent) e).dropped();
+        }
+    }
+
+    private static void finishedMenuAction(final ActionEvent e) {
+        if (e instanceof MenuActionEvent) {
+            ((MenuActionEvent) e).actionFinished();
+        }
+    }
+
     /**
      * @return the cursor manager
      */
@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui.menu.actionlisteners;
+
+import java.awt.event.ActionEvent;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+
+import javax.swing.SwingUtilities;
+
+import org.apache.log4j.Logger;
+import org.devzendo.commonapp.gui.CursorManager;
+import org.devzendo.commonapp.gui.SwingWorker;
+import org.devzendo.commonapp.gui.WorkerPriority;
+
+
+/**
+ * A SnailActionListener whose action is performed in two phases: the
+ * work, such as reading from disk or the database, is computed in the
+ * background, and its result then applied to the user interface on the
+ * event thread. The event thread is free to repaint meanwhile.
+ * <p>
+ * The hourglass is shown until the result has been applied. As with
+ * actionPerformedSlowly, an exception thrown by either phase is rethrown on
+ * the event thread.
+ *
+ * @author matt
+ *
+ * @param <R> the type of the computed result
+ */
+public abstract class TwoPhaseSnailActionListener<R> extends SnailActionListener {
+    private static final Logger LOGGER = Logger
+            .getLogger(TwoPhaseSnailActionListener.class);
+
+    /**
+     * Create a TwoPhaseSnailActionListener that performs every invocation,
+     * in turn.
+     * @param cursor the cursor manager
+     */
+    public TwoPhaseSnailActionListener(final CursorManager cursor) {
+        super(cursor);
+    }
+
+    /**
+     * Create a TwoPhaseSnailActionListener
+     * @param cursor the cursor manager
+     * @param policy what to do with invocations made while the action is
+     * being performed
+     * @param debounceMilliseconds invocations within this time of the
+     * last accepted one are ignored; zero to accept all of them
+     */
+    public TwoPhaseSnailActionListener(final CursorManager cursor, final ReentrancyPolicy policy, final long debounceMilliseconds) {
+        super(cursor, policy, debounceMilliseconds);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final void actionPerformedSlowly(final ActionEvent e) {
+        deferCompletion();
+        final SwingWorker<R, Void> worker = new SwingWorker<R, Void>() {
+            @Override
+            public R construct() {
+                return compute(e);
+            }
+
+            @Override
+            public void finished() {
+                try {
+                    apply(get());
+                } finally {
+                    actionFinished();
+                }
+            }
+        };
+        worker.setPriority(WorkerPriority.INTERACTIVE);
+        worker.toCompletionStage().whenComplete(new BiConsumer<R, Throwable>() {
+            public void accept(final R value, final Throwable throwable) {
+                if (throwable != null) {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            failed(unwrap(throwable));
+                        }
+                    });
+                }
+            }
+        });
+        try {
+            worker.start();
+        } catch (final RejectedExecutionException ree) {
+            // the worker has failed, and its completion finishes the
+            // action and rethrows this; finishing it here too would
+            // finish the next one
+            LOGGER.warn(this.getClass().getSimpleName() + "'s worker was rejected: " + ree.getMessage());
+        }
+    }
+
+    private void failed(final Throwable throwable) {
+        actionFinished();
+        if (throwable instanceof CancellationException) {
+            LOGGER.debug(this.getClass().getSimpleName() + " was cancelled");
+        } else if (throwable instanceof RuntimeException) {
+            throw (RuntimeException) throwable;
+        } else if (throwable instanceof Error) {
+            throw (Error) throwable;
+        } else {
+            throw new IllegalStateException(throwable);
+        }
+    }
+
+    private static Throwable unwrap(final Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            return throwable.getCause();
+        }
+        return throwable;
+    }
+
+    /**
+     * Compute the action's result, in the background.
+     * @param e the ActionEvent to process.
+     * @return the result, to be applied
+     */
+    protected abstract R compute(final ActionEvent e);
+
+    /**
+     * Apply the computed result, on the event thread.
+     * @param result the result of compute
+     */
+    protected abstract void apply(final R result);
+}
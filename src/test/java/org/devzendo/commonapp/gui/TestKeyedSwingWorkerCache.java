@@ -0,0 +1,302 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.devzendo.commoncode.logging.LoggingUnittestHelper;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the KeyedSwingWorkerCache and KeyedSwingWorker.
+ *
+ * @author matt
+ *
+ */
+public final class TestKeyedSwingWorkerCache {
+    private static final long LATCH_TIMEOUT_SECONDS = 5L;
+    private final AtomicInteger loads = new AtomicInteger(0);
+    private final CountDownLatch releaseLoads = new CountDownLatch(1);
+    private final KeyedSwingWorkerCache.Loader<String, String> loader = new KeyedSwingWorkerCache.Loader<String, String>() {
+        public String load(final String key) {
+            loads.incrementAndGet();
+            try {
+                releaseLoads.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "value of " + key;
+        }
+    };
+
+    /**
+     * 
+     */
+    @BeforeClass
+    public static void setupLogging() {
+        LoggingUnittestHelper.setupLogging();
+    }
+
+    private KeyedSwingWorker<String, String> worker(final KeyedSwingWorkerCache<String, String> cache,
+            final String key, final CountDownLatch finishedLatch) {
+        return new KeyedSwingWorker<String, String>(cache, key) {
+            @Override
+            public void finished() {
+                if (("value of " + key).equals(get())) {
+                    finishedLatch.countDown();
+                }
+            }
+        };
+    }
+
+    private void awaitLoads(final int expectedLoads) throws InterruptedException {
+        while (loads.get() < expectedLoads) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * @throws InterruptedException on latch failure
+     */
+    @Test(timeout = 8000)
+    public void testConcurrentRequestsShareOneLoadAndEachFinish() throws InterruptedException {
+        final KeyedSwingWorkerCache<String, String> cache =
+            new KeyedSwingWorkerCache<String, String>(loader, 10, 1, TimeUnit.MINUTES);
+        final CountDownLatch finishedLatch = new CountDownLatch(3);
+        worker(cache, "record", finishedLatch).start();
+        worker(cache, "record", finishedLatch).start();
+        worker(cache, "record", finishedLatch).start();
+        releaseLoads.countDown();
+        Assert.assertTrue(finishedLatch.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertEquals(1, loads.get());
+
+        final CountDownLatch cachedLatch = new CountDownLatch(1);
+        worker(cache, "record", cachedLatch).start();
+        Assert.assertTrue(cachedLatch.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertEquals(1, loads.get());
+    }
+
+    /**
+     * @throws InterruptedException on latch failure
+     */
+    @Test(timeout = 8000)
+    public void testExpiredValuesAreReloaded() throws InterruptedException {
+        releaseLoads.countDown();
+        final KeyedSwingWorkerCache<String, String> cache =
+            new KeyedSwingWorkerCache<String, String>(loader, 10, 0, TimeUnit.MILLISECONDS);
+        final CountDownLatch firstLatch = new CountDownLatch(1);
+        worker(cache, "record", firstLatch).start();
+        Assert.assertTrue(firstLatch.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Thread.sleep(5);
+        final CountDownLatch secondLatch = new CountDownLatch(1);
+        worker(cache, "record", secondLatch).start();
+        Assert.assertTrue(secondLatch.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertEquals(2, loads.get());
+    }
+
+    /**
+     * @throws InterruptedException on latch failure
+     */
+    @Test(timeout = 8000)
+    public void testLeastRecentlyUsedValuesAreEvicted() throws InterruptedException {
+        releaseLoads.countDown();
+        final KeyedSwingWorkerCache<String, String> cache =
+            new KeyedSwingWorkerCache<String, String>(loader, 1, 1, TimeUnit.MINUTES);
+        final CountDownLatch finishedLatch = new CountDownLatch(2);
+        final KeyedSwingWorker<String, String> first = worker(cache, "first", finishedLatch);
+        first.start();
+        first.get();
+        worker(cache, "second", finishedLatch).start();
+        Assert.assertTrue(finishedLatch.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertEquals(1, cache.size());
+    }
+
+    /**
+     * @throws InterruptedException on latch failure
+     */
+    @Test(timeout = 8000)
+    public void testLoadsInProgressWhenInvalidatedAreNotCached() throws InterruptedException {
+        final KeyedSwingWorkerCache<String, String> cache =
+            new KeyedSwingWorkerCache<String, String>(loader, 10, 1, TimeUnit.MINUTES);
+        final CountDownLatch staleLatch = new CountDownLatch(1);
+        worker(cache, "record", staleLatch).start();
+        awaitLoads(1);
+        cache.invalidate("record");
+        releaseLoads.countDown();
+        Assert.assertTrue(staleLatch.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertEquals(0, cache.size());
+
+        final CountDownLatch freshLatch = new CountDownLatch(1);
+        worker(cache, "record", freshLatch).start();
+        Assert.assertTrue(freshLatch.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertEquals(2, loads.get());
+        Assert.assertEquals(1, cache.size());
+    }
+
+    /**
+     * @throws InterruptedException on latch failure
+     */
+    @Test(timeout = 8000)
+    public void testCachedValuesAreDeliveredWithoutHoldingTheCacheLock() throws InterruptedException {
+        releaseLoads.countDown();
+        final KeyedSwingWorkerCache<String, String> cache =
+            new KeyedSwingWorkerCache<String, String>(loader, 10, 1, TimeUnit.MINUTES);
+        final CountDownLatch firstLatch = new CountDownLatch(1);
+        worker(cache, "record", firstLatch).start();
+        Assert.assertTrue(firstLatch.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        // a dependent stage of a worker served from the cache uses the
+        // cache from another thread, and waits for it
+        final AtomicBoolean otherThreadGotIn = new AtomicBoolean(false);
+        final CountDownLatch dependentLatch = new CountDownLatch(1);
+        final KeyedSwingWorker<String, String> cached = worker(cache, "record", new CountDownLatch(1));
+        cached.toCompletionStage().whenComplete(new BiConsumer<String, Throwable>() {
+            public void accept(final String value, final Throwable throwable) {
+                final Thread other = new Thread(new Runnable() {
+                    public void run() {
+                        cache.size();
+                        otherThreadGotIn.set(true);
+                    }
+                });
+                other.start();
+                try {
+                    other.join(1000);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                dependentLatch.countDown();
+            }
+        });
+        cached.start();
+        Assert.assertTrue(dependentLatch.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertTrue(otherThreadGotIn.get());
+    }
+
+    /**
+     * @throws Exception on failure
+     */
+    @Test(timeout = 8000)
+    public void testKeyedWorkersAreTimedOutAndMeasured() throws Exception {
+        final SwingWorkerMetrics metrics = new SwingWorkerMetrics();
+        SwingWorker.setMetricsListener(metrics);
+        try {
+            final KeyedSwingWorkerCache<String, String> cache =
+                new KeyedSwingWorkerCache<String, String>(loader, 10, 1, TimeUnit.MINUTES);
+            final CountDownLatch finishedLatch = new CountDownLatch(1);
+            final String[] finishedValue = new String[] {null};
+            final KeyedSwingWorker<String, String> slow = new KeyedSwingWorker<String, String>(cache, "record") {
+                @Override
+                public void finished() {
+                    finishedValue[0] = get();
+                    finishedLatch.countDown();
+                }
+            };
+            slow.setTimeout(50, TimeUnit.MILLISECONDS, "fallback");
+            slow.start();
+            Assert.assertTrue(finishedLatch.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            Assert.assertTrue(slow.isTimedOut());
+            Assert.assertEquals("fallback", finishedValue[0]);
+
+            final SwingWorkerMetrics.WorkerClassMetrics classMetrics = metrics.getMetrics(slow.getClass());
+            Assert.assertEquals(1, classMetrics.getQueueLatency().getCount());
+            // the load is interrupted, so construct() then returns
+            while (classMetrics.getConstructLatency().getCount() == 0) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(0, metrics.getInFlightCount());
+        } finally {
+            SwingWorker.setMetricsListener(null);
+        }
+    }
+
+    /**
+     * @throws Exception on failure
+     */
+    @Test(timeout = 8000)
+    public void testKeyedWorkersRejectedByTheirExecutorFail() throws Exception {
+        releaseLoads.countDown();
+        final KeyedSwingWorkerCache<String, String> cache =
+            new KeyedSwingWorkerCache<String, String>(loader, 10, 1, TimeUnit.MINUTES);
+        final Executor rejecting = new Executor() {
+            public void execute(final Runnable command) {
+                throw new RejectedExecutionException("full");
+            }
+        };
+        final KeyedSwingWorker<String, String> rejected = new KeyedSwingWorker<String, String>(cache, "record", rejecting) {
+        };
+        try {
+            rejected.start();
+            Assert.fail("The rejection was not rethrown");
+        } catch (final RejectedExecutionException ree) {
+            Assert.assertEquals("full", ree.getMessage());
+        }
+        try {
+            rejected.get(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            Assert.fail("The rejected worker did not fail");
+        } catch (final ExecutionException ee) {
+            Assert.assertTrue(ee.getCause() instanceof RejectedExecutionException);
+        }
+
+        // nothing was left waiting for the rejected worker's load
+        final CountDownLatch finishedLatch = new CountDownLatch(1);
+        worker(cache, "record", finishedLatch).start();
+        Assert.assertTrue(finishedLatch.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertEquals(1, loads.get());
+    }
+
+    /**
+     * @throws InterruptedException on latch failure
+     */
+    @Test(timeout = 8000)
+    public void testWaitingWorkersLoadWhenTheLoadingWorkerIsCancelled() throws InterruptedException {
+        final KeyedSwingWorkerCache.Loader<String, String> interruptibleLoader = new KeyedSwingWorkerCache.Loader<String, String>() {
+            public String load(final String key) {
+                loads.incrementAndGet();
+                try {
+                    releaseLoads.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted");
+                }
+                return "value of " + key;
+            }
+        };
+        final KeyedSwingWorkerCache<String, String> cache =
+            new KeyedSwingWorkerCache<String, String>(interruptibleLoader, 10, 1, TimeUnit.MINUTES);
+        final KeyedSwingWorker<String, String> cancelled = worker(cache, "record", new CountDownLatch(1));
+        cancelled.start();
+        awaitLoads(1);
+        final CountDownLatch waitingLatch = new CountDownLatch(1);
+        worker(cache, "record", waitingLatch).start();
+        Thread.sleep(50);
+        Assert.assertTrue(cancelled.cancel(true));
+        awaitLoads(2);
+        releaseLoads.countDown();
+        Assert.assertTrue(waitingLatch.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertEquals(1, cache.size());
+    }
+}
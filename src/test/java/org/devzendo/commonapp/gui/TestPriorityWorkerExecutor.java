@@ -0,0 +1,243 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.devzendo.commoncode.logging.LoggingUnittestHelper;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the PriorityWorkerExecutor.
+ *
+ * @author matt
+ *
+ */
+public final class TestPriorityWorkerExecutor {
+    private static final long LATCH_TIMEOUT_SECONDS = 5L;
+    private final ExecutorService pool = SwingWorkerExecutors.createBoundedExecutor("TestPool", 4);
+    private final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> rejected = Collections.synchronizedList(new ArrayList<String>());
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    /**
+     * 
+     */
+    @BeforeClass
+    public static void setupLogging() {
+        LoggingUnittestHelper.setupLogging();
+    }
+
+    /**
+     * 
+     */
+    @After
+    public void shutdownPool() {
+        release.countDown();
+        pool.shutdownNow();
+    }
+
+    private PrioritisedRunnable task(final String name, final WorkerPriority priority, final CountDownLatch done) {
+        return new PrioritisedRunnable() {
+            public WorkerPriority getPriority() {
+                return priority;
+            }
+
+            public void run() {
+                order.add(name);
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }
+
+            public void rejected(final RejectedExecutionException rejection) {
+                rejected.add(name);
+            }
+        };
+    }
+
+    /**
+     * @throws InterruptedException on latch failure
+     */
+    @Test(timeout = 8000)
+    public void testQueuedWorkRunsInPriorityOrder() throws InterruptedException {
+        final PriorityWorkerExecutor executor = new PriorityWorkerExecutor(pool, 1, 1, 10);
+        final CountDownLatch done = new CountDownLatch(4);
+        executor.execute(task("first", WorkerPriority.BACKGROUND, done));
+        executor.execute(task("background", WorkerPriority.BACKGROUND, done));
+        executor.execute(task("visible", WorkerPriority.VISIBLE_CONTENT, done));
+        executor.execute(task("interactive", WorkerPriority.INTERACTIVE, done));
+        Assert.assertEquals(1, executor.getQueuedTaskCount(WorkerPriority.BACKGROUND));
+        release.countDown();
+        Assert.assertTrue(done.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertArrayEquals(new Object[] {"first", "interactive", "visible", "background"}, order.toArray());
+    }
+
+    /**
+     * @throws InterruptedException on latch failure
+     */
+    @Test(timeout = 8000)
+    public void testBackgroundWorkIsLimitedButLeavesRoomForInteractiveWork() throws InterruptedException {
+        final PriorityWorkerExecutor executor = new PriorityWorkerExecutor(pool, 3, 1, 10);
+        final CountDownLatch done = new CountDownLatch(4);
+        executor.execute(task("background1", WorkerPriority.BACKGROUND, done));
+        executor.execute(task("background2", WorkerPriority.BACKGROUND, done));
+        executor.execute(task("background3", WorkerPriority.BACKGROUND, done));
+        executor.execute(task("interactive", WorkerPriority.INTERACTIVE, done));
+        Assert.assertEquals(2, executor.getRunningTaskCount());
+        Assert.assertEquals(2, executor.getQueuedTaskCount(WorkerPriority.BACKGROUND));
+        release.countDown();
+        Assert.assertTrue(done.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    /**
+     * 
+     */
+    @Test(timeout = 8000)
+    public void testQueuedWorkWhosePriorityIsRaisedIsAdmitted() {
+        final PriorityWorkerExecutor executor = new PriorityWorkerExecutor(pool, 3, 1, 10);
+        final CountDownLatch done = new CountDownLatch(2);
+        final WorkerPriority[] priority = new WorkerPriority[] {WorkerPriority.BACKGROUND};
+        final PrioritisedRunnable raised = new PrioritisedRunnable() {
+            public WorkerPriority getPriority() {
+                return priority[0];
+            }
+
+            public void run() {
+                order.add("raised");
+                done.countDown();
+            }
+
+            public void rejected(final RejectedExecutionException rejection) {
+                rejected.add("raised");
+            }
+        };
+        executor.execute(task("background", WorkerPriority.BACKGROUND, done));
+        executor.execute(raised);
+        Assert.assertEquals(1, executor.getQueuedTaskCount(WorkerPriority.BACKGROUND));
+
+        priority[0] = WorkerPriority.VISIBLE_CONTENT;
+        executor.reprioritise(raised);
+        while (!order.contains("raised")) {
+            Thread.yield();
+        }
+        Assert.assertEquals(0, executor.getQueuedTaskCount(WorkerPriority.BACKGROUND));
+    }
+
+    /**
+     * 
+     */
+    @Test(expected = RejectedExecutionException.class)
+    public void testFullQueuesRejectWork() {
+        final PriorityWorkerExecutor executor = new PriorityWorkerExecutor(pool, 1, 1, 1);
+        final CountDownLatch done = new CountDownLatch(3);
+        executor.execute(task("running", WorkerPriority.BACKGROUND, done));
+        executor.execute(task("queued", WorkerPriority.BACKGROUND, done));
+        executor.execute(task("rejected", WorkerPriority.BACKGROUND, done));
+    }
+
+    private Executor rejectingWhile(final boolean[] rejecting) {
+        return new Executor() {
+            public void execute(final Runnable command) {
+                synchronized (rejecting) {
+                    if (rejecting[0]) {
+                        throw new RejectedExecutionException("saturated");
+                    }
+                }
+                pool.execute(command);
+            }
+        };
+    }
+
+    private static void setRejecting(final boolean[] rejecting, final boolean reject) {
+        synchronized (rejecting) {
+            rejecting[0] = reject;
+        }
+    }
+
+    /**
+     * @throws InterruptedException on latch failure
+     */
+    @Test(timeout = 8000)
+    public void testTasksRejectedWhileOthersRunAreRetriedWhenTheyFinish() throws InterruptedException {
+        final boolean[] rejecting = new boolean[] {false};
+        final PriorityWorkerExecutor executor = new PriorityWorkerExecutor(rejectingWhile(rejecting), 2, 1, 10);
+        final CountDownLatch done = new CountDownLatch(2);
+        executor.execute(task("running", WorkerPriority.VISIBLE_CONTENT, done));
+        setRejecting(rejecting, true);
+        // "running" can retry it, so the submitter is not told
+        executor.execute(task("submitted", WorkerPriority.INTERACTIVE, done));
+        Assert.assertEquals(1, executor.getQueuedTaskCount(WorkerPriority.INTERACTIVE));
+        Assert.assertEquals(1, executor.getRunningTaskCount());
+
+        setRejecting(rejecting, false);
+        release.countDown();
+        Assert.assertTrue(done.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertArrayEquals(new Object[] {"running", "submitted"}, order.toArray());
+        Assert.assertTrue(rejected.isEmpty());
+    }
+
+    /**
+     * @throws InterruptedException on latch failure
+     */
+    @Test(timeout = 8000)
+    public void testTasksRejectedWhenNothingIsRunningAreFailed() throws InterruptedException {
+        final boolean[] rejecting = new boolean[] {false};
+        final PriorityWorkerExecutor executor = new PriorityWorkerExecutor(rejectingWhile(rejecting), 1, 1, 10);
+        final CountDownLatch done = new CountDownLatch(2);
+        executor.execute(task("running", WorkerPriority.VISIBLE_CONTENT, done));
+        executor.execute(task("queued", WorkerPriority.VISIBLE_CONTENT, done));
+        setRejecting(rejecting, true);
+        // when "running" finishes, "queued" is rejected by the underlying
+        // executor, and nothing is left running to retry it
+        release.countDown();
+        while (executor.getRunningTaskCount() > 0 || rejected.isEmpty()) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(Collections.singletonList("queued"), rejected);
+        Assert.assertEquals(0, executor.getQueuedTaskCount(WorkerPriority.VISIBLE_CONTENT));
+
+        // the submitter of a task that cannot be retried is told
+        try {
+            executor.execute(task("submitted", WorkerPriority.INTERACTIVE, done));
+            Assert.fail("The rejection of the submitted task was not thrown");
+        } catch (final RejectedExecutionException ree) {
+            Assert.assertEquals("saturated", ree.getMessage());
+        }
+        Assert.assertEquals(0, executor.getQueuedTaskCount(WorkerPriority.INTERACTIVE));
+        Assert.assertEquals(Collections.singletonList("queued"), rejected);
+
+        setRejecting(rejecting, false);
+        executor.execute(task("later", WorkerPriority.VISIBLE_CONTENT, done));
+        Assert.assertTrue(done.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertArrayEquals(new Object[] {"running", "later"}, order.toArray());
+    }
+}
@@ -0,0 +1,450 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui;
+
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.devzendo.commoncode.logging.LoggingUnittestHelper;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the SwingWorker.
+ *
+ * @author matt
+ *
+ */
+public final class TestSwingWorker {
+    private static final long LATCH_TIMEOUT_SECONDS = 5L;
+
+    /**
+     * 
+     */
+    @BeforeClass
+    public static void setupLogging() {
+        LoggingUnittestHelper.setupLogging();
+    }
+
+    /**
+     * @throws InterruptedException on latch failure
+     */
+    @Test(timeout = 8000)
+    public void testConstructRunsOnPooledThreadAndFinishedOnEventThread() throws InterruptedException {
+        final CountDownLatch finishedLatch = new CountDownLatch(1);
+        final String[] constructThreadName = new String[] {null};
+        final AtomicBoolean finishedOnEventThread = new AtomicBoolean(false);
+        final SwingWorker worker = new SwingWorker() {
+            @Override
+            public Object construct() {
+                constructThreadName[0] = Thread.currentThread().getName();
+                return "value";
+            }
+
+            @Override
+            public void finished() {
+                finishedOnEventThread.set(EventQueue.isDispatchThread());
+                finishedLatch.countDown();
+            }
+        };
+        worker.start();
+        Assert.assertTrue(finishedLatch.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertTrue(constructThreadName[0].startsWith("SwingWorker-"));
+        Assert.assertTrue(finishedOnEventThread.get());
+        Assert.assertEquals("value", worker.get());
+    }
+
+    /**
+     * 
+     */
+    @Test(timeout = 8000)
+    public void testConstructRunsOnSuppliedExecutor() {
+        final AtomicInteger executions = new AtomicInteger(0);
+        final Executor callerRuns = new Executor() {
+            public void execute(final Runnable command) {
+                executions.incrementAndGet();
+                command.run();
+            }
+        };
+        final SwingWorker worker = new SwingWorker(callerRuns) {
+            @Override
+            public Object construct() {
+                return Thread.currentThread();
+            }
+        };
+        worker.start();
+        worker.start();
+        Assert.assertEquals(1, executions.get());
+        Assert.assertSame(Thread.currentThread(), worker.get());
+    }
+
+    /**
+     * 
+     */
+    @Test(timeout = 8000)
+    public void testInterruptedBeforeStartDoesNotConstruct() {
+        final AtomicBoolean constructed = new AtomicBoolean(false);
+        final SwingWorker worker = new SwingWorker() {
+            @Override
+            public Object construct() {
+                constructed.set(true);
+                return "value";
+            }
+        };
+        worker.interrupt();
+        worker.start();
+        Assert.assertNull(worker.get());
+        Assert.assertFalse(constructed.get());
+    }
+
+    private static boolean isVirtual(final Thread thread) {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (final NoSuchMethodException e) {
+            return false; // JVMs without virtual threads
+        } catch (final Exception e) {
+            throw new IllegalStateException("Could not call Thread.isVirtual: " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean virtualThreadsSupported() {
+        final ExecutorService executor = SwingWorkerExecutors.createVirtualThreadExecutor("Probe");
+        if (executor == null) {
+            return false;
+        }
+        executor.shutdown();
+        return true;
+    }
+
+    private static Thread constructingThread() {
+        final SwingWorker<Thread, Void> worker = new SwingWorker<Thread, Void>() {
+            @Override
+            public Thread construct() {
+                return Thread.currentThread();
+            }
+        };
+        worker.start();
+        return worker.get();
+    }
+
+    /**
+     * Where the JVM running the tests supports virtual threads, workers run
+     * on them when enabled; otherwise they fall back to the pool.
+     */
+    @Test(timeout = 8000)
+    public void testWorkersRunOnVirtualThreadsWhenEnabledAndSupported() {
+        SwingWorkerExecutors.setVirtualThreadsEnabled(true);
+        try {
+            final Thread thread = constructingThread();
+            Assert.assertTrue(thread.getName().startsWith("SwingWorker-"));
+            Assert.assertEquals(virtualThreadsSupported(), isVirtual(thread));
+        } finally {
+            SwingWorkerExecutors.setVirtualThreadsEnabled(false);
+        }
+    }
+
+    /**
+     * 
+     */
+    @Test(timeout = 8000)
+    public void testWorkersRunOnPooledPlatformThreadsWhenVirtualThreadsDisabled() {
+        SwingWorkerExecutors.setVirtualThreadsEnabled(false);
+        final Thread thread = constructingThread();
+        Assert.assertTrue(thread.getName().startsWith("SwingWorker-"));
+        Assert.assertFalse(isVirtual(thread));
+    }
+
+    /**
+     * @throws Exception on failure
+     */
+    @Test(timeout = 8000)
+    public void testTypedResultsCanBeChained() throws Exception {
+        final SwingWorker<Integer, Void> worker = new SwingWorker<Integer, Void>() {
+            @Override
+            public Integer construct() {
+                return 20;
+            }
+        };
+        final CompletableFuture<Integer> doubled = worker.toCompletionStage().thenApply(new Function<Integer, Integer>() {
+            public Integer apply(final Integer value) {
+                return value * 2;
+            }
+        }).toCompletableFuture();
+        worker.start();
+        Assert.assertEquals(Integer.valueOf(40), doubled.get(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertEquals(Integer.valueOf(20), worker.get(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertTrue(worker.isDone());
+        Assert.assertFalse(worker.isCancelled());
+    }
+
+    /**
+     * @throws InterruptedException on latch failure
+     */
+    @Test(timeout = 8000)
+    public void testCancellationInterruptsConstructAndSuppressesFinished() throws InterruptedException {
+        final CountDownLatch constructing = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final AtomicBoolean finishedCalled = new AtomicBoolean(false);
+        final SwingWorker<String, Void> worker = new SwingWorker<String, Void>() {
+            @Override
+            public String construct() {
+                constructing.countDown();
+                try {
+                    Thread.sleep(60000);
+                } catch (final InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return "too late";
+            }
+
+            @Override
+            public void finished() {
+                finishedCalled.set(true);
+            }
+        };
+        worker.start();
+        Assert.assertTrue(constructing.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertTrue(worker.cancel(true));
+        Assert.assertTrue(interrupted.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertTrue(worker.isCancelled());
+        Assert.assertTrue(worker.isDone());
+        Assert.assertNull(worker.get());
+        Assert.assertTrue(worker.toCompletionStage().toCompletableFuture().isCompletedExceptionally());
+        flushEventThread();
+        Assert.assertFalse(finishedCalled.get());
+    }
+
+    /**
+     * @throws Exception on failure
+     */
+    @Test(timeout = 8000)
+    public void testFailedConstructIsReportedByTimedGet() throws Exception {
+        final SwingWorker<String, Void> worker = new SwingWorker<String, Void>() {
+            @Override
+            public String construct() {
+                throw new IllegalStateException("broken");
+            }
+        };
+        worker.start();
+        try {
+            worker.get(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            Assert.fail("Expected an ExecutionException");
+        } catch (final ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        Assert.assertNull(worker.get());
+        Assert.assertFalse(worker.isCancelled());
+    }
+
+    /**
+     * @throws InterruptedException on latch failure
+     */
+    @Test(timeout = 8000)
+    public void testPublishedChunksAreCoalescedAndProcessedBeforeFinished() throws InterruptedException {
+        final int chunkCount = 1000;
+        final CountDownLatch releaseEventThread = new CountDownLatch(1);
+        final CountDownLatch finishedLatch = new CountDownLatch(1);
+        final List<Integer> processed = new ArrayList<Integer>();
+        final AtomicInteger processCalls = new AtomicInteger(0);
+        final AtomicInteger processedBeforeFinished = new AtomicInteger(-1);
+        // keep the event thread busy while chunks are published
+        EventQueue.invokeLater(new Runnable() {
+            public void run() {
+                try {
+                    releaseEventThread.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        final SwingWorker<String, Integer> worker = new SwingWorker<String, Integer>() {
+            @Override
+            public String construct() {
+                for (int i = 0; i < chunkCount; i++) {
+                    publish(i);
+                }
+                releaseEventThread.countDown();
+                return "done";
+            }
+
+            @Override
+            protected void process(final List<Integer> chunks) {
+                processCalls.incrementAndGet();
+                processed.addAll(chunks);
+            }
+
+            @Override
+            public void finished() {
+                processedBeforeFinished.set(processed.size());
+                finishedLatch.countDown();
+            }
+        };
+        worker.start();
+        Assert.assertTrue(finishedLatch.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertEquals(chunkCount, processedBeforeFinished.get());
+        Assert.assertEquals(1, processCalls.get());
+        for (int i = 0; i < chunkCount; i++) {
+            Assert.assertEquals(Integer.valueOf(i), processed.get(i));
+        }
+    }
+
+    /**
+     * @throws InterruptedException on latch failure
+     */
+    @Test(timeout = 8000)
+    public void testLifecycleTimingsAreReportedToTheMetricsListener() throws InterruptedException {
+        final SwingWorkerMetrics metrics = new SwingWorkerMetrics();
+        SwingWorker.setMetricsListener(metrics);
+        try {
+            final CountDownLatch finishedLatch = new CountDownLatch(1);
+            final SwingWorker<String, Void> worker = new SwingWorker<String, Void>() {
+                @Override
+                public String construct() {
+                    try {
+                        Thread.sleep(20);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "value";
+                }
+
+                @Override
+                public void finished() {
+                    finishedLatch.countDown();
+                }
+            };
+            worker.start();
+            Assert.assertTrue(finishedLatch.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            final SwingWorkerMetrics.WorkerClassMetrics classMetrics = metrics.getMetrics(worker.getClass());
+            Assert.assertEquals(1, classMetrics.getQueueLatency().getCount());
+            Assert.assertEquals(1, classMetrics.getConstructLatency().getCount());
+            Assert.assertEquals(1, classMetrics.getFinishedLatency().getCount());
+            Assert.assertTrue(classMetrics.getConstructLatency().getMax() >= TimeUnit.MILLISECONDS.toNanos(20));
+            Assert.assertEquals(0, metrics.getInFlightCount());
+        } finally {
+            SwingWorker.setMetricsListener(null);
+        }
+    }
+
+    /**
+     * @throws Exception on failure
+     */
+    @Test(timeout = 8000)
+    public void testSlowConstructTimesOutWithFallbackValue() throws Exception {
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final CountDownLatch finishedLatch = new CountDownLatch(1);
+        final String[] finishedValue = new String[] {null};
+        final AtomicBoolean finishedTimedOut = new AtomicBoolean(false);
+        final SwingWorker<String, Void> worker = new SwingWorker<String, Void>() {
+            @Override
+            public String construct() {
+                try {
+                    Thread.sleep(60000);
+                } catch (final InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return "too late";
+            }
+
+            @Override
+            public void finished() {
+                finishedTimedOut.set(isTimedOut());
+                finishedValue[0] = getValue();
+                finishedLatch.countDown();
+            }
+        };
+        worker.setTimeout(100, TimeUnit.MILLISECONDS, "fallback");
+        worker.start();
+        Assert.assertTrue(finishedLatch.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertTrue(interrupted.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertTrue(finishedTimedOut.get());
+        Assert.assertEquals("fallback", finishedValue[0]);
+        Assert.assertEquals("fallback", worker.get(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertFalse(worker.isCancelled());
+    }
+
+    /**
+     * @throws Exception on failure
+     */
+    @Test(timeout = 8000)
+    public void testRejectedWorkerFailsWithoutTimingOut() throws Exception {
+        final SwingWorkerMetrics metrics = new SwingWorkerMetrics();
+        SwingWorker.setMetricsListener(metrics);
+        try {
+            final Executor rejecting = new Executor() {
+                public void execute(final Runnable command) {
+                    throw new RejectedExecutionException("full");
+                }
+            };
+            final AtomicBoolean finishedCalled = new AtomicBoolean(false);
+            final SwingWorker<String, Void> worker = new SwingWorker<String, Void>(rejecting) {
+                @Override
+                public String construct() {
+                    return "never";
+                }
+
+                @Override
+                public void finished() {
+                    finishedCalled.set(true);
+                }
+            };
+            worker.setTimeout(50, TimeUnit.MILLISECONDS, "fallback");
+            try {
+                worker.start();
+                Assert.fail("The rejection was not rethrown");
+            } catch (final RejectedExecutionException ree) {
+                Assert.assertEquals("full", ree.getMessage());
+            }
+            try {
+                worker.get(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                Assert.fail("The rejected worker did not fail");
+            } catch (final ExecutionException ee) {
+                Assert.assertTrue(ee.getCause() instanceof RejectedExecutionException);
+            }
+            // past the deadline
+            Thread.sleep(200);
+            flushEventThread();
+            Assert.assertFalse(worker.isTimedOut());
+            Assert.assertFalse(finishedCalled.get());
+            Assert.assertEquals(0, metrics.getInFlightCount());
+            Assert.assertEquals(1, metrics.getMetrics(worker.getClass()).getDroppedCount());
+        } finally {
+            SwingWorker.setMetricsListener(null);
+        }
+    }
+
+    private static void flushEventThread() {
+        GUIUtils.runOnEventThread(new Runnable() {
+            public void run() {
+                // everything queued before this has now run
+            }
+        });
+    }
+}
@@ -0,0 +1,256 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.devzendo.commoncode.concurrency.ThreadUtils;
+import org.devzendo.commoncode.logging.LoggingUnittestHelper;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the SwingWorkerGraph.
+ *
+ * @author matt
+ *
+ */
+public final class TestSwingWorkerGraph {
+    private static final long LATCH_TIMEOUT_SECONDS = 5L;
+    private final List<String> constructed = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> finished = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * 
+     */
+    @BeforeClass
+    public static void setupLogging() {
+        LoggingUnittestHelper.setupLogging();
+    }
+
+    private SwingWorker<String, Void> recordingWorker(final String name, final SwingWorker<String, Void> input) {
+        return new SwingWorker<String, Void>() {
+            @Override
+            public String construct() {
+                final String value = input == null ? name : input.get() + name;
+                constructed.add(value);
+                return value;
+            }
+
+            @Override
+            public void finished() {
+                finished.add(get());
+            }
+        };
+    }
+
+    /**
+     * @throws Exception on failure
+     */
+    @Test(timeout = 8000)
+    public void testDependentsStartAfterTheirDependenciesAndFinishInOrder() throws Exception {
+        final SwingWorker<String, Void> a = recordingWorker("A", null);
+        final SwingWorker<String, Void> b = recordingWorker("B", a);
+        final SwingWorker<String, Void> c = recordingWorker("C", b);
+        final SwingWorker<String, Void> d = recordingWorker("D", null);
+        final SwingWorkerGraph graph = new SwingWorkerGraph();
+        graph.addSwingWorker(c, b);
+        graph.addSwingWorker(b, a);
+        graph.addSwingWorker(a);
+        graph.addSwingWorker(d);
+        graph.start();
+        graph.toCompletionStage().toCompletableFuture().get(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        flushEventThread();
+
+        Assert.assertEquals("ABC", c.get());
+        Assert.assertEquals(4, constructed.size());
+        Assert.assertEquals(4, finished.size());
+        Assert.assertTrue(finished.indexOf("A") < finished.indexOf("AB"));
+        Assert.assertTrue(finished.indexOf("AB") < finished.indexOf("ABC"));
+    }
+
+    /**
+     * @throws Exception on failure
+     */
+    @Test(timeout = 8000)
+    public void testDependentsOfAFailedWorkerAreCancelled() throws Exception {
+        final SwingWorker<String, Void> broken = new SwingWorker<String, Void>() {
+            @Override
+            public String construct() {
+                throw new IllegalStateException("broken");
+            }
+        };
+        final SwingWorker<String, Void> b = recordingWorker("B", broken);
+        final SwingWorker<String, Void> c = recordingWorker("C", b);
+        final SwingWorkerGraph graph = new SwingWorkerGraph();
+        graph.addSwingWorker(broken);
+        graph.addSwingWorker(b, broken);
+        graph.addSwingWorker(c, b);
+        graph.start();
+        graph.toCompletionStage().toCompletableFuture().get(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        Assert.assertTrue(b.isCancelled());
+        Assert.assertTrue(c.isCancelled());
+        Assert.assertTrue(constructed.isEmpty());
+    }
+
+    /**
+     * @throws Exception on failure
+     */
+    @Test(timeout = 8000)
+    public void testGraphCompletesWhenADependentWasCancelledBeforeItsDependencyFailed() throws Exception {
+        final CountDownLatch fail = new CountDownLatch(1);
+        final SwingWorker<String, Void> failing = new SwingWorker<String, Void>() {
+            @Override
+            public String construct() {
+                try {
+                    fail.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("failing");
+            }
+        };
+        final SwingWorker<String, Void> b = recordingWorker("B", failing);
+        final SwingWorker<String, Void> c = recordingWorker("C", b);
+        final SwingWorkerGraph graph = new SwingWorkerGraph();
+        graph.addSwingWorker(failing);
+        graph.addSwingWorker(b, failing);
+        graph.addSwingWorker(c, b);
+        graph.start();
+        Assert.assertTrue(b.cancel(true));
+        fail.countDown();
+        graph.toCompletionStage().toCompletableFuture().get(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        Assert.assertTrue(c.isCancelled());
+        Assert.assertTrue(constructed.isEmpty());
+    }
+
+    /**
+     * @throws Exception on failure
+     */
+    @Test(timeout = 8000)
+    public void testDependentsOfARejectedWorkerAreCancelled() throws Exception {
+        final Executor rejecting = new Executor() {
+            public void execute(final Runnable command) {
+                throw new RejectedExecutionException("full");
+            }
+        };
+        final SwingWorker<String, Void> a = recordingWorker("A", null);
+        final SwingWorker<String, Void> rejected = new SwingWorker<String, Void>(rejecting) {
+            @Override
+            public String construct() {
+                constructed.add("rejected");
+                return "rejected";
+            }
+        };
+        final SwingWorker<String, Void> c = recordingWorker("C", rejected);
+        final SwingWorker<String, Void> rejectedRoot = new SwingWorker<String, Void>(rejecting) {
+            @Override
+            public String construct() {
+                constructed.add("rejectedRoot");
+                return "rejectedRoot";
+            }
+        };
+        final SwingWorker<String, Void> e = recordingWorker("E", rejectedRoot);
+        final SwingWorkerGraph graph = new SwingWorkerGraph();
+        graph.addSwingWorker(a);
+        graph.addSwingWorker(rejected, a);
+        graph.addSwingWorker(c, rejected);
+        graph.addSwingWorker(rejectedRoot);
+        graph.addSwingWorker(e, rejectedRoot);
+        graph.start();
+        graph.toCompletionStage().toCompletableFuture().get(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        Assert.assertTrue(c.isCancelled());
+        Assert.assertTrue(e.isCancelled());
+        Assert.assertEquals(Collections.singletonList("A"), constructed);
+    }
+
+    /**
+     * @throws Exception on failure
+     */
+    @Test(timeout = 8000)
+    public void testNoMoreThanTheMaximumNumberOfWorkersRunAtOnce() throws Exception {
+        final AtomicInteger running = new AtomicInteger(0);
+        final AtomicInteger maxRunning = new AtomicInteger(0);
+        final SwingWorkerGraph graph = new SwingWorkerGraph();
+        graph.setMaxRunningWorkers(2);
+        for (int i = 0; i < 8; i++) {
+            graph.addSwingWorker(new SwingWorker<String, Void>() {
+                @Override
+                public String construct() {
+                    final int now = running.incrementAndGet();
+                    synchronized (maxRunning) {
+                        maxRunning.set(Math.max(maxRunning.get(), now));
+                    }
+                    ThreadUtils.waitNoInterruption(20);
+                    running.decrementAndGet();
+                    return "";
+                }
+            });
+        }
+        graph.start();
+        graph.toCompletionStage().toCompletableFuture().get(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        Assert.assertEquals(2, maxRunning.get());
+    }
+
+    /**
+     * 
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testCyclesAreRejected() {
+        final SwingWorker<String, Void> a = recordingWorker("A", null);
+        final SwingWorker<String, Void> b = recordingWorker("B", null);
+        final SwingWorkerGraph graph = new SwingWorkerGraph();
+        graph.addSwingWorker(a, b);
+        graph.addSwingWorker(b, a);
+        graph.start();
+    }
+
+    /**
+     * 
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testDependenciesMustBeAdded() {
+        final SwingWorker<String, Void> a = recordingWorker("A", null);
+        final SwingWorker<String, Void> b = recordingWorker("B", null);
+        final SwingWorkerGraph graph = new SwingWorkerGraph();
+        graph.addSwingWorker(b, a);
+        graph.start();
+    }
+
+    private static void flushEventThread() throws InterruptedException {
+        final CountDownLatch flushed = new CountDownLatch(1);
+        GUIUtils.invokeLaterOnEventThread(new Runnable() {
+            public void run() {
+                flushed.countDown();
+            }
+        });
+        flushed.await();
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui;
+
+import java.awt.EventQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.devzendo.commoncode.logging.LoggingUnittestHelper;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the SwingWorkerScope.
+ *
+ * @author matt
+ *
+ */
+public final class TestSwingWorkerScope {
+    private static final long LATCH_TIMEOUT_SECONDS = 5L;
+
+    /**
+     * 
+     */
+    @BeforeClass
+    public static void setupLogging() {
+        LoggingUnittestHelper.setupLogging();
+    }
+
+    /**
+     * @throws InterruptedException on latch failure
+     */
+    @Test(timeout = 8000)
+    public void testClosingInterruptsRunningWorkersAndDropsTheirCallbacks() throws InterruptedException {
+        final SwingWorkerScope scope = new SwingWorkerScope("test");
+        final CountDownLatch constructing = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final AtomicBoolean finishedCalled = new AtomicBoolean(false);
+        final SwingWorker<String, Void> worker = new SwingWorker<String, Void>() {
+            @Override
+            public String construct() {
+                constructing.countDown();
+                try {
+                    Thread.sleep(60000);
+                } catch (final InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return "abandoned";
+            }
+
+            @Override
+            public void finished() {
+                finishedCalled.set(true);
+            }
+        };
+        scope.start(worker);
+        Assert.assertTrue(constructing.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertEquals(1, scope.getActiveCount());
+        Assert.assertEquals(1, scope.close());
+        Assert.assertTrue(interrupted.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertTrue(worker.isCancelled());
+        Assert.assertEquals(1, scope.getAbandonedCount());
+        Assert.assertFalse(finishedCalled.get());
+    }
+
+    /**
+     * @throws InterruptedException on latch failure
+     */
+    @Test(timeout = 8000)
+    public void testClosingDropsFinishedCallsAlreadyOnTheEventQueue() throws InterruptedException {
+        final SwingWorkerScope scope = new SwingWorkerScope("test");
+        final CountDownLatch releaseEventThread = new CountDownLatch(1);
+        final CountDownLatch eventThreadReleased = new CountDownLatch(1);
+        final AtomicBoolean finishedCalled = new AtomicBoolean(false);
+        EventQueue.invokeLater(new Runnable() {
+            public void run() {
+                try {
+                    releaseEventThread.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        final SwingWorker<String, Void> worker = new SwingWorker<String, Void>() {
+            @Override
+            public String construct() {
+                return "done";
+            }
+
+            @Override
+            public void finished() {
+                finishedCalled.set(true);
+            }
+        };
+        scope.start(worker);
+        worker.get();
+        scope.close();
+        releaseEventThread.countDown();
+        EventQueue.invokeLater(new Runnable() {
+            public void run() {
+                eventThreadReleased.countDown();
+            }
+        });
+        Assert.assertTrue(eventThreadReleased.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertFalse(finishedCalled.get());
+    }
+
+    /**
+     * 
+     */
+    @Test(timeout = 8000)
+    public void testWorkersAddedAfterClosingAreCancelled() {
+        final SwingWorkerScope scope = new SwingWorkerScope("test");
+        scope.close();
+        final SwingWorker<String, Void> worker = new SwingWorker<String, Void>() {
+            @Override
+            public String construct() {
+                return "never";
+            }
+        };
+        scope.start(worker);
+        Assert.assertTrue(worker.isCancelled());
+        Assert.assertNull(worker.get());
+        Assert.assertEquals(1, scope.getAbandonedCount());
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.devzendo.commonapp.gui.dialog.snaildialog;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * Tests the bookkeeping of the SnailDialogPreconstructor, which needs no
+ * display.
+ *
+ * @author matt
+ *
+ */
+public final class TestPreconstructionBudget {
+    private final PreconstructionBudget<String, String> budget = new PreconstructionBudget<String, String>(100);
+
+    /**
+     * 
+     */
+    @Test
+    public void testFactoriesArePreparedInOrderOfRegistration() {
+        budget.register("b", 10);
+        budget.register("a", 10);
+
+        Assert.assertEquals("b", budget.next());
+        budget.prepared("b", "dialog b");
+        Assert.assertEquals("a", budget.next());
+        budget.prepared("a", "dialog a");
+        Assert.assertNull(budget.next());
+        Assert.assertEquals(20, budget.getPreparedBytes());
+    }
+
+    /**
+     * 
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testFactoriesCannotBeRegisteredTwice() {
+        budget.register("a", 10);
+        budget.register("a", 10);
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testFactoriesWhoseDialogsDoNotFitAreSkipped() {
+        budget.register("a", 60);
+        budget.register("b", 60);
+        budget.register("c", 40);
+        Assert.assertFalse(budget.fits(101));
+
+        budget.prepared(budget.next(), "dialog a");
+
+        Assert.assertEquals("c", budget.next());
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testTakingFreesTheBudgetForAReplacement() {
+        budget.register("a", 60);
+        budget.register("b", 60);
+        budget.prepared("a", "dialog a");
+        Assert.assertTrue(budget.isPrepared("a"));
+        Assert.assertNull(budget.next());
+
+        Assert.assertEquals("dialog a", budget.take("a"));
+
+        Assert.assertFalse(budget.isPrepared("a"));
+        Assert.assertEquals(0, budget.getPreparedBytes());
+        Assert.assertEquals("a", budget.next());
+        Assert.assertNull(budget.take("a"));
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testUnregisteredFactoriesAreForgotten() {
+        budget.register("a", 60);
+        budget.prepared("a", "dialog a");
+
+        Assert.assertEquals("dialog a", budget.take("a"));
+        Assert.assertTrue(budget.unregister("a"));
+
+        Assert.assertFalse(budget.unregister("a"));
+        Assert.assertNull(budget.next());
+        Assert.assertEquals(0, budget.getPreparedBytes());
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testFailedFactoriesAreNotAskedAgain() {
+        budget.register("a", 10);
+        budget.register("b", 10);
+
+        budget.failed("a");
+
+        Assert.assertEquals("b", budget.next());
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testFailedFactoriesRegisteredAgainArePrepared() {
+        budget.register("a", 10);
+        budget.failed("a");
+        Assert.assertNull(budget.next());
+
+        budget.unregister("a");
+        budget.register("a", 10);
+
+        Assert.assertEquals("a", budget.next());
+    }
+
+    /**
+     * 
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testFactoriesCannotPrepareTwice() {
+        budget.register("a", 10);
+        budget.prepared("a", "dialog a");
+        budget.prepared("a", "another dialog a");
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testClearingReturnsWhatWasPrepared() {
+        budget.register("a", 10);
+        budget.register("b", 10);
+        budget.register("c", 10);
+        budget.prepared("a", "dialog a");
+        budget.prepared("c", "dialog c");
+
+        Assert.assertEquals(Arrays.asList("dialog a", "dialog c"), budget.clear());
+
+        Assert.assertNull(budget.next());
+        Assert.assertEquals(0, budget.getPreparedBytes());
+    }
+}
@@ -16,16 +16,46 @@
 
 package org.devzendo.commonapp.gui.dialog.snaildialog;
 
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.GraphicsEnvironment;
+import java.awt.Point;
+import java.awt.Window;
+import java.awt.event.InputEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import javax.swing.JDialog;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JLayeredPane;
+import javax.swing.JPanel;
+import javax.swing.JTabbedPane;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 
 import org.apache.log4j.Logger;
+import org.devzendo.commonapp.gui.CursorManager;
 import org.devzendo.commonapp.gui.DefaultCursorManager;
 import org.devzendo.commonapp.gui.GUIUtils;
+import org.devzendo.commonapp.gui.SwingWorker;
+import org.devzendo.commonapp.gui.WorkerPriority;
 import org.devzendo.commoncode.concurrency.ThreadUtils;
 import org.devzendo.commoncode.logging.LoggingUnittestHelper;
+import org.junit.After;
 import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -42,6 +72,89 @@ public final class TestSnailDialog  {
 
     private volatile StubRecordingSnailDialog snailDialog;
 
+    private final List<AbstractSnailDialog> dialogs = Collections.synchronizedList(new ArrayList<AbstractSnailDialog>());
+    private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+    private volatile JFrame mainFrame;
+    private volatile int hourglasses;
+    private volatile int normals;
+
+    private final CursorManager cursorManager = new CursorManager() {
+        public JFrame getMainFrame() {
+            return mainFrame;
+        }
+
+        public void setMainFrame(final JFrame frame) {
+        }
+
+        public void shutdown() {
+        }
+
+        public void hourglass(final String caller) {
+            hourglasses++;
+        }
+
+        public void hourglassViaEventThread(final String caller) {
+            hourglasses++;
+        }
+
+        public void normal(final String caller) {
+            normals++;
+        }
+
+        public void normalViaEventThread(final String caller) {
+            normals++;
+        }
+    };
+
+    /**
+     * A non-modal dialog, so that tests can continue while it is shown.
+     */
+    @SuppressWarnings("serial")
+    private abstract class TestDialog extends AbstractSnailDialog {
+        TestDialog() {
+            super(mainFrame, cursorManager, "Test");
+            setModal(false);
+            dialogs.add(this);
+        }
+
+        @Override
+        protected Container createMainComponent() {
+            return new JPanel();
+        }
+    }
+
+    /**
+     * A worker that records its construction, and takes a little while.
+     */
+    private final class RecordingWorker extends SwingWorker<String, Void> {
+        private final String name;
+        private final AtomicInteger running;
+        private final AtomicInteger maxRunning;
+
+        RecordingWorker(final String workerName, final AtomicInteger nowRunning, final AtomicInteger mostRunning) {
+            name = workerName;
+            running = nowRunning;
+            maxRunning = mostRunning;
+        }
+
+        @Override
+        public String construct() {
+            events.add("construct " + name);
+            final int now = running.incrementAndGet();
+            synchronized (maxRunning) {
+                maxRunning.set(Math.max(maxRunning.get(), now));
+            }
+            ThreadUtils.waitNoInterruption(50);
+            running.decrementAndGet();
+            return name;
+        }
+
+        @Override
+        public void finished() {
+            events.add("finished " + name);
+        }
+    }
+
     /**
      * 
      */
@@ -50,6 +163,976 @@ public final class TestSnailDialog  {
         LoggingUnittestHelper.setupLogging();
     }
 
+    /**
+     * 
+     */
+    @Before
+    public void createMainFrame() {
+        Assume.assumeFalse("Snail dialogs need a display", GraphicsEnvironment.isHeadless());
+        GUIUtils.runOnEventThread(new Runnable() {
+            public void run() {
+                mainFrame = new JFrame("main frame");
+            }
+        });
+    }
+
+    /**
+     * 
+     */
+    @After
+    public void disposeWindows() {
+        GUIUtils.runOnEventThread(new Runnable() {
+            public void run() {
+                for (final AbstractSnailDialog dialog : dialogs) {
+                    dialog.dispose();
+                }
+                if (mainFrame != null) {
+                    mainFrame.dispose();
+                }
+            }
+        });
+    }
+
+    private static RuntimeException postConstruct(final AbstractSnailDialog dialog) {
+        final AtomicReference<RuntimeException> thrown = new AtomicReference<RuntimeException>();
+        GUIUtils.runOnEventThread(new Runnable() {
+            public void run() {
+                try {
+                    dialog.postConstruct();
+                } catch (final RuntimeException re) {
+                    thrown.set(re);
+                }
+            }
+        });
+        return thrown.get();
+    }
+
+    private static void show(final AbstractSnailDialog dialog) {
+        GUIUtils.runOnEventThread(new Runnable() {
+            public void run() {
+                dialog.pack();
+                dialog.setVisible(true);
+            }
+        });
+    }
+
+    private static void awaitLoaded(final AbstractSnailDialog dialog) {
+        // let the window events that start the workers be dispatched
+        flushEventThread();
+        while (!dialog.isLoaded()) {
+            ThreadUtils.waitNoInterruption(10);
+        }
+        flushEventThread();
+    }
+
+    private static void hide(final AbstractSnailDialog dialog) {
+        GUIUtils.runOnEventThread(new Runnable() {
+            public void run() {
+                dialog.clearAndHide();
+            }
+        });
+    }
+
+    private List<String> constructions() {
+        final List<String> constructions = new ArrayList<String>();
+        synchronized (events) {
+            for (final String event : events) {
+                if (event.startsWith("construct")) {
+                    constructions.add(event);
+                }
+            }
+        }
+        return constructions;
+    }
+
+    private static void flushEventThread() {
+        // twice, since finishing a worker posts further work
+        for (int i = 0; i < 2; i++) {
+            GUIUtils.runOnEventThread(new Runnable() {
+                public void run() {
+                    // nothing
+                }
+            });
+        }
+    }
+
+    /**
+     * 
+     */
+    @Test(timeout = 8000)
+    public void testWorkersAreExecutedOneAtATimeInOrderByDefault() {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AbstractSnailDialog dialog = new TestDialog() {
+            @Override
+            protected void initialise() {
+                addSwingWorker(new RecordingWorker("a", running, maxRunning));
+                addSwingWorker(new RecordingWorker("b", running, maxRunning));
+                addSwingWorker(new RecordingWorker("c", running, maxRunning));
+            }
+        };
+        Assert.assertNull(postConstruct(dialog));
+        show(dialog);
+        awaitLoaded(dialog);
+
+        Assert.assertEquals(1, maxRunning.get());
+        Assert.assertEquals(Arrays.asList("construct a", "construct b", "construct c"), constructions());
+        Assert.assertEquals(6, events.size());
+        Assert.assertEquals(hourglasses, normals);
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test(timeout = 8000)
+    public void testWorkersRunTogetherWithTheParallelPolicy() throws InterruptedException {
+        final CountDownLatch bothRunning = new CountDownLatch(2);
+        final AtomicInteger together = new AtomicInteger();
+        final AbstractSnailDialog dialog = new TestDialog() {
+            @Override
+            protected void initialise() {
+                setExecutionPolicy(SnailDialogExecutionPolicy.PARALLEL);
+                for (int i = 0; i < 2; i++) {
+                    addSwingWorker(new SwingWorker<Void, Void>() {
+                        @Override
+                        public Void construct() {
+                            bothRunning.countDown();
+                            try {
+                                if (bothRunning.await(4, TimeUnit.SECONDS)) {
+                                    together.incrementAndGet();
+                                }
+                            } catch (final InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            return null;
+                        }
+                    });
+                }
+            }
+        };
+        Assert.assertNull(postConstruct(dialog));
+        show(dialog);
+        awaitLoaded(dialog);
+
+        Assert.assertEquals(2, together.get());
+    }
+
+    /**
+     * 
+     */
+    @Test(timeout = 8000)
+    public void testDependenciesOnWorkersInLaterPhasesAreRejected() {
+        final AtomicInteger running = new AtomicInteger();
+        final AbstractSnailDialog dialog = new TestDialog() {
+            @Override
+            protected void initialise() {
+                final SwingWorker<String, Void> later = new RecordingWorker("later", running, running);
+                addPhasedSwingWorker(1, later);
+                addPhasedSwingWorker(0, new RecordingWorker("earlier", running, running), later);
+            }
+        };
+        Assert.assertTrue(postConstruct(dialog) instanceof IllegalArgumentException);
+    }
+
+    /**
+     * 
+     */
+    @Test(timeout = 8000)
+    public void testDependenciesOnWorkersInEarlierPhasesAreRejected() {
+        final AtomicInteger running = new AtomicInteger();
+        final AbstractSnailDialog dialog = new TestDialog() {
+            @Override
+            protected void initialise() {
+                final SwingWorker<String, Void> earlier = new RecordingWorker("earlier", running, running);
+                final SwingWorker<String, Void> later = new RecordingWorker("later", running, running);
+                addPhasedSwingWorker(1, later, earlier);
+                addPhasedSwingWorker(0, earlier);
+            }
+        };
+        Assert.assertTrue(postConstruct(dialog) instanceof IllegalArgumentException);
+    }
+
+    /**
+     * 
+     */
+    @Test(timeout = 8000)
+    public void testDependenciesAcrossOverlappingPhasesAreAllowed() {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AbstractSnailDialog dialog = new TestDialog() {
+            @Override
+            protected void initialise() {
+                setExecutionPolicy(SnailDialogExecutionPolicy.UNBOUNDED);
+                final SwingWorker<String, Void> earlier = new RecordingWorker("earlier", running, maxRunning);
+                addPhasedSwingWorker(1, new RecordingWorker("later", running, maxRunning), earlier);
+                addPhasedSwingWorker(0, earlier);
+            }
+        };
+        Assert.assertNull(postConstruct(dialog));
+        show(dialog);
+        awaitLoaded(dialog);
+
+        Assert.assertEquals(Arrays.asList("construct earlier", "construct later"), constructions());
+    }
+
+    /**
+     * 
+     */
+    @Test(timeout = 8000)
+    public void testReopeningAReusableDialogExecutesOnlyItsRefreshWorkersOnce() {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AbstractSnailDialog dialog = new TestDialog() {
+            @Override
+            protected void initialise() {
+                addSwingWorker(new RecordingWorker("initial", running, maxRunning));
+            }
+
+            @Override
+            protected void initialiseRefresh() {
+                addSwingWorker(new RecordingWorker("refresh", running, maxRunning));
+            }
+        };
+        dialog.setReusable(true);
+        Assert.assertNull(postConstruct(dialog));
+        show(dialog);
+        awaitLoaded(dialog);
+        hide(dialog);
+        Assert.assertTrue(dialog.isDisplayable());
+
+        show(dialog);
+        awaitLoaded(dialog);
+        Assert.assertEquals(Arrays.asList("construct initial", "construct refresh"), constructions());
+
+        hide(dialog);
+        show(dialog);
+        awaitLoaded(dialog);
+        Assert.assertEquals(Arrays.asList("construct initial", "construct refresh", "construct refresh"), constructions());
+    }
+
+    /**
+     * 
+     */
+    @Test(timeout = 8000)
+    public void testHidingANonReusableDialogDisposesOfIt() {
+        final AtomicInteger running = new AtomicInteger();
+        final AbstractSnailDialog dialog = new TestDialog() {
+            @Override
+            protected void initialise() {
+                addSwingWorker(new RecordingWorker("initial", running, running));
+            }
+        };
+        Assert.assertNull(postConstruct(dialog));
+        show(dialog);
+        awaitLoaded(dialog);
+        hide(dialog);
+
+        Assert.assertFalse(dialog.isDisplayable());
+        Assert.assertEquals(Arrays.asList("construct initial"), constructions());
+    }
+
+    private final class BlockingWorker extends SwingWorker<String, Void> {
+        private final CountDownLatch release;
+
+        BlockingWorker(final CountDownLatch releaseLatch) {
+            release = releaseLatch;
+        }
+
+        @Override
+        public String construct() {
+            events.add("construct blocking");
+            try {
+                release.await();
+            } catch (final InterruptedException e) {
+                events.add("interrupted blocking");
+            }
+            return "blocking";
+        }
+    }
+
+    private static SnailDialogPreconstructor preconstructor() {
+        final AtomicReference<SnailDialogPreconstructor> preconstructor = new AtomicReference<SnailDialogPreconstructor>();
+        GUIUtils.runOnEventThread(new Runnable() {
+            public void run() {
+                preconstructor.set(new SnailDialogPreconstructor(1000000L, 10, 1000));
+            }
+        });
+        return preconstructor.get();
+    }
+
+    private static void register(final SnailDialogPreconstructor preconstructor, final SnailDialogPreconstructor.Factory<?> factory) {
+        GUIUtils.runOnEventThread(new Runnable() {
+            public void run() {
+                preconstructor.register(factory, 1000L);
+            }
+        });
+    }
+
+    private static void awaitPrepared(final SnailDialogPreconstructor preconstructor, final SnailDialogPreconstructor.Factory<?> factory) {
+        final AtomicReference<Boolean> prepared = new AtomicReference<Boolean>(false);
+        while (!prepared.get()) {
+            ThreadUtils.waitNoInterruption(10);
+            GUIUtils.runOnEventThread(new Runnable() {
+                public void run() {
+                    prepared.set(preconstructor.isPrepared(factory));
+                }
+            });
+        }
+    }
+
+    private static void awaitNotProbing(final SnailDialogPreconstructor preconstructor) {
+        final AtomicReference<Boolean> probing = new AtomicReference<Boolean>(true);
+        while (probing.get()) {
+            ThreadUtils.waitNoInterruption(10);
+            GUIUtils.runOnEventThread(new Runnable() {
+                public void run() {
+                    probing.set(preconstructor.isProbing());
+                }
+            });
+        }
+    }
+
+    private static <D extends AbstractSnailDialog> D take(final SnailDialogPreconstructor preconstructor, final SnailDialogPreconstructor.Factory<D> factory) {
+        final AtomicReference<D> dialog = new AtomicReference<D>();
+        GUIUtils.runOnEventThread(new Runnable() {
+            public void run() {
+                dialog.set(preconstructor.take(factory));
+            }
+        });
+        return dialog.get();
+    }
+
+    private static void shutdown(final SnailDialogPreconstructor preconstructor) {
+        GUIUtils.runOnEventThread(new Runnable() {
+            public void run() {
+                preconstructor.shutdown();
+            }
+        });
+    }
+
+    /**
+     * 
+     */
+    @Test(timeout = 8000)
+    public void testPreconstructedDialogsAreHandedOverLoaded() {
+        final AtomicInteger running = new AtomicInteger();
+        final List<AbstractSnailDialog> created = Collections.synchronizedList(new ArrayList<AbstractSnailDialog>());
+        final SnailDialogPreconstructor.Factory<AbstractSnailDialog> factory = new SnailDialogPreconstructor.Factory<AbstractSnailDialog>() {
+            public AbstractSnailDialog createDialog() {
+                final String name = "preconstructed " + (created.size() + 1);
+                final AbstractSnailDialog dialog = new TestDialog() {
+                    @Override
+                    protected void initialise() {
+                        addSwingWorker(new RecordingWorker(name, running, running));
+                    }
+                };
+                created.add(dialog);
+                return dialog;
+            }
+        };
+        final SnailDialogPreconstructor preconstructor = preconstructor();
+        try {
+            register(preconstructor, factory);
+            awaitPrepared(preconstructor, factory);
+            awaitNotProbing(preconstructor);
+            Assert.assertEquals(1, created.size());
+            awaitLoaded(created.get(0));
+
+            final AbstractSnailDialog dialog = take(preconstructor, factory);
+            Assert.assertSame(created.get(0), dialog);
+            show(dialog);
+            awaitLoaded(dialog);
+            Assert.assertEquals(0, hourglasses);
+
+            // a replacement is prepared, then probing stops again
+            awaitPrepared(preconstructor, factory);
+            awaitNotProbing(preconstructor);
+            Assert.assertEquals(2, created.size());
+            // the dialog shown was not loaded again
+            Assert.assertEquals(Arrays.asList("construct preconstructed 1", "construct preconstructed 2"), constructions());
+        } finally {
+            shutdown(preconstructor);
+        }
+    }
+
+    /**
+     * 
+     */
+    @Test(timeout = 8000)
+    public void testPreconstructedDialogsStillLoadingAreRaisedFromBackgroundPriorityWhenHandedOver() {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<BlockingWorker> workers = Collections.synchronizedList(new ArrayList<BlockingWorker>());
+        final SnailDialogPreconstructor.Factory<AbstractSnailDialog> factory = new SnailDialogPreconstructor.Factory<AbstractSnailDialog>() {
+            public AbstractSnailDialog createDialog() {
+                return new TestDialog() {
+                    @Override
+                    protected void initialise() {
+                        final BlockingWorker worker = new BlockingWorker(release);
+                        workers.add(worker);
+                        addSwingWorker(worker);
+                    }
+                };
+            }
+        };
+        final SnailDialogPreconstructor preconstructor = preconstructor();
+        try {
+            register(preconstructor, factory);
+            awaitPrepared(preconstructor, factory);
+            final BlockingWorker worker = workers.get(0);
+            Assert.assertEquals(WorkerPriority.BACKGROUND, worker.getPriority());
+
+            final AbstractSnailDialog dialog = take(preconstructor, factory);
+            Assert.assertEquals(WorkerPriority.VISIBLE_CONTENT, worker.getPriority());
+            Assert.assertEquals(1, hourglasses);
+            release.countDown();
+            awaitLoaded(dialog);
+            Assert.assertEquals(1, normals);
+        } finally {
+            release.countDown();
+            shutdown(preconstructor);
+        }
+    }
+
+    /**
+     * 
+     */
+    @Test(timeout = 8000)
+    public void testPreconstructedDialogsAreDiscardedWhenUnregistered() {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<BlockingWorker> workers = Collections.synchronizedList(new ArrayList<BlockingWorker>());
+        final SnailDialogPreconstructor.Factory<AbstractSnailDialog> factory = new SnailDialogPreconstructor.Factory<AbstractSnailDialog>() {
+            public AbstractSnailDialog createDialog() {
+                return new TestDialog() {
+                    @Override
+                    protected void initialise() {
+                        final BlockingWorker worker = new BlockingWorker(release);
+                        workers.add(worker);
+                        addSwingWorker(worker);
+                    }
+                };
+            }
+        };
+        final SnailDialogPreconstructor preconstructor = preconstructor();
+        try {
+            register(preconstructor, factory);
+            awaitPrepared(preconstructor, factory);
+            GUIUtils.runOnEventThread(new Runnable() {
+                public void run() {
+                    preconstructor.unregister(factory);
+                }
+            });
+
+            Assert.assertTrue(workers.get(0).isCancelled());
+            awaitNotProbing(preconstructor);
+        } finally {
+            release.countDown();
+            shutdown(preconstructor);
+        }
+    }
+
+    private static int registeredWindows() {
+        return WindowOpenedDispatcher.getInstance().getRegisteredCount();
+    }
+
+    /**
+     * 
+     */
+    @Test(timeout = 8000)
+    public void testDispatcherReleasesDialogsOnceOpened() {
+        final int before = registeredWindows();
+        final AtomicInteger running = new AtomicInteger();
+        final AbstractSnailDialog dialog = new TestDialog() {
+            @Override
+            protected void initialise() {
+                addSwingWorker(new RecordingWorker("opened", running, running));
+            }
+        };
+        Assert.assertNull(postConstruct(dialog));
+        Assert.assertEquals(before + 1, registeredWindows());
+        show(dialog);
+        awaitLoaded(dialog);
+
+        Assert.assertEquals(before, registeredWindows());
+        Assert.assertEquals(Arrays.asList("construct opened"), constructions());
+    }
+
+    /**
+     * 
+     */
+    @Test(timeout = 8000)
+    public void testDispatcherReleasesWindowsClosedWithoutBeingOpened() {
+        final int before = registeredWindows();
+        final AtomicInteger opened = new AtomicInteger();
+        GUIUtils.runOnEventThread(new Runnable() {
+            public void run() {
+                final JDialog dialog = new JDialog(mainFrame);
+                WindowOpenedDispatcher.getInstance().register(dialog, new WindowOpenedDispatcher.WindowOpenedListener() {
+                    public void windowOpened(final Window window) {
+                        opened.incrementAndGet();
+                    }
+                });
+                dialog.pack();
+                dialog.dispose();
+            }
+        });
+        flushEventThread();
+
+        Assert.assertEquals(before, registeredWindows());
+        Assert.assertEquals(0, opened.get());
+    }
+
+    /**
+     * 
+     */
+    @Test(timeout = 8000)
+    public void testDispatcherReleasesDialogsHiddenBeforeTheyOpened() {
+        final int before = registeredWindows();
+        final AtomicInteger running = new AtomicInteger();
+        final AbstractSnailDialog dialog = new TestDialog() {
+            @Override
+            protected void initialise() {
+                addSwingWorker(new RecordingWorker("never", running, running));
+            }
+        };
+        Assert.assertNull(postConstruct(dialog));
+        hide(dialog);
+        flushEventThread();
+
+        Assert.assertEquals(before, registeredWindows());
+        Assert.assertTrue(constructions().isEmpty());
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test(timeout = 8000)
+    public void testDispatcherIsRemovedOnceUnopenedWindowsAreCollected() throws InterruptedException {
+        final AtomicReference<WeakReference<JDialog>> unopened = new AtomicReference<WeakReference<JDialog>>();
+        GUIUtils.runOnEventThread(new Runnable() {
+            public void run() {
+                final JDialog dialog = new JDialog(mainFrame);
+                WindowOpenedDispatcher.getInstance().register(dialog, new WindowOpenedDispatcher.WindowOpenedListener() {
+                    public void windowOpened(final Window window) {
+                        // never opened
+                    }
+                });
+                unopened.set(new WeakReference<JDialog>(dialog));
+            }
+        });
+        Assert.assertTrue(WindowOpenedDispatcher.getInstance().isInstalled());
+        while (unopened.get().get() != null) {
+            System.gc();
+            Thread.sleep(20);
+        }
+
+        // other windows' events prune it; windows left by earlier tests
+        // may take a while longer to be collected
+        while (WindowOpenedDispatcher.getInstance().isInstalled()) {
+            GUIUtils.runOnEventThread(new Runnable() {
+                public void run() {
+                    final JDialog other = new JDialog(mainFrame);
+                    other.pack();
+                    other.dispose();
+                }
+            });
+            flushEventThread();
+            System.gc();
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(0, registeredWindows());
+    }
+
+    private static boolean isShowing(final Component component) {
+        final AtomicReference<Boolean> showing = new AtomicReference<Boolean>();
+        GUIUtils.runOnEventThread(new Runnable() {
+            public void run() {
+                showing.set(component.isShowing());
+            }
+        });
+        return showing.get();
+    }
+
+    private static void awaitLoaded(final SnailDialogSection section) {
+        final AtomicReference<Boolean> loaded = new AtomicReference<Boolean>(false);
+        while (!loaded.get()) {
+            ThreadUtils.waitNoInterruption(10);
+            GUIUtils.runOnEventThread(new Runnable() {
+                public void run() {
+                    loaded.set(section.isLoaded());
+                }
+            });
+        }
+    }
+
+    /**
+     * 
+     */
+    @Test(timeout = 8000)
+    public void testSectionsShowTheirPlaceholderUntilTheirWorkersHaveFinished() {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger running = new AtomicInteger();
+        final JLabel quickContent = new JLabel("quick");
+        final JLabel quickPlaceholder = new JLabel("loading quick");
+        final JLabel slowContent = new JLabel("slow");
+        final JLabel slowPlaceholder = new JLabel("loading slow");
+        final AtomicReference<SnailDialogSection> quick = new AtomicReference<SnailDialogSection>();
+        final AtomicReference<SnailDialogSection> slow = new AtomicReference<SnailDialogSection>();
+        final AbstractSnailDialog dialog = new TestDialog() {
+            @Override
+            protected Container createMainComponent() {
+                final JPanel panel = new JPanel();
+                quick.set(new SnailDialogSection(quickContent, quickPlaceholder));
+                slow.set(new SnailDialogSection(slowContent, slowPlaceholder));
+                panel.add(quick.get());
+                panel.add(slow.get());
+                return panel;
+            }
+
+            @Override
+            protected void initialise() {
+                setExecutionPolicy(SnailDialogExecutionPolicy.PARALLEL);
+                setProgressive(true);
+                addSectionSwingWorker(quick.get(), new RecordingWorker("quick1", running, running));
+                addSectionSwingWorker(quick.get(), new RecordingWorker("quick2", running, running));
+                addSectionSwingWorker(slow.get(), new BlockingWorker(release));
+            }
+        };
+        try {
+            Assert.assertNull(postConstruct(dialog));
+            show(dialog);
+            awaitLoaded(quick.get());
+
+            Assert.assertTrue(isShowing(quickContent));
+            Assert.assertFalse(isShowing(quickPlaceholder));
+            Assert.assertFalse(slow.get().isLoaded());
+            Assert.assertTrue(isShowing(slowPlaceholder));
+            Assert.assertFalse(isShowing(slowContent));
+            // progressive: the hourglass went once the first content was shown
+            Assert.assertEquals(1, hourglasses);
+            Assert.assertEquals(1, normals);
+
+            release.countDown();
+            awaitLoaded(dialog);
+            Assert.assertTrue(slow.get().isLoaded());
+            Assert.assertTrue(isShowing(slowContent));
+            Assert.assertFalse(isShowing(slowPlaceholder));
+            Assert.assertEquals(1, normals);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test(timeout = 8000)
+    public void testSectionWorkersMayBeAddedOffTheEventThread() throws InterruptedException {
+        final AtomicReference<SnailDialogSection> section = new AtomicReference<SnailDialogSection>();
+        GUIUtils.runOnEventThread(new Runnable() {
+            public void run() {
+                section.set(new SnailDialogSection(new JLabel("content")));
+            }
+        });
+        final int threads = 4;
+        final int workersPerThread = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch added = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (final InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < workersPerThread; j++) {
+                        section.get().workerAdded();
+                    }
+                    added.countDown();
+                }
+            }).start();
+        }
+        start.countDown();
+        added.await();
+        flushEventThread();
+        final AtomicReference<Boolean> loadedEarly = new AtomicReference<Boolean>(false);
+        final AtomicReference<Boolean> loadedByLast = new AtomicReference<Boolean>(false);
+        GUIUtils.runOnEventThread(new Runnable() {
+            public void run() {
+                for (int i = 1; i < threads * workersPerThread; i++) {
+                    if (section.get().workerDone()) {
+                        loadedEarly.set(true);
+                    }
+                }
+                loadedByLast.set(section.get().workerDone());
+            }
+        });
+
+        Assert.assertFalse(loadedEarly.get());
+        Assert.assertTrue(loadedByLast.get());
+    }
+
+    /**
+     * 
+     */
+    @Test(timeout = 8000)
+    public void testLoadTimingsAreReportedInOrder() {
+        final List<Long> timings = Collections.synchronizedList(new ArrayList<Long>());
+        final AtomicInteger running = new AtomicInteger();
+        final AbstractSnailDialog dialog = new TestDialog() {
+            @Override
+            protected void initialise() {
+                addSwingWorker(new RecordingWorker("first", running, running));
+                addSwingWorker(new RecordingWorker("second", running, running));
+            }
+        };
+        AbstractSnailDialog.setTimingListener(new SnailDialogTimingListener() {
+            public void windowOpened(final AbstractSnailDialog timed, final long nanos) {
+                record(timed, "windowOpened", nanos);
+            }
+
+            public void firstContent(final AbstractSnailDialog timed, final long nanos) {
+                record(timed, "firstContent", nanos);
+            }
+
+            public void fullyLoaded(final AbstractSnailDialog timed, final long nanos) {
+                record(timed, "fullyLoaded", nanos);
+            }
+
+            private void record(final AbstractSnailDialog timed, final String what, final long nanos) {
+                if (timed == dialog) {
+                    events.add(what);
+                    timings.add(nanos);
+                }
+            }
+        });
+        try {
+            Assert.assertNull(postConstruct(dialog));
+            show(dialog);
+            awaitLoaded(dialog);
+        } finally {
+            AbstractSnailDialog.setTimingListener(null);
+        }
+
+        final List<String> reported = new ArrayList<String>(events);
+        reported.removeAll(constructions());
+        reported.removeAll(Arrays.asList("finished first", "finished second"));
+        Assert.assertEquals(Arrays.asList("windowOpened", "firstContent", "fullyLoaded"), reported);
+        Assert.assertTrue(timings.get(0) > 0);
+        Assert.assertTrue(timings.get(1) >= timings.get(0));
+        Assert.assertTrue(timings.get(2) >= timings.get(1));
+    }
+
+    /**
+     * A dialog with two tabs, each loaded by its own worker.
+     */
+    @SuppressWarnings("serial")
+    private class TabbedDialog extends TestDialog {
+        final JTabbedPane tabs = new JTabbedPane();
+        final JPanel first = new JPanel();
+        final JPanel second = new JPanel();
+        private final SwingWorker<?, ?> firstWorker;
+        private final SwingWorker<?, ?> secondWorker;
+
+        TabbedDialog(final SwingWorker<?, ?> firstTabWorker, final SwingWorker<?, ?> secondTabWorker) {
+            firstWorker = firstTabWorker;
+            secondWorker = secondTabWorker;
+        }
+
+        @Override
+        protected Container createMainComponent() {
+            first.add(new JLabel("first"));
+            second.add(new JLabel("second"));
+            tabs.addTab("First", first);
+            tabs.addTab("Second", second);
+            final JPanel panel = new JPanel(new BorderLayout());
+            panel.add(tabs);
+            return panel;
+        }
+
+        @Override
+        protected void initialise() {
+            addTabSwingWorker(tabs, first, firstWorker);
+            addTabSwingWorker(tabs, second, secondWorker);
+        }
+
+        Component[] placeholders() {
+            return getLayeredPane().getComponentsInLayer(JLayeredPane.PALETTE_LAYER);
+        }
+    }
+
+    private static void selectTab(final JTabbedPane tabs, final Component tab) {
+        GUIUtils.runOnEventThread(new Runnable() {
+            public void run() {
+                tabs.setSelectedComponent(tab);
+            }
+        });
+    }
+
+    /**
+     * 
+     */
+    @Test(timeout = 8000)
+    public void testTabsAreLoadedOnFirstSelectionWithoutBeingReplaced() {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger running = new AtomicInteger();
+        final TabbedDialog dialog = new TabbedDialog(new RecordingWorker("first", running, running), new BlockingWorker(release));
+        try {
+            Assert.assertNull(postConstruct(dialog));
+            show(dialog);
+            awaitLoaded(dialog);
+
+            // only the selected tab was loaded; the other is still covered,
+            // but its placeholder is hidden while the tab is
+            Assert.assertEquals(Arrays.asList("construct first"), constructions());
+            Assert.assertEquals(1, dialog.placeholders().length);
+            Assert.assertFalse(isShowing(dialog.placeholders()[0]));
+            Assert.assertSame(dialog.first, dialog.tabs.getComponentAt(0));
+            Assert.assertSame(dialog.second, dialog.tabs.getComponentAt(1));
+            Assert.assertEquals(1, dialog.tabs.indexOfComponent(dialog.second));
+
+            selectTab(dialog.tabs, dialog.second);
+            flushEventThread();
+            Assert.assertSame(dialog.second, dialog.tabs.getSelectedComponent());
+            Assert.assertEquals(Arrays.asList("construct first", "construct blocking"), constructions());
+            final Component placeholder = dialog.placeholders()[0];
+            Assert.assertTrue(isShowing(placeholder));
+            Assert.assertEquals(SwingUtilities.convertRectangle(dialog.tabs, dialog.second.getBounds(), dialog.getLayeredPane()),
+                placeholder.getBounds());
+
+            release.countDown();
+            while (dialog.placeholders().length != 0) {
+                ThreadUtils.waitNoInterruption(10);
+            }
+            Assert.assertTrue(isShowing(dialog.second));
+
+            // selecting it again loads nothing more
+            selectTab(dialog.tabs, dialog.first);
+            selectTab(dialog.tabs, dialog.second);
+            flushEventThread();
+            Assert.assertEquals(Arrays.asList("construct first", "construct blocking"), constructions());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    /**
+     * 
+     */
+    @Test(timeout = 8000)
+    public void testUnselectedTabsMayBeLoadedInTheBackground() {
+        final AtomicInteger running = new AtomicInteger();
+        final TabbedDialog dialog = new TabbedDialog(new RecordingWorker("first", running, running), new RecordingWorker("second", running, running)) {
+            @Override
+            protected void initialise() {
+                setLoadTabsInBackground(true);
+                super.initialise();
+            }
+        };
+        Assert.assertNull(postConstruct(dialog));
+        show(dialog);
+        awaitLoaded(dialog);
+        while (dialog.placeholders().length != 0) {
+            ThreadUtils.waitNoInterruption(10);
+        }
+
+        Assert.assertEquals(Arrays.asList("construct first", "construct second"), constructions());
+        Assert.assertSame(dialog.first, dialog.tabs.getSelectedComponent());
+    }
+
+    private static Component focusAfter(final Window window, final Component component) {
+        final AtomicReference<Component> after = new AtomicReference<Component>();
+        GUIUtils.runOnEventThread(new Runnable() {
+            public void run() {
+                after.set(window.getFocusTraversalPolicy().getComponentAfter(window, component));
+            }
+        });
+        return after.get();
+    }
+
+    // Presses near the component's corner, clear of its children
+    private static void pressMouseOver(final Window window, final Component component) {
+        GUIUtils.runOnEventThread(new Runnable() {
+            public void run() {
+                final Point corner = SwingUtilities.convertPoint(component, 2, 2, window);
+                window.dispatchEvent(new MouseEvent(window, MouseEvent.MOUSE_PRESSED, System.currentTimeMillis(),
+                    InputEvent.BUTTON1_DOWN_MASK, corner.x, corner.y, 1, false, MouseEvent.BUTTON1));
+            }
+        });
+    }
+
+    /**
+     * 
+     */
+    @Test(timeout = 8000)
+    public void testTabsTakeNoInputUntilLoaded() {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger presses = new AtomicInteger();
+        final TabbedDialog dialog = new TabbedDialog(new RecordingWorker("first", running, running), new BlockingWorker(release));
+        final JTextField field = new JTextField("field");
+        try {
+            Assert.assertNull(postConstruct(dialog));
+            GUIUtils.runOnEventThread(new Runnable() {
+                public void run() {
+                    dialog.second.add(field);
+                    dialog.second.addMouseListener(new MouseAdapter() {
+                        @Override
+                        public void mousePressed(final MouseEvent e) {
+                            presses.incrementAndGet();
+                        }
+                    });
+                }
+            });
+            show(dialog);
+            awaitLoaded(dialog);
+            selectTab(dialog.tabs, dialog.second);
+            flushEventThread();
+            Assert.assertTrue(isShowing(dialog.placeholders()[0]));
+
+            pressMouseOver(dialog, dialog.second);
+            Assert.assertEquals(0, presses.get());
+            Assert.assertNotSame(field, focusAfter(dialog, dialog.tabs));
+
+            release.countDown();
+            while (dialog.placeholders().length != 0) {
+                ThreadUtils.waitNoInterruption(10);
+            }
+            pressMouseOver(dialog, dialog.second);
+            Assert.assertEquals(1, presses.get());
+            Assert.assertSame(field, focusAfter(dialog, dialog.tabs));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    /**
+     * 
+     */
+    @Test(timeout = 8000)
+    public void testTabsWhoseWorkersCannotStartAreUncovered() {
+        final AtomicInteger running = new AtomicInteger();
+        final TabbedDialog dialog = new TabbedDialog(new RecordingWorker("first", running, running), new RecordingWorker("second", running, running)) {
+            @Override
+            protected void initialise() {
+                super.initialise();
+                // depends on a worker that was never added, so cannot start
+                addTabSwingWorker(tabs, second, new RecordingWorker("unstartable", running, running),
+                    new RecordingWorker("missing", running, running));
+            }
+        };
+        Assert.assertNull(postConstruct(dialog));
+        show(dialog);
+        awaitLoaded(dialog);
+
+        selectTab(dialog.tabs, dialog.second);
+        while (dialog.placeholders().length != 0) {
+            ThreadUtils.waitNoInterruption(10);
+        }
+
+        Assert.assertEquals(Arrays.asList("construct first"), constructions());
+    }
+
     /**
      * @throws InterruptedException
      *         on latch failure
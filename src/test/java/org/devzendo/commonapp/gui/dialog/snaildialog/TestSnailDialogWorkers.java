@@ -0,0 +1,296 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.devzendo.commonapp.gui.dialog.snaildialog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import org.devzendo.commonapp.gui.SwingWorker;
+import org.devzendo.commonapp.gui.SwingWorkerGraph;
+import org.devzendo.commonapp.gui.SwingWorkerScope;
+import org.devzendo.commonapp.gui.dialog.snaildialog.SnailDialogWorkers.Registration;
+import org.devzendo.commoncode.concurrency.ThreadUtils;
+import org.devzendo.commoncode.logging.LoggingUnittestHelper;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the phases and execution policy of a snail dialog's workers, which
+ * need no display.
+ *
+ * @author matt
+ *
+ */
+public final class TestSnailDialogWorkers {
+    private static final long LATCH_TIMEOUT_SECONDS = 5L;
+    private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+    private final SnailDialogWorkers workers = new SnailDialogWorkers();
+    private final SwingWorkerScope scope = new SwingWorkerScope("test");
+
+    /**
+     * 
+     */
+    @BeforeClass
+    public static void setupLogging() {
+        LoggingUnittestHelper.setupLogging();
+    }
+
+    private SwingWorker<String, Void> recordingWorker(final String name) {
+        return new SwingWorker<String, Void>() {
+            @Override
+            public String construct() {
+                events.add("construct " + name);
+                final int now = running.incrementAndGet();
+                synchronized (maxRunning) {
+                    maxRunning.set(Math.max(maxRunning.get(), now));
+                }
+                ThreadUtils.waitNoInterruption(50);
+                running.decrementAndGet();
+                events.add("constructed " + name);
+                return name;
+            }
+        };
+    }
+
+    private void add(final int phase, final SwingWorker<?, ?> worker, final SwingWorker<?, ?>... dependencies) {
+        workers.add(phase, new Registration(worker, dependencies, null, null));
+    }
+
+    private List<SwingWorkerGraph> startAndAwait() throws InterruptedException {
+        final List<Registration> all = new ArrayList<Registration>();
+        final List<SwingWorkerGraph> graphs = workers.createGraphs(all);
+        final CountDownLatch done = new CountDownLatch(all.size());
+        for (final Registration registration : all) {
+            registration.worker.toCompletionStage().whenComplete(new BiConsumer<Object, Throwable>() {
+                public void accept(final Object value, final Throwable throwable) {
+                    done.countDown();
+                }
+            });
+        }
+        SnailDialogWorkers.startInSequence(graphs, all, scope);
+        Assert.assertTrue(done.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        return graphs;
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test(timeout = 8000)
+    public void testWorkersAreExecutedOneAtATimeInOrderByDefault() throws InterruptedException {
+        add(AbstractSnailDialog.DEFAULT_PHASE, recordingWorker("a"));
+        add(AbstractSnailDialog.DEFAULT_PHASE, recordingWorker("b"));
+        add(AbstractSnailDialog.DEFAULT_PHASE, recordingWorker("c"));
+
+        startAndAwait();
+
+        Assert.assertEquals(1, maxRunning.get());
+        Assert.assertEquals(Arrays.asList("construct a", "constructed a", "construct b", "constructed b",
+            "construct c", "constructed c"), events);
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test(timeout = 8000)
+    public void testWorkersRunTogetherWithTheParallelPolicy() throws InterruptedException {
+        workers.setExecutionPolicy(SnailDialogExecutionPolicy.PARALLEL);
+        final CountDownLatch bothRunning = new CountDownLatch(2);
+        final AtomicInteger together = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            add(AbstractSnailDialog.DEFAULT_PHASE, new SwingWorker<Void, Void>() {
+                @Override
+                public Void construct() {
+                    bothRunning.countDown();
+                    try {
+                        if (bothRunning.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                            together.incrementAndGet();
+                        }
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return null;
+                }
+            });
+        }
+
+        startAndAwait();
+
+        Assert.assertEquals(2, together.get());
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test(timeout = 8000)
+    public void testSequentialPhasesAreExecutedOneAfterAnother() throws InterruptedException {
+        workers.setExecutionPolicy(SnailDialogExecutionPolicy.PARALLEL);
+        add(1, recordingWorker("later"));
+        add(0, recordingWorker("earlier"));
+
+        final List<SwingWorkerGraph> graphs = startAndAwait();
+
+        Assert.assertEquals(2, graphs.size());
+        Assert.assertEquals(Arrays.asList("construct earlier", "constructed earlier",
+            "construct later", "constructed later"), events);
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testOverlappingPhasesShareOneGraph() {
+        workers.setExecutionPolicy(SnailDialogExecutionPolicy.UNBOUNDED);
+        add(1, recordingWorker("later"));
+        add(0, recordingWorker("earlier"));
+        final List<Registration> all = new ArrayList<Registration>();
+
+        Assert.assertEquals(1, workers.createGraphs(all).size());
+        Assert.assertEquals(2, all.size());
+    }
+
+    /**
+     * 
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testDependenciesOnWorkersInLaterPhasesAreRejected() {
+        final SwingWorker<String, Void> later = recordingWorker("later");
+        add(1, later);
+        add(0, recordingWorker("earlier"), later);
+    }
+
+    /**
+     * 
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testDependenciesOnWorkersInEarlierPhasesAreRejected() {
+        final SwingWorker<String, Void> earlier = recordingWorker("earlier");
+        add(1, recordingWorker("later"), earlier);
+        add(0, earlier);
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test(timeout = 8000)
+    public void testDependenciesAcrossOverlappingPhasesAreAllowed() throws InterruptedException {
+        workers.setExecutionPolicy(SnailDialogExecutionPolicy.UNBOUNDED);
+        final SwingWorker<String, Void> earlier = recordingWorker("earlier");
+        add(1, recordingWorker("later"), earlier);
+        add(0, earlier);
+
+        startAndAwait();
+
+        Assert.assertEquals(Arrays.asList("construct earlier", "constructed earlier",
+            "construct later", "constructed later"), events);
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testSequentialPhasesCannotBeSetOnceDependenciesCrossPhases() {
+        workers.setExecutionPolicy(SnailDialogExecutionPolicy.UNBOUNDED);
+        final SwingWorker<String, Void> earlier = recordingWorker("earlier");
+        add(1, recordingWorker("later"), earlier);
+        add(0, earlier);
+        try {
+            workers.setExecutionPolicy(SnailDialogExecutionPolicy.DEFAULT);
+            Assert.fail("Sequential phases were allowed");
+        } catch (final IllegalArgumentException iae) {
+            Assert.assertSame(SnailDialogExecutionPolicy.UNBOUNDED, workers.getExecutionPolicy());
+        }
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test(timeout = 8000)
+    public void testLaterPhasesAreNotStartedOnceTheScopeIsClosed() throws InterruptedException {
+        final CountDownLatch earlierRunning = new CountDownLatch(1);
+        final CountDownLatch closed = new CountDownLatch(1);
+        final SwingWorker<String, Void> earlier = new SwingWorker<String, Void>() {
+            @Override
+            public String construct() {
+                earlierRunning.countDown();
+                try {
+                    closed.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "earlier";
+            }
+        };
+        final SwingWorker<String, Void> later = recordingWorker("later");
+        add(0, earlier);
+        add(1, later);
+        final List<Registration> all = new ArrayList<Registration>();
+        final List<SwingWorkerGraph> graphs = workers.createGraphs(all);
+
+        SnailDialogWorkers.startInSequence(graphs, all, scope);
+        Assert.assertTrue(earlierRunning.await(LATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        scope.close();
+        closed.countDown();
+        graphs.get(0).toCompletionStage().toCompletableFuture().join();
+
+        Assert.assertFalse(later.isDone());
+        Assert.assertTrue(events.isEmpty());
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test(timeout = 8000)
+    public void testWorkersOfPhasesThatCannotStartAreCancelled() throws InterruptedException {
+        final SwingWorker<String, Void> earlier = recordingWorker("earlier");
+        final SwingWorker<String, Void> unstartable = recordingWorker("unstartable");
+        final SwingWorker<String, Void> later = recordingWorker("later");
+        add(0, earlier);
+        // depends on a worker that was never added
+        add(1, unstartable, recordingWorker("missing"));
+        add(2, later);
+
+        startAndAwait();
+
+        Assert.assertFalse(earlier.isCancelled());
+        Assert.assertTrue(unstartable.isCancelled());
+        Assert.assertTrue(later.isCancelled());
+        Assert.assertEquals(Arrays.asList("construct earlier", "constructed earlier"), events);
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testUnfinishedWorkersAreThoseNotDone() {
+        final SwingWorker<String, Void> worker = recordingWorker("a");
+        add(0, worker);
+        Assert.assertEquals(Collections.singletonList(worker), workers.getUnfinishedWorkers());
+
+        workers.clear();
+
+        Assert.assertTrue(workers.getUnfinishedWorkers().isEmpty());
+    }
+}
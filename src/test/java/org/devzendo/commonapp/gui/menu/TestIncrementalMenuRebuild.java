@@ -0,0 +1,263 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui.menu;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JMenu;
+import javax.swing.JMenuItem;
+
+import org.devzendo.commoncode.logging.LoggingUnittestHelper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the incremental rebuilding of menus by
+ * AbstractRebuildableMenuGroup.updateMenuItems.
+ *
+ * @author matt
+ *
+ */
+public final class TestIncrementalMenuRebuild {
+    private MenuWiring menuWiring;
+    private WindowMenuGroup windowMenuGroup;
+
+    private static final class WindowMenuGroup extends AbstractRebuildableMenuGroup {
+        private final JMenu windowMenu = new JMenu("Window");
+        private final List<String> databases = new ArrayList<String>();
+        private int lastChanges;
+
+        WindowMenuGroup(final MenuWiring wiring) {
+            super(wiring);
+        }
+
+        @Override
+        public JMenu getJMenu() {
+            return windowMenu;
+        }
+
+        @Override
+        public void rebuildMenuGroup() {
+            final List<MenuItemDescription> menuItems = new ArrayList<MenuItemDescription>();
+            for (int i = 0; i < databases.size(); i++) {
+                final String database = databases.get(i);
+                menuItems.add(new MenuItemDescription(MenuIdentifier.valueOf("Window" + database),
+                    (i + 1) + " " + database, Character.forDigit(i + 1, 10)));
+            }
+            lastChanges = updateMenuItems(windowMenu, menuItems);
+        }
+
+        void setDatabases(final String... names) {
+            databases.clear();
+            for (final String name : names) {
+                databases.add(name);
+            }
+            rebuildMenuGroup();
+        }
+    }
+
+    /**
+     * 
+     */
+    @BeforeClass
+    public static void setupLogging() {
+        LoggingUnittestHelper.setupLogging();
+    }
+
+    /**
+     * 
+     */
+    @Before
+    public void getMenuGroup() {
+        menuWiring = new MenuWiring();
+        windowMenuGroup = new WindowMenuGroup(menuWiring);
+    }
+
+    private static void collectGarbage() throws InterruptedException {
+        System.gc();
+        Thread.sleep(20);
+    }
+
+    private JMenuItem itemAt(final int index) {
+        return (JMenuItem) windowMenuGroup.getJMenu().getMenuComponent(index);
+    }
+
+    private JMenuItem itemFor(final String database) {
+        return menuWiring.getMenuItem(MenuIdentifier.valueOf("Window" + database));
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testFirstUpdateCreatesAllItems() {
+        windowMenuGroup.setDatabases("accounts", "contacts");
+        Assert.assertEquals(2, windowMenuGroup.lastChanges);
+        Assert.assertEquals(2, windowMenuGroup.getJMenu().getMenuComponentCount());
+        Assert.assertEquals("1 accounts", itemAt(0).getText());
+        Assert.assertEquals("2 contacts", itemAt(1).getText());
+        Assert.assertSame(itemFor("contacts"), itemAt(1));
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testUnchangedUpdateChangesNothing() {
+        windowMenuGroup.setDatabases("accounts", "contacts");
+        final JMenuItem accounts = itemAt(0);
+        windowMenuGroup.setDatabases("accounts", "contacts");
+        Assert.assertEquals(0, windowMenuGroup.lastChanges);
+        Assert.assertSame(accounts, itemAt(0));
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testAppendingOnlyInsertsTheNewItem() {
+        windowMenuGroup.setDatabases("accounts", "contacts");
+        final JMenuItem accounts = itemAt(0);
+        final JMenuItem contacts = itemAt(1);
+        windowMenuGroup.setDatabases("accounts", "contacts", "orders");
+        Assert.assertEquals(1, windowMenuGroup.lastChanges);
+        Assert.assertSame(accounts, itemAt(0));
+        Assert.assertSame(contacts, itemAt(1));
+        Assert.assertEquals("3 orders", itemAt(2).getText());
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testRemovedItemsLeaveTheMenuAndTheWiring() {
+        windowMenuGroup.setDatabases("accounts", "contacts", "orders");
+        final JMenuItem orders = itemAt(2);
+        windowMenuGroup.setDatabases("accounts", "orders");
+        Assert.assertEquals(2, windowMenuGroup.getJMenu().getMenuComponentCount());
+        Assert.assertNull(itemFor("contacts"));
+        Assert.assertSame(orders, itemAt(1));
+        Assert.assertEquals("2 orders", orders.getText());
+        Assert.assertEquals('2', orders.getMnemonic());
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test
+    public void testIdentifiersOfRemovedItemsAreNotHeld() throws InterruptedException {
+        windowMenuGroup.setDatabases("accounts", "contacts");
+        final WeakReference<MenuIdentifier> contacts =
+            new WeakReference<MenuIdentifier>(MenuIdentifier.valueOf("Windowcontacts"));
+        windowMenuGroup.setDatabases("accounts");
+        for (int i = 0; i < 50 && contacts.get() != null; i++) {
+            collectGarbage();
+        }
+        Assert.assertNull(contacts.get());
+        Assert.assertNotNull(itemFor("accounts"));
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test
+    public void testDiscardedMenusAreNotHeld() throws InterruptedException {
+        final WeakReference<JMenu> discarded = updateAndEmptyAMenu();
+        for (int i = 0; i < 50 && discarded.get() != null; i++) {
+            collectGarbage();
+        }
+        Assert.assertNull(discarded.get());
+    }
+
+    private WeakReference<JMenu> updateAndEmptyAMenu() {
+        final JMenu menu = new JMenu("Recent");
+        final List<MenuItemDescription> menuItems = new ArrayList<MenuItemDescription>();
+        menuItems.add(new MenuItemDescription(MenuIdentifier.valueOf("RecentAccounts"), "1 accounts", '1'));
+        Assert.assertEquals(1, windowMenuGroup.updateMenuItems(menu, menuItems));
+        Assert.assertEquals(1, windowMenuGroup.updateMenuItems(menu, new ArrayList<MenuItemDescription>()));
+        return new WeakReference<JMenu>(menu);
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testReorderedItemsAreReusedWithTheirActionListeners() {
+        windowMenuGroup.setDatabases("accounts", "contacts");
+        final JMenuItem contacts = itemFor("contacts");
+        final int[] actions = new int[] {0};
+        menuWiring.setActionListener(MenuIdentifier.valueOf("Windowcontacts"), new ActionListener() {
+            public void actionPerformed(final ActionEvent e) {
+                actions[0]++;
+            }
+        });
+
+        windowMenuGroup.setDatabases("contacts", "accounts");
+        Assert.assertSame(contacts, itemAt(0));
+        Assert.assertEquals("1 contacts", contacts.getText());
+
+        menuWiring.triggerActionListener(MenuIdentifier.valueOf("Windowcontacts"));
+        Assert.assertEquals(1, actions[0]);
+    }
+
+    private List<MenuItemDescription> describe(final String... names) {
+        final List<MenuItemDescription> menuItems = new ArrayList<MenuItemDescription>();
+        for (final String name : names) {
+            menuItems.add(new MenuItemDescription(MenuIdentifier.valueOf("Edit" + name), name, name.charAt(0)));
+        }
+        return menuItems;
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testLowerCaseMnemonicsAreUnchangedByUpdates() {
+        final JMenu menu = new JMenu("Edit");
+        Assert.assertEquals(2, windowMenuGroup.updateMenuItems(menu, describe("cut", "paste")));
+        Assert.assertEquals(0, windowMenuGroup.updateMenuItems(menu, describe("cut", "paste")));
+        Assert.assertEquals(0, windowMenuGroup.updateMenuItems(menu, describe("cut", "paste")));
+        Assert.assertEquals('C', ((JMenuItem) menu.getMenuComponent(0)).getMnemonic());
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testOnlyDisplacedItemsAreMoved() {
+        final JMenu menu = new JMenu("Edit");
+        windowMenuGroup.updateMenuItems(menu, describe("a", "b", "c", "d", "e"));
+        final JMenuItem b = (JMenuItem) menu.getMenuComponent(1);
+
+        Assert.assertEquals(1, windowMenuGroup.updateMenuItems(menu, describe("b", "c", "d", "e", "a")));
+        Assert.assertSame(b, menu.getMenuComponent(0));
+        Assert.assertEquals(2, windowMenuGroup.updateMenuItems(menu, describe("b", "e", "d", "c", "a")));
+        Assert.assertEquals(4, windowMenuGroup.updateMenuItems(menu, describe("a", "x", "b", "c", "d", "e")));
+        final StringBuilder order = new StringBuilder();
+        for (int i = 0; i < menu.getMenuComponentCount(); i++) {
+            order.append(((JMenuItem) menu.getMenuComponent(i)).getText());
+        }
+        Assert.assertEquals("axbcde", order.toString());
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui.menu;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.swing.JMenu;
+import javax.swing.JMenuItem;
+
+import org.devzendo.commonapp.gui.GUIUtils;
+import org.devzendo.commoncode.logging.LoggingUnittestHelper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the lazy population of menus, and the MenuWiring's handling of
+ * menu items that have been declared but not yet built.
+ *
+ * @author matt
+ *
+ */
+public final class TestLazyMenuPopulation {
+    private static final MenuIdentifier TOOLS_OPTIONS = new MenuIdentifier("ToolsOptions");
+    private static final MenuIdentifier TOOLS_PLUGINS = new MenuIdentifier("ToolsPlugins");
+    private MenuWiring menuWiring;
+    private ToolsMenuGroup toolsMenuGroup;
+
+    private static final class ToolsMenuGroup extends AbstractMenuGroup {
+        private final JMenu toolsMenu;
+        private int builds;
+
+        ToolsMenuGroup(final MenuWiring wiring) {
+            super(wiring);
+            toolsMenu = new JMenu("Tools");
+            populateOnFirstSelection(toolsMenu, new LazyMenuBuilder() {
+                public void buildMenu(final JMenu menu) {
+                    builds++;
+                    createMenuItem(TOOLS_OPTIONS, "Options...", 'O', menu);
+                    createMenuItem(TOOLS_PLUGINS, "Plugins...", 'P', menu);
+                }
+            }, TOOLS_OPTIONS, TOOLS_PLUGINS);
+        }
+
+        @Override
+        public JMenu getJMenu() {
+            return toolsMenu;
+        }
+    }
+
+    /**
+     * 
+     */
+    @BeforeClass
+    public static void setupLogging() {
+        LoggingUnittestHelper.setupLogging();
+    }
+
+    /**
+     * 
+     */
+    @Before
+    public void getMenuGroup() {
+        menuWiring = new MenuWiring();
+        GUIUtils.runOnEventThread(new Runnable() {
+            public void run() {
+                toolsMenuGroup = new ToolsMenuGroup(menuWiring);
+            }
+        });
+    }
+
+    private void selectToolsMenu() {
+        GUIUtils.runOnEventThread(new Runnable() {
+            public void run() {
+                toolsMenuGroup.getJMenu().setSelected(true);
+                toolsMenuGroup.getJMenu().setSelected(false);
+            }
+        });
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testMenuIsBuiltOnceOnFirstSelection() {
+        Assert.assertEquals(0, toolsMenuGroup.getJMenu().getItemCount());
+        Assert.assertNull(menuWiring.getMenuItem(TOOLS_OPTIONS));
+
+        selectToolsMenu();
+        Assert.assertEquals(2, toolsMenuGroup.getJMenu().getItemCount());
+        Assert.assertNotNull(menuWiring.getMenuItem(TOOLS_OPTIONS));
+
+        selectToolsMenu();
+        Assert.assertEquals(1, toolsMenuGroup.builds);
+        Assert.assertEquals(2, toolsMenuGroup.getJMenu().getItemCount());
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testEnabledStateIsKeptUntilTheItemIsBuilt() {
+        menuWiring.disableMenuItem(TOOLS_PLUGINS);
+        Assert.assertFalse(menuWiring.isMenuItemEnabled(TOOLS_PLUGINS));
+        Assert.assertTrue(menuWiring.isMenuItemEnabled(TOOLS_OPTIONS));
+
+        selectToolsMenu();
+        Assert.assertFalse(menuWiring.getMenuItem(TOOLS_PLUGINS).isEnabled());
+        Assert.assertTrue(menuWiring.getMenuItem(TOOLS_OPTIONS).isEnabled());
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testWholeStateIsKeptUntilTheItemIsBuilt() {
+        final Map<MenuIdentifier, MenuItemState> states = new HashMap<MenuIdentifier, MenuItemState>();
+        states.put(TOOLS_OPTIONS, new MenuItemState(null, Boolean.FALSE, null));
+        states.put(TOOLS_PLUGINS, new MenuItemState(null, null, "Extensions..."));
+        Assert.assertEquals(2, menuWiring.applyMenuItemStates(states));
+        menuWiring.disableMenuItem(TOOLS_PLUGINS);
+        // already pending, so not changed again
+        Assert.assertEquals(0, menuWiring.applyMenuItemStates(states));
+
+        selectToolsMenu();
+        final JMenuItem optionsItem = menuWiring.getMenuItem(TOOLS_OPTIONS);
+        Assert.assertFalse(optionsItem.isVisible());
+        Assert.assertTrue(optionsItem.isEnabled());
+        Assert.assertEquals("Options...", optionsItem.getText());
+        final JMenuItem pluginsItem = menuWiring.getMenuItem(TOOLS_PLUGINS);
+        Assert.assertTrue(pluginsItem.isVisible());
+        Assert.assertFalse(pluginsItem.isEnabled());
+        Assert.assertEquals("Extensions...", pluginsItem.getText());
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testActionListenersCanBeTriggeredBeforeAndAfterTheItemIsBuilt() {
+        final Object[] sources = new Object[2];
+        final int[] count = new int[] {0};
+        menuWiring.setActionListener(TOOLS_OPTIONS, new ActionListener() {
+            public void actionPerformed(final ActionEvent e) {
+                sources[count[0]++] = e.getSource();
+            }
+        });
+
+        menuWiring.triggerActionListener(TOOLS_OPTIONS);
+        selectToolsMenu();
+        menuWiring.triggerActionListener(TOOLS_OPTIONS);
+
+        Assert.assertEquals(2, count[0]);
+        Assert.assertSame(TOOLS_OPTIONS, sources[0]);
+        Assert.assertSame(menuWiring.getMenuItem(TOOLS_OPTIONS), sources[1]);
+    }
+
+    /**
+     * 
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testUndeclaredItemsStillCannotBeEnabled() {
+        menuWiring.enableMenuItem(new MenuIdentifier("ToolsNeverDeclared"));
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui.menu;
+
+import javax.swing.JMenuItem;
+
+import org.devzendo.commonapp.gui.GUIUtils;
+import org.devzendo.commoncode.logging.LoggingUnittestHelper;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the MenuEnablementRules.
+ *
+ * @author matt
+ *
+ */
+public final class TestMenuEnablementRules {
+    private static final MenuIdentifier FILE_SAVE = new MenuIdentifier("FileSave");
+    private static final MenuIdentifier EDIT_DELETE = new MenuIdentifier("EditDelete");
+    private MenuWiring menuWiring;
+    private MenuEnablementRules rules;
+    private JMenuItem saveItem;
+    private JMenuItem deleteItem;
+
+    /**
+     * 
+     */
+    @BeforeClass
+    public static void setupLogging() {
+        LoggingUnittestHelper.setupLogging();
+    }
+
+    /**
+     * 
+     */
+    @Before
+    public void getRules() {
+        menuWiring = new MenuWiring();
+        saveItem = menuWiring.createMenuItem(FILE_SAVE, "Save", 'S');
+        deleteItem = menuWiring.createMenuItem(EDIT_DELETE, "Delete", 'D');
+        rules = new MenuEnablementRules(menuWiring);
+    }
+
+    private void onEventThread(final Runnable runnable) {
+        GUIUtils.runOnEventThread(runnable);
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testRulesAreEvaluatedWhenDeclared() {
+        onEventThread(new Runnable() {
+            public void run() {
+                rules.setRule(FILE_SAVE, new MenuEnablementRule() {
+                    public boolean isEnabled(final MenuFacts facts) {
+                        return facts.isTrue("documentOpen");
+                    }
+                });
+            }
+        });
+        Assert.assertFalse(saveItem.isEnabled());
+        Assert.assertTrue(deleteItem.isEnabled());
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testOnlyDependentRulesAreEvaluatedWhenFactsChange() {
+        onEventThread(new Runnable() {
+            public void run() {
+                rules.setRule(FILE_SAVE, new MenuEnablementRule() {
+                    public boolean isEnabled(final MenuFacts facts) {
+                        return facts.isTrue("documentModified");
+                    }
+                });
+                rules.setRule(EDIT_DELETE, new MenuEnablementRule() {
+                    public boolean isEnabled(final MenuFacts facts) {
+                        return facts.getFact("selection") != null;
+                    }
+                });
+            }
+        });
+        Assert.assertEquals(2, rules.getEvaluationCount());
+
+        onEventThread(new Runnable() {
+            public void run() {
+                rules.setFact("documentModified", Boolean.TRUE);
+            }
+        });
+        Assert.assertEquals(3, rules.getEvaluationCount());
+        Assert.assertTrue(saveItem.isEnabled());
+        Assert.assertFalse(deleteItem.isEnabled());
+
+        onEventThread(new Runnable() {
+            public void run() {
+                rules.setFact("documentModified", Boolean.TRUE); // unchanged
+                rules.setFact("unrelated", "fact");
+            }
+        });
+        Assert.assertEquals(3, rules.getEvaluationCount());
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testDependenciesFollowTheFactsLastRead() {
+        onEventThread(new Runnable() {
+            public void run() {
+                rules.setRule(EDIT_DELETE, new MenuEnablementRule() {
+                    public boolean isEnabled(final MenuFacts facts) {
+                        return facts.isTrue("editable") && facts.isTrue("hasSelection");
+                    }
+                });
+            }
+        });
+        // "hasSelection" was not read while "editable" is false
+        onEventThread(new Runnable() {
+            public void run() {
+                rules.setFact("hasSelection", Boolean.TRUE);
+            }
+        });
+        Assert.assertEquals(1, rules.getEvaluationCount());
+        Assert.assertFalse(deleteItem.isEnabled());
+
+        onEventThread(new Runnable() {
+            public void run() {
+                rules.setFact("editable", Boolean.TRUE);
+            }
+        });
+        Assert.assertEquals(2, rules.getEvaluationCount());
+        Assert.assertTrue(deleteItem.isEnabled());
+
+        onEventThread(new Runnable() {
+            public void run() {
+                rules.setFact("hasSelection", Boolean.FALSE);
+            }
+        });
+        Assert.assertEquals(3, rules.getEvaluationCount());
+        Assert.assertFalse(deleteItem.isEnabled());
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testRulesMayUseTheRulesFromOtherThreads() {
+        final boolean[] factRead = new boolean[] {false};
+        onEventThread(new Runnable() {
+            public void run() {
+                rules.setRule(FILE_SAVE, new MenuEnablementRule() {
+                    public boolean isEnabled(final MenuFacts facts) {
+                        final Thread reader = new Thread(new Runnable() {
+                            public void run() {
+                                rules.getFact("documentOpen");
+                            }
+                        });
+                        reader.start();
+                        try {
+                            reader.join(5000);
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        factRead[0] = !reader.isAlive();
+                        return facts.isTrue("documentOpen");
+                    }
+                });
+            }
+        });
+        Assert.assertTrue(factRead[0]);
+        Assert.assertFalse(saveItem.isEnabled());
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testRulesWhoseFactsChangeWhileEvaluatingAreEvaluatedAgain() {
+        onEventThread(new Runnable() {
+            public void run() {
+                rules.setRule(FILE_SAVE, new MenuEnablementRule() {
+                    public boolean isEnabled(final MenuFacts facts) {
+                        final boolean documentOpen = facts.isTrue("documentOpen");
+                        if (!documentOpen) {
+                            // as if set by another thread, before this
+                            // rule's dependencies are known
+                            rules.setFact("documentOpen", Boolean.TRUE);
+                        }
+                        return documentOpen;
+                    }
+                });
+            }
+        });
+        Assert.assertEquals(2, rules.getEvaluationCount());
+        Assert.assertTrue(saveItem.isEnabled());
+    }
+}
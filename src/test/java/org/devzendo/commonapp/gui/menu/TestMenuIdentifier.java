@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui.menu;
+
+import java.lang.ref.WeakReference;
+
+import javax.swing.JMenuItem;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+/**
+ * Tests the identity, ids and interning of MenuIdentifiers.
+ *
+ * @author matt
+ *
+ */
+public final class TestMenuIdentifier {
+    /**
+     * 
+     */
+    @Test
+    public void testValueOfReturnsTheCanonicalInstance() {
+        Assert.assertSame(MenuIdentifier.valueOf("ViewZoom"), MenuIdentifier.valueOf("ViewZoom"));
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testIdentifiersWithTheSameNameAreEqualAndShareAnId() {
+        final MenuIdentifier constructed = new MenuIdentifier("ViewPan");
+        final MenuIdentifier canonical = MenuIdentifier.valueOf("ViewPan");
+        Assert.assertEquals(constructed, canonical);
+        Assert.assertEquals(constructed.hashCode(), canonical.hashCode());
+        Assert.assertEquals(constructed.getId(), canonical.getId());
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testIdentifiersWithDifferentNamesDiffer() {
+        final MenuIdentifier first = new MenuIdentifier("ViewRotateLeft");
+        final MenuIdentifier second = new MenuIdentifier("ViewRotateRight");
+        Assert.assertFalse(first.equals(second));
+        Assert.assertFalse(first.getId() == second.getId());
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testWiringFindsItemsByAnyEqualIdentifier() {
+        final MenuWiring menuWiring = new MenuWiring();
+        // enough identifiers to grow the wiring's storage
+        for (int i = 0; i < 200; i++) {
+            menuWiring.createMenuItem(new MenuIdentifier("Growth" + i), "Growth " + i, 'G');
+        }
+        for (int i = 0; i < 200; i++) {
+            Assert.assertEquals("Growth " + i,
+                menuWiring.getMenuItem(MenuIdentifier.valueOf("Growth" + i)).getText());
+        }
+        Assert.assertNull(menuWiring.getMenuItem(MenuIdentifier.valueOf("NeverWired")));
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test
+    public void testNamesNoLongerReferencedAreForgotten() throws InterruptedException {
+        final WeakReference<MenuIdentifier> canonical =
+            new WeakReference<MenuIdentifier>(MenuIdentifier.valueOf("Transient"));
+        for (int i = 0; i < 50 && canonical.get() != null; i++) {
+            collectGarbage();
+        }
+        Assert.assertNull(canonical.get());
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test
+    public void testMeasuredNamesAreForgotten() throws InterruptedException {
+        final MenuActionMetrics metrics = new MenuActionMetrics();
+        metrics.invoked(new MenuIdentifier("Measured"));
+        final WeakReference<MenuIdentifier> canonical =
+            new WeakReference<MenuIdentifier>(MenuIdentifier.valueOf("Measured"));
+        for (int i = 0; i < 50 && canonical.get() != null; i++) {
+            collectGarbage();
+        }
+        Assert.assertNull(canonical.get());
+        Assert.assertEquals(1, metrics.getMetrics(MenuIdentifier.valueOf("Measured")).getInvocationCount());
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test
+    public void testWiredNamesAreKept() throws InterruptedException {
+        final MenuWiring menuWiring = new MenuWiring();
+        final JMenuItem menuItem = menuWiring.createMenuItem(new MenuIdentifier("Wired"), "Wired", 'W');
+        final WeakReference<MenuIdentifier> canonical =
+            new WeakReference<MenuIdentifier>(MenuIdentifier.valueOf("Wired"));
+        for (int i = 0; i < 5; i++) {
+            collectGarbage();
+        }
+        Assert.assertNotNull(canonical.get());
+        Assert.assertSame(menuItem, menuWiring.getMenuItem(new MenuIdentifier("Wired")));
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test
+    public void testIdsOfRemovedDynamicItemsAreReused() throws InterruptedException {
+        final MenuWiring menuWiring = new MenuWiring();
+        int highestId = 0;
+        for (int i = 0; i < 2000; i++) {
+            final MenuIdentifier menuIdentifier = new MenuIdentifier("Dynamic" + i);
+            highestId = Math.max(highestId, menuIdentifier.getId());
+            menuWiring.createMenuItem(menuIdentifier, "Dynamic " + i, 'D');
+            Assert.assertNotNull(menuWiring.removeMenuItem(menuIdentifier));
+            if (i % 100 == 99) {
+                collectGarbage();
+            }
+        }
+        Assert.assertTrue("ids reached " + highestId, highestId < 1000);
+    }
+
+    private static void collectGarbage() throws InterruptedException {
+        System.gc();
+        // collected references are queued, and their ids freed, asynchronously
+        Thread.sleep(20);
+    }
+}
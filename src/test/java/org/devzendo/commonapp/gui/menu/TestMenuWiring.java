@@ -18,8 +18,15 @@ package org.devzendo.commonapp.gui.menu;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.JMenuItem;
+import javax.swing.SwingUtilities;
 
 import org.devzendo.commoncode.logging.LoggingUnittestHelper;
 import org.junit.Assert;
@@ -311,4 +318,228 @@ public final class TestMenuWiring {
         final JMenuItem replacedMI = menuWiring.replaceMenuItem(TestMenuWiring.FILE_CLOSE, "Close", 'C');
         Assert.assertNotSame(newMI, replacedMI);
     }
+
+    /**
+     * 
+     */
+    @Test
+    public void testActionsAreMeasured() {
+        final JMenuItem menuItem = new JMenuItem();
+        menuWiring.storeMenuItem(TestMenuWiring.FILE_CLOSE, menuItem);
+        menuWiring.setActionListener(TestMenuWiring.FILE_CLOSE, new ActionListener() {
+            public void actionPerformed(final ActionEvent e) {
+                Assert.assertEquals(TestMenuWiring.FILE_CLOSE, ((MenuActionEvent) e).getMenuIdentifier());
+            }
+        });
+        menuWiring.injectActionEvent(TestMenuWiring.FILE_CLOSE, new ActionEvent(menuItem, 69, "wahey"));
+        menuWiring.triggerActionListener(TestMenuWiring.FILE_CLOSE);
+
+        final MenuActionMetrics.MenuItemMetrics metrics = menuWiring.getActionMetrics().getMetrics(TestMenuWiring.FILE_CLOSE);
+        Assert.assertEquals(2, metrics.getInvocationCount());
+        Assert.assertEquals(2, metrics.getLatency().getCount());
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testDeferredActionsAreMeasuredWhenFinished() {
+        final JMenuItem menuItem = new JMenuItem();
+        menuWiring.storeMenuItem(TestMenuWiring.FILE_CLOSE, menuItem);
+        final MenuActionEvent[] result = new MenuActionEvent[] {null};
+        menuWiring.setActionListener(TestMenuWiring.FILE_CLOSE, new ActionListener() {
+            public void actionPerformed(final ActionEvent e) {
+                result[0] = (MenuActionEvent) e;
+                result[0].deferCompletion();
+            }
+        });
+        menuWiring.triggerActionListener(TestMenuWiring.FILE_CLOSE);
+
+        final MenuActionMetrics.MenuItemMetrics metrics = menuWiring.getActionMetrics().getMetrics(TestMenuWiring.FILE_CLOSE);
+        Assert.assertEquals(1, metrics.getInvocationCount());
+        Assert.assertEquals(0, metrics.getLatency().getCount());
+        result[0].actionFinished();
+        Assert.assertEquals(1, metrics.getLatency().getCount());
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testDroppedActionsAreCountedButNotMeasured() {
+        final JMenuItem menuItem = new JMenuItem();
+        menuWiring.storeMenuItem(TestMenuWiring.FILE_CLOSE, menuItem);
+        final int[] invocations = new int[] {0};
+        menuWiring.setActionListener(TestMenuWiring.FILE_CLOSE, new ActionListener() {
+            public void actionPerformed(final ActionEvent e) {
+                if (invocations[0]++ > 0) {
+                    ((MenuActionEvent) e).dropped();
+                }
+            }
+        });
+        menuWiring.triggerActionListener(TestMenuWiring.FILE_CLOSE);
+        menuWiring.triggerActionListener(TestMenuWiring.FILE_CLOSE);
+        menuWiring.triggerActionListener(TestMenuWiring.FILE_CLOSE);
+
+        final MenuActionMetrics.MenuItemMetrics metrics = menuWiring.getActionMetrics().getMetrics(TestMenuWiring.FILE_CLOSE);
+        Assert.assertEquals(3, metrics.getInvocationCount());
+        Assert.assertEquals(2, metrics.getDroppedCount());
+        Assert.assertEquals(1, metrics.getLatency().getCount());
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test
+    public void testStoppingThePeriodicSummaryEndsItsThread() throws InterruptedException {
+        final MenuActionMetrics metrics = menuWiring.getActionMetrics();
+        metrics.startPeriodicSummary(1, TimeUnit.MILLISECONDS);
+        metrics.startPeriodicSummary(1, TimeUnit.MILLISECONDS);
+        Thread.sleep(50);
+        metrics.stopPeriodicSummary();
+        for (int i = 0; i < 100 && isSummaryThreadAlive(); i++) {
+            Thread.sleep(20);
+        }
+        Assert.assertFalse(isSummaryThreadAlive());
+    }
+
+    private boolean isSummaryThreadAlive() {
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("MenuActionMetricsSummary") && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test(timeout = 8000)
+    public void testSlowActionsDoNotBlockTheWiring() throws InterruptedException {
+        final JMenuItem menuItem = new JMenuItem();
+        menuWiring.storeMenuItem(TestMenuWiring.FILE_CLOSE, menuItem);
+        final CountDownLatch actionStarted = new CountDownLatch(1);
+        final CountDownLatch releaseAction = new CountDownLatch(1);
+        menuWiring.setActionListener(TestMenuWiring.FILE_CLOSE, new ActionListener() {
+            public void actionPerformed(final ActionEvent e) {
+                actionStarted.countDown();
+                try {
+                    releaseAction.await();
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        final Thread actionThread = new Thread(new Runnable() {
+            public void run() {
+                menuWiring.triggerActionListener(TestMenuWiring.FILE_CLOSE);
+            }
+        });
+        actionThread.start();
+        actionStarted.await();
+        try {
+            Assert.assertSame(menuItem, menuWiring.getMenuItem(TestMenuWiring.FILE_CLOSE));
+            menuWiring.disableMenuItem(TestMenuWiring.FILE_CLOSE);
+            menuWiring.setActionListener(TestMenuWiring.FILE_CLOSE, null);
+            Assert.assertFalse(menuWiring.isMenuItemEnabled(TestMenuWiring.FILE_CLOSE));
+        } finally {
+            releaseAction.countDown();
+        }
+        actionThread.join();
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testBatchUpdatesOnlyChangeItemsThatDiffer() {
+        final MenuIdentifier fileOpen = new MenuIdentifier("FileOpen");
+        final MenuIdentifier fileSave = new MenuIdentifier("FileSave");
+        final JMenuItem closeItem = menuWiring.createMenuItem(TestMenuWiring.FILE_CLOSE, "Close", 'C');
+        final JMenuItem openItem = menuWiring.createMenuItem(fileOpen, "Open", 'O');
+        final Map<MenuIdentifier, MenuItemState> states = new HashMap<MenuIdentifier, MenuItemState>();
+        states.put(TestMenuWiring.FILE_CLOSE, MenuItemState.enabled(false));
+        states.put(fileOpen, new MenuItemState(Boolean.TRUE, null, "Open..."));
+        states.put(fileSave, MenuItemState.enabled(false)); // no menu item yet
+
+        Assert.assertEquals(3, menuWiring.applyMenuItemStates(states));
+        Assert.assertFalse(closeItem.isEnabled());
+        Assert.assertTrue(openItem.isEnabled());
+        Assert.assertEquals("Open...", openItem.getText());
+
+        Assert.assertEquals(0, menuWiring.applyMenuItemStates(states));
+        Assert.assertFalse(menuWiring.createMenuItem(fileSave, "Save", 'S').isEnabled());
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test
+    public void testBatchUpdateListenersMayUseTheWiringFromOtherThreads() throws InterruptedException {
+        final JMenuItem closeItem = menuWiring.createMenuItem(TestMenuWiring.FILE_CLOSE, "Close", 'C');
+        final boolean[] wiringUsed = new boolean[] {false};
+        closeItem.addPropertyChangeListener("enabled", new PropertyChangeListener() {
+            public void propertyChange(final PropertyChangeEvent evt) {
+                final Thread user = new Thread(new Runnable() {
+                    public void run() {
+                        menuWiring.declareMenuItem(new MenuIdentifier("FileSave"));
+                    }
+                });
+                user.start();
+                try {
+                    user.join(5000);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                wiringUsed[0] = !user.isAlive();
+            }
+        });
+        final Map<MenuIdentifier, MenuItemState> states = new HashMap<MenuIdentifier, MenuItemState>();
+        states.put(TestMenuWiring.FILE_CLOSE, MenuItemState.enabled(false));
+
+        Assert.assertEquals(1, menuWiring.applyMenuItemStates(states));
+        Assert.assertTrue(wiringUsed[0]);
+    }
+
+    /**
+     * @throws Exception on failure
+     */
+    @Test
+    public void testBatchUpdatesOnTheEventThreadReturnTheCount() throws Exception {
+        final JMenuItem closeItem = menuWiring.createMenuItem(TestMenuWiring.FILE_CLOSE, "Close", 'C');
+        final Map<MenuIdentifier, MenuItemState> states = new HashMap<MenuIdentifier, MenuItemState>();
+        states.put(TestMenuWiring.FILE_CLOSE, MenuItemState.enabled(false));
+        final int[] changed = new int[] {-1};
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                changed[0] = menuWiring.applyMenuItemStates(states);
+            }
+        });
+        Assert.assertEquals(1, changed[0]);
+        Assert.assertFalse(closeItem.isEnabled());
+    }
+
+    /**
+     * 
+     */
+    @Test
+    public void testBatchUpdateFailuresOffTheEventThreadAreRethrown() {
+        Assert.assertFalse(SwingUtilities.isEventDispatchThread());
+        final JMenuItem closeItem = menuWiring.createMenuItem(TestMenuWiring.FILE_CLOSE, "Close", 'C');
+        final IllegalStateException failure = new IllegalStateException("listener failed");
+        closeItem.addPropertyChangeListener("enabled", new PropertyChangeListener() {
+            public void propertyChange(final PropertyChangeEvent evt) {
+                throw failure;
+            }
+        });
+        final Map<MenuIdentifier, MenuItemState> states = new HashMap<MenuIdentifier, MenuItemState>();
+        states.put(TestMenuWiring.FILE_CLOSE, MenuItemState.enabled(false));
+        try {
+            menuWiring.applyMenuItemStates(states);
+            Assert.fail("The listener's exception was not rethrown");
+        } catch (final IllegalStateException e) {
+            Assert.assertSame(failure, e);
+        }
+    }
 }
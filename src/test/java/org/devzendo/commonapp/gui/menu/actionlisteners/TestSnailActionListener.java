@@ -0,0 +1,404 @@
+/**
+ * Copyright (C) 2008-2010 Matt Gumbley, DevZendo.org http://devzendo.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.devzendo.commonapp.gui.menu.actionlisteners;
+
+import java.awt.EventQueue;
+import java.awt.event.ActionEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.JFrame;
+import javax.swing.JMenuItem;
+
+import org.devzendo.commonapp.gui.CursorManager;
+import org.devzendo.commonapp.gui.GUIUtils;
+import org.devzendo.commonapp.gui.SwingWorkerExecutors;
+import org.devzendo.commonapp.gui.menu.MenuActionMetrics;
+import org.devzendo.commonapp.gui.menu.MenuIdentifier;
+import org.devzendo.commonapp.gui.menu.MenuWiring;
+import org.devzendo.commoncode.concurrency.ThreadUtils;
+import org.devzendo.commoncode.logging.LoggingUnittestHelper;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests the SnailActionListener's debouncing and reentrancy policies.
+ *
+ * @author matt
+ *
+ */
+public final class TestSnailActionListener {
+    private final List<String> performed = Collections.synchronizedList(new ArrayList<String>());
+    private volatile int hourglasses;
+    private volatile int normals;
+
+    private final CursorManager cursorManager = new CursorManager() {
+        public JFrame getMainFrame() {
+            return null;
+        }
+
+        public void setMainFrame(final JFrame mainFrame) {
+        }
+
+        public void shutdown() {
+        }
+
+        public void hourglass(final String caller) {
+            hourglasses++;
+        }
+
+        public void hourglassViaEventThread(final String caller) {
+            hourglasses++;
+        }
+
+        public void normal(final String caller) {
+            normals++;
+        }
+
+        public void normalViaEventThread(final String caller) {
+            normals++;
+        }
+    };
+
+    /**
+     * 
+     */
+    @BeforeClass
+    public static void setupLogging() {
+        LoggingUnittestHelper.setupLogging();
+    }
+
+    private SnailActionListener recordingListener(final ReentrancyPolicy policy, final long debounceMilliseconds) {
+        return new SnailActionListener(cursorManager, policy, debounceMilliseconds) {
+            @Override
+            public void actionPerformedSlowly(final ActionEvent e) {
+                performed.add(e.getActionCommand());
+            }
+        };
+    }
+
+    private static void clickThrice(final SnailActionListener listener) {
+        GUIUtils.runOnEventThread(new Runnable() {
+            public void run() {
+                listener.actionPerformed(new ActionEvent(listener, ActionEvent.ACTION_PERFORMED, "1"));
+                listener.actionPerformed(new ActionEvent(listener, ActionEvent.ACTION_PERFORMED, "2"));
+                listener.actionPerformed(new ActionEvent(listener, ActionEvent.ACTION_PERFORMED, "3"));
+            }
+        });
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test(timeout = 8000)
+    public void testInvocationsWhilePerformingAreDropped() throws InterruptedException {
+        clickThrice(recordingListener(ReentrancyPolicy.DROP, 0));
+        flushEventThread();
+
+        Assert.assertEquals(Collections.singletonList("1"), performed);
+        Assert.assertEquals(1, hourglasses);
+        Assert.assertEquals(1, normals);
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test(timeout = 8000)
+    public void testInvocationsWhilePerformingAreCoalesced() throws InterruptedException {
+        clickThrice(recordingListener(ReentrancyPolicy.COALESCE, 0));
+        flushEventThread();
+
+        Assert.assertEquals(2, performed.size());
+        Assert.assertEquals("1", performed.get(0));
+        Assert.assertEquals("3", performed.get(1));
+        Assert.assertEquals(hourglasses, normals);
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test(timeout = 8000)
+    public void testInvocationsWhilePerformingAreQueued() throws InterruptedException {
+        clickThrice(recordingListener(ReentrancyPolicy.QUEUE, 0));
+        flushEventThread();
+
+        Assert.assertEquals(3, performed.size());
+        Assert.assertEquals("3", performed.get(2));
+        Assert.assertEquals(3, normals);
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test(timeout = 8000)
+    public void testRapidInvocationsAreDebounced() throws InterruptedException {
+        clickThrice(recordingListener(ReentrancyPolicy.QUEUE, SnailActionListener.DEFAULT_DEBOUNCE_MILLISECONDS));
+        flushEventThread();
+
+        Assert.assertEquals(Collections.singletonList("1"), performed);
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test(timeout = 8000)
+    public void testDebouncingRunsFromTheLastAcceptedInvocation() throws InterruptedException {
+        final SnailActionListener listener = recordingListener(ReentrancyPolicy.QUEUE, 300);
+        for (final String command : new String[] {"1", "2", "3"}) {
+            GUIUtils.runOnEventThread(new Runnable() {
+                public void run() {
+                    listener.actionPerformed(new ActionEvent(listener, ActionEvent.ACTION_PERFORMED, command));
+                }
+            });
+            ThreadUtils.waitNoInterruption(200);
+        }
+        flushEventThread();
+
+        // 2 came 200ms after 1, and was ignored; 3 came 400ms after 1
+        Assert.assertEquals(2, performed.size());
+        Assert.assertEquals("1", performed.get(0));
+        Assert.assertEquals("3", performed.get(1));
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test(timeout = 8000)
+    public void testListenersCreatedWithoutAPolicyPerformEveryInvocation() throws InterruptedException {
+        final SnailActionListener listener = new SnailActionListener(cursorManager) {
+            @Override
+            public void actionPerformedSlowly(final ActionEvent e) {
+                performed.add(e.getActionCommand());
+            }
+        };
+        clickThrice(listener);
+        flushEventThread();
+
+        Assert.assertEquals(Arrays.asList("1", "2", "3"), performed);
+        Assert.assertEquals(3, hourglasses);
+        Assert.assertEquals(3, normals);
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test(timeout = 8000)
+    public void testInvocationsOffTheEventThreadArePerformedOnIt() throws InterruptedException {
+        final SnailActionListener listener = new SnailActionListener(cursorManager) {
+            @Override
+            public void actionPerformedSlowly(final ActionEvent e) {
+                performed.add(e.getActionCommand() + " on event thread: " + EventQueue.isDispatchThread());
+            }
+        };
+        // not on the event thread, so these are handled there, in turn
+        listener.actionPerformed(new ActionEvent(listener, ActionEvent.ACTION_PERFORMED, "1"));
+        listener.actionPerformed(new ActionEvent(listener, ActionEvent.ACTION_PERFORMED, "2"));
+        flushEventThread();
+
+        Assert.assertEquals(Arrays.asList("1 on event thread: true", "2 on event thread: true"), performed);
+        Assert.assertEquals(2, hourglasses);
+        Assert.assertEquals(2, normals);
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test(timeout = 8000)
+    public void testIgnoredMenuInvocationsAreCountedAsDropped() throws InterruptedException {
+        final MenuIdentifier identifier = new MenuIdentifier("SnailAction");
+        final MenuWiring menuWiring = new MenuWiring();
+        menuWiring.storeMenuItem(identifier, new JMenuItem());
+        menuWiring.setActionListener(identifier, recordingListener(ReentrancyPolicy.DROP, SnailActionListener.DEFAULT_DEBOUNCE_MILLISECONDS));
+        GUIUtils.runOnEventThread(new Runnable() {
+            public void run() {
+                for (int i = 0; i < 3; i++) {
+                    menuWiring.triggerActionListener(identifier);
+                }
+            }
+        });
+        flushEventThread();
+
+        final MenuActionMetrics.MenuItemMetrics metrics = menuWiring.getActionMetrics().getMetrics(identifier);
+        Assert.assertEquals(1, performed.size());
+        Assert.assertEquals(3, metrics.getInvocationCount());
+        Assert.assertEquals(2, metrics.getDroppedCount());
+        Assert.assertEquals(1, metrics.getLatency().getCount());
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test(timeout = 8000)
+    public void testDeferredActionsFinishWhenTold() throws InterruptedException {
+        final SnailActionListener[] deferring = new SnailActionListener[1];
+        deferring[0] = new SnailActionListener(cursorManager, ReentrancyPolicy.QUEUE, 0) {
+            @Override
+            public void actionPerformedSlowly(final ActionEvent e) {
+                performed.add(e.getActionCommand());
+                deferCompletion();
+            }
+        };
+        clickThrice(deferring[0]);
+        flushEventThread();
+
+        Assert.assertEquals(Collections.singletonList("1"), performed);
+        Assert.assertEquals(0, normals);
+
+        GUIUtils.runOnEventThread(new Runnable() {
+            public void run() {
+                deferring[0].actionFinished();
+            }
+        });
+        flushEventThread();
+
+        Assert.assertEquals(2, performed.size());
+        Assert.assertEquals(1, normals);
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test(timeout = 8000)
+    public void testDeferredActionsThatThrowAreFinishedOnce() throws InterruptedException {
+        final SnailActionListener[] deferring = new SnailActionListener[1];
+        deferring[0] = new SnailActionListener(cursorManager, ReentrancyPolicy.DROP, 0) {
+            @Override
+            public void actionPerformedSlowly(final ActionEvent e) {
+                performed.add(e.getActionCommand());
+                deferCompletion();
+                throw new IllegalStateException("failed after deferring");
+            }
+        };
+        GUIUtils.runOnEventThread(new Runnable() {
+            public void run() {
+                deferring[0].actionPerformed(new ActionEvent(deferring[0], ActionEvent.ACTION_PERFORMED, "1"));
+            }
+        });
+        flushEventThread();
+        Assert.assertEquals(1, normals);
+
+        GUIUtils.runOnEventThread(new Runnable() {
+            public void run() {
+                deferring[0].actionFinished();
+            }
+        });
+        flushEventThread();
+
+        Assert.assertEquals(Collections.singletonList("1"), performed);
+        Assert.assertEquals(1, hourglasses);
+        Assert.assertEquals(1, normals);
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test(timeout = 8000)
+    public void testTwoPhaseActionsComputeInTheBackgroundAndApplyOnTheEventThread() throws InterruptedException {
+        final CountDownLatch applied = new CountDownLatch(1);
+        final TwoPhaseSnailActionListener<String> listener = new TwoPhaseSnailActionListener<String>(cursorManager,
+                ReentrancyPolicy.DROP, SnailActionListener.DEFAULT_DEBOUNCE_MILLISECONDS) {
+            @Override
+            protected String compute(final ActionEvent e) {
+                performed.add("computed on event thread: " + EventQueue.isDispatchThread());
+                return e.getActionCommand();
+            }
+
+            @Override
+            protected void apply(final String result) {
+                performed.add("applied " + result + " on event thread: " + EventQueue.isDispatchThread());
+                applied.countDown();
+            }
+        };
+        clickThrice(listener);
+        applied.await();
+        flushEventThread();
+
+        Assert.assertEquals(2, performed.size());
+        Assert.assertEquals("computed on event thread: false", performed.get(0));
+        Assert.assertEquals("applied 1 on event thread: true", performed.get(1));
+        Assert.assertEquals(1, hourglasses);
+        Assert.assertEquals(1, normals);
+    }
+
+    /**
+     * @throws InterruptedException on failure
+     */
+    @Test(timeout = 8000)
+    public void testTwoPhaseActionsWhoseWorkersAreRejectedAreFinishedOnce() throws InterruptedException {
+        final TwoPhaseSnailActionListener<String> listener = new TwoPhaseSnailActionListener<String>(cursorManager) {
+            @Override
+            protected String compute(final ActionEvent e) {
+                performed.add("computed " + e.getActionCommand());
+                return e.getActionCommand();
+            }
+
+            @Override
+            protected void apply(final String result) {
+                // the second action must not have been finished already
+                performed.add("applied " + result + " after " + normals + " finished");
+            }
+        };
+        final AtomicBoolean rejecting = new AtomicBoolean(true);
+        SwingWorkerExecutors.setDefaultExecutor(new Executor() {
+            public void execute(final Runnable command) {
+                if (rejecting.getAndSet(false)) {
+                    throw new RejectedExecutionException("rejected");
+                }
+                new Thread(command).start();
+            }
+        });
+        try {
+            GUIUtils.runOnEventThread(new Runnable() {
+                public void run() {
+                    listener.actionPerformed(new ActionEvent(listener, ActionEvent.ACTION_PERFORMED, "1"));
+                    listener.actionPerformed(new ActionEvent(listener, ActionEvent.ACTION_PERFORMED, "2"));
+                }
+            });
+            while (normals < 2) {
+                flushEventThread();
+            }
+            flushEventThread();
+        } finally {
+            SwingWorkerExecutors.setDefaultExecutor(null);
+        }
+
+        Assert.assertEquals(Arrays.asList("computed 2", "applied 2 after 1 finished"), performed);
+        Assert.assertEquals(2, hourglasses);
+        Assert.assertEquals(2, normals);
+    }
+
+    private static void flushEventThread() throws InterruptedException {
+        // each performance posts to the event thread again
+        for (int i = 0; i < 5; i++) {
+            final CountDownLatch flushed = new CountDownLatch(1);
+            GUIUtils.invokeLaterOnEventThread(new Runnable() {
+                public void run() {
+                    flushed.countDown();
+                }
+            });
+            flushed.await();
+        }
+    }
+}